@@ -0,0 +1,215 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+/**
+ * Adaptive Huffman coding (CPR cType 3, parameter 0).
+ * Encoder and decoder start from a tree containing only the end of stream
+ * and escape symbols, and update it identically after every byte. A byte
+ * seen for the first time is sent as the escape code followed by the 8
+ * bits of the byte. Weights are halved when the root weight reaches
+ * MAX_WEIGHT.
+ */
+final class AdaptiveHuffmanCodec implements CompressionCodec {
+    static final int END_OF_STREAM = 256;
+    static final int ESCAPE = 257;
+    static final int SYMBOL_COUNT = 258;
+    static final int NODE_COUNT = SYMBOL_COUNT*2 - 1;
+    static final int ROOT = 0;
+    static final int MAX_WEIGHT = 0x8000;
+
+    public int getType() {return AHUFF;}
+
+    public int getParameter() {return 0;}
+
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        HuffmanCodec.BitInput in =
+            new HuffmanCodec.BitInput(ba, off[0], off[0] + len);
+        Tree tree = new Tree();
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            int node = ROOT;
+            while (!tree.isLeaf[node]) {
+                node = tree.child[node];
+                if (in.getBit() != 0) node++;
+            }
+            int c = tree.child[node];
+            if (c == ESCAPE) {
+                c = in.getBits(8);
+                tree.addNode(c);
+            }
+            if (c == END_OF_STREAM) break;
+            dst.put((byte)c);
+            tree.update(c);
+        }
+        src.position(src.position() + (in.index - off[0]));
+        return dst.position() - start;
+    }
+
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        HuffmanCodec.BitOutput out = new HuffmanCodec.BitOutput(len/2 + 16);
+        Tree tree = new Tree();
+        for (int i = 0; i < len; i++) {
+            int c = ba[off[0] + i] & 0xff;
+            encode(tree, c, out);
+            tree.update(c);
+        }
+        encode(tree, END_OF_STREAM, out);
+        src.position(src.limit());
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    static void encode(Tree tree, int c, HuffmanCodec.BitOutput out) {
+        int code = 0;
+        int bit = 1;
+        int size = 0;
+        int node = tree.leaf[c];
+        if (node == -1) node = tree.leaf[ESCAPE];
+        while (node != ROOT) {
+            if ((node & 1) == 0) code |= bit;
+            bit <<= 1;
+            size++;
+            node = tree.parent[node];
+        }
+        out.putBits(code, size);
+        if (tree.leaf[c] == -1) {
+            out.putBits(c, 8);
+            tree.addNode(c);
+        }
+    }
+
+    /**
+     * Nodes are kept in order of decreasing weight; the children of a node
+     * are child[node] (bit 0) and child[node] + 1 (bit 1). For a leaf,
+     * child is the symbol.
+     */
+    static final class Tree {
+        final int[] leaf = new int[SYMBOL_COUNT];
+        final int[] weight = new int[NODE_COUNT];
+        final int[] parent = new int[NODE_COUNT];
+        final int[] child = new int[NODE_COUNT];
+        final boolean[] isLeaf = new boolean[NODE_COUNT];
+        int nextFree;
+
+        Tree() {
+            child[ROOT] = ROOT + 1;
+            isLeaf[ROOT] = false;
+            weight[ROOT] = 2;
+            parent[ROOT] = -1;
+            child[ROOT + 1] = END_OF_STREAM;
+            isLeaf[ROOT + 1] = true;
+            weight[ROOT + 1] = 1;
+            parent[ROOT + 1] = ROOT;
+            leaf[END_OF_STREAM] = ROOT + 1;
+            child[ROOT + 2] = ESCAPE;
+            isLeaf[ROOT + 2] = true;
+            weight[ROOT + 2] = 1;
+            parent[ROOT + 2] = ROOT;
+            leaf[ESCAPE] = ROOT + 2;
+            nextFree = ROOT + 3;
+            for (int i = 0; i < END_OF_STREAM; i++) leaf[i] = -1;
+        }
+
+        void update(int c) {
+            if (weight[ROOT] == MAX_WEIGHT) rebuild();
+            int node = leaf[c];
+            while (node != -1) {
+                weight[node]++;
+                int newNode;
+                for (newNode = node; newNode > ROOT; newNode--) {
+                    if (weight[newNode - 1] >= weight[node]) break;
+                }
+                if (node != newNode) {
+                    swap(node, newNode);
+                    node = newNode;
+                }
+                node = parent[node];
+            }
+        }
+
+        void rebuild() {
+            int j = nextFree - 1;
+            for (int i = j; i >= ROOT; i--) {
+                if (isLeaf[i]) {
+                    copy(i, j);
+                    weight[j] = (weight[j] + 1)/2;
+                    j--;
+                }
+            }
+            for (int i = nextFree - 2; j >= ROOT; i -= 2, j--) {
+                int w = weight[i] + weight[i + 1];
+                weight[j] = w;
+                isLeaf[j] = false;
+                int k;
+                for (k = j + 1; w < weight[k]; k++);
+                k--;
+                for (int m = j; m < k; m++) copy(m + 1, m);
+                weight[k] = w;
+                child[k] = i;
+                isLeaf[k] = false;
+            }
+            for (int i = nextFree - 1; i >= ROOT; i--) {
+                int k = child[i];
+                if (isLeaf[i]) {
+                    leaf[k] = i;
+                } else {
+                    parent[k] = i;
+                    parent[k + 1] = i;
+                }
+            }
+        }
+
+        void copy(int from, int to) {
+            weight[to] = weight[from];
+            parent[to] = parent[from];
+            child[to] = child[from];
+            isLeaf[to] = isLeaf[from];
+        }
+
+        void swap(int i, int j) {
+            if (isLeaf[i]) {
+                leaf[child[i]] = j;
+            } else {
+                parent[child[i]] = j;
+                parent[child[i] + 1] = j;
+            }
+            if (isLeaf[j]) {
+                leaf[child[j]] = i;
+            } else {
+                parent[child[j]] = i;
+                parent[child[j] + 1] = i;
+            }
+            int w = weight[i];
+            int c = child[i];
+            boolean l = isLeaf[i];
+            weight[i] = weight[j];
+            child[i] = child[j];
+            isLeaf[i] = isLeaf[j];
+            weight[j] = w;
+            child[j] = c;
+            isLeaf[j] = l;
+        }
+
+        void addNode(int c) {
+            int lightest = nextFree - 1;
+            int newNode = nextFree;
+            int zeroWeight = nextFree + 1;
+            nextFree += 2;
+            copy(lightest, newNode);
+            parent[newNode] = lightest;
+            leaf[child[newNode]] = newNode;
+            child[lightest] = newNode;
+            isLeaf[lightest] = false;
+            child[zeroWeight] = c;
+            isLeaf[zeroWeight] = true;
+            weight[zeroWeight] = 0;
+            parent[zeroWeight] = lightest;
+            leaf[c] = zeroWeight;
+        }
+    }
+}
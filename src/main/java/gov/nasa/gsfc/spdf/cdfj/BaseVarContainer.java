@@ -2,6 +2,7 @@ package gov.nasa.gsfc.spdf.cdfj;
 import java.nio.*;
 import java.util.*;
 import java.lang.reflect.*;
+import java.util.concurrent.*;
 public abstract class BaseVarContainer implements Runnable {
     static final int chunkSize = 1024;
     final CDFImpl thisCDF;
@@ -20,6 +21,11 @@ public abstract class BaseVarContainer implements Runnable {
     final int fillCount;
     final boolean singlePoint;
     Boolean allocationMode;
+    static boolean defaultParallel = false;
+    static ForkJoinPool pool = ForkJoinPool.commonPool();
+    boolean parallel = defaultParallel;
+    static int defaultReadAhead = 0;
+    int readAhead = defaultReadAhead;
     protected BaseVarContainer(CDFImpl thisCDF, Variable var, int[] pt,
         boolean preserve, ByteOrder bo, Class cl) throws IllegalAccessException,
         InvocationTargetException, Throwable {
@@ -123,6 +129,40 @@ public abstract class BaseVarContainer implements Runnable {
         if (allocationMode == null) allocationMode = new Boolean(direct);
     }
 
+    /**
+     * Enables decompression and conversion of the needed blocks of a
+     * compressed variable in parallel.
+     */
+    public void setParallel(boolean parallel) {this.parallel = parallel;}
+
+    /**
+     * sets whether new containers decompress blocks in parallel.
+     */
+    public static void setDefaultParallel(boolean parallel) {
+        defaultParallel = parallel;
+    }
+
+    /**
+     * Sets the number of blocks loaded in the background ahead of the
+     * block being read; 0 disables read ahead.
+     */
+    public void setReadAhead(int blocks) {readAhead = blocks;}
+
+    /**
+     * sets the number of blocks new containers read ahead.
+     */
+    public static void setDefaultReadAhead(int blocks) {
+        defaultReadAhead = blocks;
+    }
+
+    /**
+     * sets the pool used for parallel decompression.
+     */
+    public static void setPool(ForkJoinPool _pool) {
+        if (_pool == null) throw new IllegalArgumentException("null pool");
+        pool = _pool;
+    }
+
     ByteBuffer userBuffer;
     public boolean setUserBuffer(ByteBuffer buf) {
         if (allocationMode != null) return false;
@@ -144,6 +184,18 @@ public abstract class BaseVarContainer implements Runnable {
 
     public void run() {
         if (buffers.size() > 0) return;
+        MappedMemory.enter();
+        try {
+            read();
+        } finally {
+            MappedMemory.exit();
+        }
+    }
+
+    /**
+     * reads the records into a new buffer.
+     */
+    void read() {
         int numberOfValues = pt[1] - pt[0] + 1;
         int words = elements*numberOfValues;
         ByteBuffer _buf;
@@ -179,21 +231,17 @@ public abstract class BaseVarContainer implements Runnable {
         if (fillCount > 0) {
             doMissing(fillCount, _buf, data, -1);
         }
-        Vector locations = ((CDFImpl.DataLocator)var.getLocator()).locations;
+        CDFImpl.DataLocator locator = (CDFImpl.DataLocator)var.getLocator();
+        int nblocks = locator.size();
         ByteBuffer bv;
         int blk = 0;
         int next = begin;
         if (next > 0) {// position to first needed block
-            int _first = -1;
-            int prev = -1;
-            for (; blk < locations.size(); blk++) {
-                long [] loc = (long [])locations.elementAt(blk);
-                _first = (int)loc[0];
-                if (loc[1] >= next) break;
-                prev = (int)loc[1];
-            }
+            blk = locator.blockIndex(next);
+            int _first = (blk < nblocks)?(int)locator.getFirstRecord(blk):-1;
+            int prev = (blk > 0)?(int)locator.getLastRecord(blk - 1):-1;
             int tofill = 0;
-            if (blk == locations.size()) { // past prev available
+            if (blk == nblocks) { // past prev available
                 tofill = end - begin + 1;
                 if (!(var.missingRecordValueIsPad() ||
                      var.missingRecordValueIsPrevious())) return;
@@ -219,15 +267,38 @@ public abstract class BaseVarContainer implements Runnable {
             }
         }
         // there is valid data to send back
+        if (parallel && (end > next) && var.isCompressed()) {
+            boolean done;
+            try {
+                done = runParallel(locator, blk, next, end, _buf);
+            } catch (Throwable ex) {
+                ex.printStackTrace();
+                return;
+            }
+            if (done) {
+                if (buffers.size() == 0) {
+                    buffers.add(new ContentDescriptor(_buf, begin, end));
+                }
+                return;
+            }
+        }
         // begin may lie before blk. This is handled later
         boolean firstBlock = true;
-        for (; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
-            int first = (int)loc[0];
-            int last = (int)loc[1];
+        int scheduled = blk + 1;
+        for (; blk < nblocks; blk++) {
+            int first = (int)locator.getFirstRecord(blk);
+            int last = (int)locator.getLastRecord(blk);
+            if ((readAhead > 0) && (last < end)) {
+                int target = Math.min(nblocks, blk + 1 + readAhead);
+                while ((target > scheduled) &&
+                    (locator.getFirstRecord(target - 1) > end)) target--;
+                if (target > scheduled) {
+                    thisCDF.readAhead(var, locator, scheduled, target);
+                    scheduled = target;
+                }
+            }
 
-            int count = (last - first + 1);
-            bv = thisCDF.positionBuffer( var, loc[2], count);
+            bv = thisCDF.positionBuffer(var, blk);
             if (firstBlock) {
                 if (pt != null) {
                     if (begin > first) {
@@ -254,8 +325,7 @@ public abstract class BaseVarContainer implements Runnable {
                     int target = (end >= first)?first:end + 1 ;
                     int n = target - next;
                     if (var.missingRecordValueIsPrevious()) {
-                        int rec = (int)
-                            ((long [])locations.elementAt(blk - 1))[1];
+                        int rec = (int)locator.getLastRecord(blk - 1);
                         doMissing(n, _buf, data, rec);
                     } else {
                         doMissing(n, _buf, data,  -1);
@@ -296,6 +366,78 @@ public abstract class BaseVarContainer implements Runnable {
         }
     }
 
+    /**
+     * Decompresses and converts records next to end from blocks starting
+     * at blk, one task per block. Each block is written to its own
+     * position in _buf, which is known because the blocks are required to
+     * cover the range without gaps. Returns false, without doing anything,
+     * if the range is not covered by at least two contiguous blocks.
+     */
+    boolean runParallel(CDFImpl.DataLocator locator, int blk, int next,
+        int end, final ByteBuffer _buf) throws Throwable {
+        int nblk = 0;
+        int expected = next;
+        for (int b = blk; b < locator.size(); b++) {
+            if (locator.getFirstRecord(b) > expected) return false;
+            nblk++;
+            if (locator.getLastRecord(b) >= end) break;
+            expected = (int)locator.getLastRecord(b) + 1;
+        }
+        if (nblk < 2) return false;
+        if (locator.getLastRecord(blk + nblk - 1) < end) return false;
+        final int start = _buf.position();
+        final int recordLength = elements*getLength();
+        Vector<Callable<Object>> tasks = new Vector<Callable<Object>>();
+        for (int b = blk; b < blk + nblk; b++) {
+            final int block = b;
+            final int first = (int)locator.getFirstRecord(b);
+            final int last = (int)locator.getLastRecord(b);
+            final int from = (first > next)?first:next;
+            final int to = (last < end)?last:end;
+            final int position = start + (from - next)*recordLength;
+            tasks.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    MappedMemory.enter();
+                    try {
+                        ByteBuffer bv = thisCDF.positionBuffer(var, block);
+                        bv.position(bv.position() + (from - first)*itemSize);
+                        ByteBuffer dest = _buf.duplicate();
+                        dest.order(_buf.order());
+                        dest.position(position);
+                        Object data = (chunking)?allocateDataArray(csize):null;
+                        int rem = to - from + 1;
+                        while (rem > 0) {
+                            int _count = rem;
+                            if (chunking && (_count > recordsPerChunk)) {
+                                _count = recordsPerChunk;
+                            }
+                            doData(bv, type, elements, _count, dest, data);
+                            rem -= _count;
+                        }
+                    } catch (Throwable th) {
+                        throw new ExecutionException(th);
+                    } finally {
+                        MappedMemory.exit();
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Object> f: pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof ExecutionException) {
+                    cause = cause.getCause();
+                }
+                throw cause;
+            }
+        }
+        _buf.position(start + (end - next + 1)*recordLength);
+        return true;
+    }
+
     class ContentDescriptor {
         final ByteBuffer buf;
         final int first;
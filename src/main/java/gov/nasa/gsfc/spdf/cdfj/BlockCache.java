@@ -0,0 +1,156 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.*;
+/**
+ * BlockCache keeps decompressed variable data blocks, so that repeated
+ * reads of the same compressed block do not inflate it again.
+ * Blocks are keyed by the identity of the source CDF and the file offset
+ * of the compressed block, and evicted least recently used first once the
+ * total size of cached blocks exceeds the capacity.
+ * Capacity is in bytes; a capacity of 0 disables caching.
+ */
+public final class BlockCache {
+    public static final long DEFAULT_CAPACITY = 64l*1024*1024;
+    static BlockCache defaultCache = new BlockCache(DEFAULT_CAPACITY);
+    long capacity;
+    long size;
+    long hits;
+    long misses;
+    long evictions;
+    final LinkedHashMap<Key, ByteBuffer> blocks =
+        new LinkedHashMap<Key, ByteBuffer>(16, 0.75f, true);
+
+    /**
+     * constructs a cache holding at most capacity bytes.
+     */
+    public BlockCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * returns the cache used by CDF readers.
+     */
+    public static BlockCache getDefault() {return defaultCache;}
+
+    /**
+     * sets the cache used by CDF readers.
+     */
+    public static void setDefault(BlockCache cache) {
+        if (cache == null) throw new IllegalArgumentException("null cache");
+        defaultCache = cache;
+    }
+
+    /**
+     * returns a read only view of the cached block, or null.
+     */
+    public synchronized ByteBuffer get(Object source, long offset) {
+        ByteBuffer block = blocks.get(new Key(source, offset));
+        if (block == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return block.duplicate();
+    }
+
+    /**
+     * adds a block to the cache, and returns a read only view of it.
+     */
+    public synchronized ByteBuffer put(Object source, long offset,
+        ByteBuffer block) {
+        ByteBuffer rbuf = block.asReadOnlyBuffer();
+        int len = rbuf.capacity();
+        if (len > capacity) return rbuf.duplicate();
+        ByteBuffer old = blocks.put(new Key(source, offset), rbuf);
+        if (old != null) size -= old.capacity();
+        size += len;
+        trim();
+        return rbuf.duplicate();
+    }
+
+    /**
+     * removes all blocks belonging to the given source.
+     */
+    public synchronized void remove(Object source) {
+        Iterator<Map.Entry<Key, ByteBuffer>> it = blocks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, ByteBuffer> e = it.next();
+            if (e.getKey().source.equals(source)) {
+                size -= e.getValue().capacity();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * removes all blocks.
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    /**
+     * sets the capacity in bytes, evicting blocks as needed.
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        trim();
+    }
+
+    public synchronized long getCapacity() {return capacity;}
+
+    /**
+     * returns total size in bytes of the cached blocks.
+     */
+    public synchronized long getSize() {return size;}
+
+    public synchronized int getBlockCount() {return blocks.size();}
+
+    public synchronized long getHits() {return hits;}
+
+    public synchronized long getMisses() {return misses;}
+
+    public synchronized long getEvictions() {return evictions;}
+
+    /**
+     * resets hit, miss and eviction counters.
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized String toString() {
+        return "BlockCache[size=" + size + ", capacity=" + capacity +
+            ", blocks=" + blocks.size() + ", hits=" + hits + ", misses=" +
+            misses + ", evictions=" + evictions + "]";
+    }
+
+    void trim() {
+        Iterator<ByteBuffer> it = blocks.values().iterator();
+        while ((size > capacity) && it.hasNext()) {
+            size -= it.next().capacity();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    static final class Key {
+        final Object source;
+        final long offset;
+        Key(Object source, long offset) {
+            this.source = source;
+            this.offset = offset;
+        }
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key)o;
+            return (offset == k.offset) && source.equals(k.source);
+        }
+        public int hashCode() {
+            return source.hashCode()*31 + (int)(offset ^ (offset >>> 32));
+        }
+    }
+}
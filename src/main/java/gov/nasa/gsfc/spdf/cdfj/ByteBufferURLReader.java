@@ -7,7 +7,12 @@ import java.util.zip.*;
 import java.nio.channels.FileChannel;
 import java.nio.ByteBuffer;
 /**
-*/
+ * ByteBufferURLReader reads the contents of a URL into ByteBuffers, or
+ * into a FileChannel. Data is read in bulk into the destination buffer.
+ * Contents of URLs whose path ends in .gz, or that are sent with gzip
+ * content encoding, are uncompressed as they are read; their length is
+ * then not known in advance.
+ */
 public class ByteBufferURLReader {
     InputStream is;
     boolean eof = false;
@@ -20,11 +25,15 @@ public class ByteBufferURLReader {
     public ByteBufferURLReader(URL url) throws IOException {
         URLConnection con = url.openConnection();
         con.connect();
-        len = con.getContentLength();
-        if (len >= 0) chunk.setLength(len);
         is = con.getInputStream();
-        boolean gzipped = url.getPath().trim().endsWith(".gz");
-        if (gzipped) is = new GZIPInputStream(is);
+        boolean gzipped = url.getPath().trim().endsWith(".gz") ||
+            "gzip".equalsIgnoreCase(con.getContentEncoding());
+        if (gzipped) {
+            is = new GZIPInputStream(is, chunk.blockSize);
+        } else {
+            len = con.getContentLength();
+            if (len >= 0) chunk.setLength(len);
+        }
     }
 
     public ByteBufferURLReader(URL url, Chunk chunk) throws IOException {
@@ -47,11 +56,21 @@ public class ByteBufferURLReader {
     }
 
     public void setChunk(Chunk chunk) {
+        chunk.setLength(len);
         this.chunk = chunk;
         block = chunk.getBlock();
     }
 
+    /**
+     * returns the contents of the URL, read only. When the length is
+     * known, they are read straight into a single buffer of that size.
+     */
     public ByteBuffer getBuffer() throws IOException {
+        if ((cacheFileChannel == null) && (len >= 0) && (total == 0)) {
+            ByteBuffer all = ByteBuffer.allocate(len);
+            _read(all);
+            return all.asReadOnlyBuffer();
+        }
         Vector<ByteBuffer> buffers = new Vector<ByteBuffer>();
         while (!eof) {
             if (cacheFileChannel == null) {
@@ -91,43 +110,44 @@ public class ByteBufferURLReader {
 
     public void transfer() throws IOException {
         _read(buffer);
-        cacheFileChannel.write(buffer);
+        while (buffer.hasRemaining()) cacheFileChannel.write(buffer);
         return;
     }
 
+    /**
+     * fills buffer from the stream, or with what remains of it. When the
+     * length is known, end of data is checked for once that many bytes
+     * have been read.
+     */
     private void _read(ByteBuffer buffer) throws IOException {
-        int count = 0;
-        int n;
-        buffer.position(0);
-        buffer.limit(buffer.capacity());
-        if (buffer.capacity() < 2*block.length) {
-            for (int i = 0; i < buffer.capacity(); i++) {
-                n = is.read();
-                if (n == -1) throw new IOException("Premature end of data");
-                buffer.put((byte)n);
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n;
+            if (buffer.hasArray()) {
+                n = is.read(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
+                if (n > 0) buffer.position(buffer.position() + n);
+            } else {
+                n = is.read(block, 0, Math.min(block.length,
+                    buffer.remaining()));
+                if (n > 0) buffer.put(block, 0, n);
             }
-            if ((n = is.read(block)) != -1) {
-                throw new IOException("Unread data remains");
+            if (n == -1) {
+                eof = true;
+                break;
             }
-            count = buffer.capacity();
-            total = count;
+            total += n;
+        }
+        if (!eof && (len >= 0) && (total >= len)) {
+            if (is.read() != -1) throw new IOException("Unread data remains");
             eof = true;
-        } else {
-            while ((n = is.read(block)) != -1) {
-                buffer.put(block, 0, n);
-                total += n;
-                count += n;
-                if (len == buffer.capacity()) continue;
-                if (count >= chunk.chunkSize) break;
-            }
-            if (n == -1) eof = true;
-            if (eof && (len >= 0)) {
-                if (total != len) throw new IOException("Mismatched length " +
-                    total + " expected: " + len);
-            }
-            buffer.limit(buffer.position());
         }
-        buffer.position(0);
+        if (eof && (len >= 0) && (total != len)) {
+            throw new IOException("Mismatched length " + total +
+            " expected: " + len);
+        }
+        buffer.flip();
     }
 
     public boolean endOfFile() {return eof;}
@@ -147,11 +167,16 @@ public class ByteBufferURLReader {
         }
 
         void setLength(int length) {len = length;}
+
+        /**
+         * returns an array backed buffer, which the stream is read into
+         * without going through the block.
+         */
         ByteBuffer allocateBuffer() {
             int bufsize = chunkSize + blockSize;
-            if (len < 0) return ByteBuffer.allocateDirect(bufsize);
-            if (len > bufsize) return ByteBuffer.allocateDirect(bufsize);
-            return ByteBuffer.allocateDirect(len);
+            if (len < 0) return ByteBuffer.allocate(bufsize);
+            if (len > bufsize) return ByteBuffer.allocate(bufsize);
+            return ByteBuffer.allocate(len);
         }
 
         byte[] getBlock() {
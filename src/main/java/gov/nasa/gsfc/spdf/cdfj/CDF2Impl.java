@@ -10,11 +10,17 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
     public int OFFSET_zNumDims;
     public int VAR_OFFSET_NUM_ELEMENTS;
     public int OFFSET_NUM;
-    FileChannel fc;
-    public CDF2Impl(ByteBuffer buf, int release, FileChannel  ch) throws
-        Throwable {
+    /**
+     * Reads a file through a channel, rather than from a single buffer.
+     */
+    CDF2Impl(ChannelBuffer storage, int release) throws Throwable {
+        this(storage.get(0, HEADER_SIZE), release, storage);
+    }
+
+    private CDF2Impl(ByteBuffer buf, int release, ChannelBuffer storage)
+        throws Throwable {
         super(buf);
-        fc = ch;
+        this.storage = storage;
         if (release < 5) {
             VAR_OFFSET_NAME = 192;
             VAR_OFFSET_NUM_ELEMENTS = 48 + 128;
@@ -47,35 +53,40 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
         ibuf.get();
         ibuf.get();
         increment = ibuf.get();
-        // validate and extract GDR info
+        // validate and extract GDR info. The GDR is read from buf, unless
+        // the file is read through a channel
+        ByteBuffer gdr = buf;
         int pos = GDROffset + 4;
-        buf.position(pos);
+        if (storage != null) {
+            gdr = getRecord(GDROffset);
+            pos = 4;
+        }
+        gdr.position(pos);
         int x;
-        if ((x = buf.getInt()) != GDR_RECORD) {
+        if ((x = gdr.getInt()) != GDR_RECORD) {
             throw new Throwable("Bad GDR type " + x);
         }
-        rVDRHead = buf.getInt();
-        zVDRHead = buf.getInt();
-        ADRHead = buf.getInt();
-        int CDFSize = buf.getInt();
-        numberOfRVariables = buf.getInt();
-        numberOfAttributes = buf.getInt();
-        buf.getInt(); // skip rMaxRec
-        int numberOfRDims = buf.getInt();
-        numberOfZVariables = buf.getInt();
-        buf.getInt(); // skip UIRhead
+        rVDRHead = gdr.getInt();
+        zVDRHead = gdr.getInt();
+        ADRHead = gdr.getInt();
+        int CDFSize = gdr.getInt();
+        numberOfRVariables = gdr.getInt();
+        numberOfAttributes = gdr.getInt();
+        gdr.getInt(); // skip rMaxRec
+        int numberOfRDims = gdr.getInt();
+        numberOfZVariables = gdr.getInt();
+        gdr.getInt(); // skip UIRhead
         rDimSizes = new int[numberOfRDims];
         if (numberOfRDims > 0) { // skip next 3 integer fields
-            buf.getInt();
-            buf.getInt();
-            buf.getInt();
+            gdr.getInt();
+            gdr.getInt();
+            gdr.getInt();
             for (int i = 0; i < rDimSizes.length; i++) {
-                rDimSizes[i] = buf.getInt();
+                rDimSizes[i] = gdr.getInt();
             }
         }
         buf.position(0);
-        variableTable = variables();
-        attributeTable = attributes();
+        readMetadata();
     }
     protected CDF2Impl(ByteBuffer buf, int release) throws Throwable {
         this(buf, release, null);
@@ -113,15 +124,7 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
     }
 
     public String getString(long offset)  {
-        if (fc == null) return getString(offset, MAX_STRING_SIZE);
-        ByteBuffer _buf;
-        try {
-            _buf = getRecord(offset, MAX_STRING_SIZE);
-        } catch (Throwable th) {
-            th.printStackTrace();
-            return null;
-        }
-        return getString(_buf, MAX_STRING_SIZE);
+        return getString(offset, MAX_STRING_SIZE);
     }
 
     public int lowOrderInt(ByteBuffer buf) {
@@ -132,34 +135,6 @@ final class CDF2Impl extends CDFImpl implements CDF2, java.io.Serializable {
         return buf.getInt(offset);
     }
 
-    protected ByteBuffer getRecord(long offset)  {
-        if (fc == null) return super.getRecord(offset);
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
-        synchronized (fc) {
-            try {
-                fc.position((long)offset + 4);
-                fc.read(lenBuf);
-                int size = lenBuf.getInt(0);
-                return getRecord(offset, size);
-            } catch (Throwable ex) {
-                ex.printStackTrace();
-                return null;
-            }
-        }
-    }
-
-    protected ByteBuffer getRecord(long offset, int size) throws Throwable {
-        ByteBuffer bb = ByteBuffer.allocate(size);
-        fc.position((long)offset);
-        int got = fc.read(bb);
-        if (got != size) {
-            System.out.println("Needed " + size + " bytes. Got " + got);
-            return null;
-        }
-        bb.position(0);
-        return bb;
-    }
-
     public long longInt(ByteBuffer buf) {
         return (long)buf.getInt();
     }
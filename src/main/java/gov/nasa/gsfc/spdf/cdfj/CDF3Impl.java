@@ -7,10 +7,16 @@ import java.nio.channels.*;
 import java.util.zip.*;
 final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
     public long GDROffset;
-    FileChannel fc;
-    protected CDF3Impl(ByteBuffer buf, FileChannel ch) throws Throwable {
+    /**
+     * Reads a file through a channel, rather than from a single buffer.
+     */
+    protected CDF3Impl(ChannelBuffer storage) throws Throwable {
+        this(storage.get(0, HEADER_SIZE), storage);
+    }
+
+    private CDF3Impl(ByteBuffer buf, ChannelBuffer storage) throws Throwable {
         super(buf);
-        fc = ch;
+        this.storage = storage;
         setOffsets();
         thisCDF = this;
         IntBuffer ibuf = buf.asIntBuffer();
@@ -35,36 +41,34 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
         ibuf.get();
         increment = ibuf.get();
         // validate and extract GDR info
-        int pos = (int)GDROffset + 8;
-        buf.position(pos);
+        ByteBuffer gdr = getRecord(GDROffset);
+        gdr.position(8);
         int x;
-        if ((x = buf.getInt()) != GDR_RECORD) {
+        if ((x = gdr.getInt()) != GDR_RECORD) {
             throw new Throwable("Bad GDR type " + x);
         }
-        rVDRHead = buf.getLong();
-        zVDRHead = buf.getLong();
-        ADRHead = buf.getLong();
-        long CDFSize = buf.getLong();
-        numberOfRVariables = buf.getInt();
-        numberOfAttributes = buf.getInt();
-        buf.getInt(); // skip rMaxRec
-        int numberOfRDims = buf.getInt();
-        numberOfZVariables = buf.getInt();
-        buf.getInt(); // skip UIRhead
-        buf.getInt(); // skip UIRhead
-        buf.getInt(); // skip rfuC
-        lastLeapSecondId = buf.getInt(); //since 3.6
+        rVDRHead = gdr.getLong();
+        zVDRHead = gdr.getLong();
+        ADRHead = gdr.getLong();
+        long CDFSize = gdr.getLong();
+        numberOfRVariables = gdr.getInt();
+        numberOfAttributes = gdr.getInt();
+        gdr.getInt(); // skip rMaxRec
+        int numberOfRDims = gdr.getInt();
+        numberOfZVariables = gdr.getInt();
+        gdr.getInt(); // skip UIRhead
+        gdr.getInt(); // skip UIRhead
+        gdr.getInt(); // skip rfuC
+        lastLeapSecondId = gdr.getInt(); //since 3.6
         rDimSizes = new int[numberOfRDims];
         if (numberOfRDims > 0) { // skip next integer field
-            buf.getInt();
+            gdr.getInt();
             for (int i = 0; i < rDimSizes.length; i++) {
-                rDimSizes[i] = buf.getInt();
+                rDimSizes[i] = gdr.getInt();
             }
         }
-        buf.position(0);
 //      if (ch == null) {
-            variableTable = variables();
-            attributeTable = attributes();
+            readMetadata();
 //      }
     }
     protected CDF3Impl(ByteBuffer buf) throws Throwable {
@@ -103,15 +107,7 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
     }
 
     public String getString(long offset)  {
-        if (fc == null) return getString(offset, MAX_STRING_SIZE);
-        ByteBuffer _buf;
-        try {
-            _buf = getRecord(offset, MAX_STRING_SIZE);
-        } catch (Throwable th) {
-            th.printStackTrace();
-            return null;
-        }
-        return getString(_buf, MAX_STRING_SIZE);
+        return getString(offset, MAX_STRING_SIZE);
     }
 
     public int lowOrderInt(ByteBuffer buf) {
@@ -122,36 +118,7 @@ final class CDF3Impl extends CDFImpl implements CDF3, java.io.Serializable {
         return (int)buf.getLong(offset);
     }
 
-    protected ByteBuffer getRecord(long offset)  {
-        if (fc == null) return super.getRecord(offset);
-        ByteBuffer lenBuf = ByteBuffer.allocate(4);
-        synchronized (fc) {
-            try {
-                fc.position((long)offset + 4);
-                fc.read(lenBuf);
-                int size = lenBuf.getInt(0);
-                return getRecord(offset, size);
-            } catch (Throwable ex) {
-                ex.printStackTrace();
-                return null;
-            }
-        }
-    }
-
-    protected ByteBuffer getRecord(long offset, int size) throws Throwable {
-        ByteBuffer bb = ByteBuffer.allocate(size);
-        fc.position((long)offset);
-        int got = fc.read(bb);
-        if (got != size) {
-            System.out.println("Needed " + size + " bytes. Got " + got);
-            return null;
-        }
-        bb.position(0);
-        return bb;
-    }
-
     public long longInt(ByteBuffer buf) {
         return buf.getLong();
     }
-
 }
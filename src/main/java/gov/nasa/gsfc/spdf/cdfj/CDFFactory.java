@@ -20,6 +20,46 @@ public final class CDFFactory {
          0x0000ffff;
     static Map cdfMap = Collections.synchronizedMap(new WeakHashMap());
     static Long maxMappedMemory;
+    /**
+     * Files larger than this are mapped as a list of segments.
+     */
+    static long segmentThreshold = Integer.MAX_VALUE;
+    /**
+     * Whole file compressed CDFs whose uncompressed size exceeds this are
+     * inflated into a scratch file instead of the heap.
+     */
+    static long scratchThreshold = Integer.MAX_VALUE - 8;
+    static File scratchDirectory;
+    static Hashtable<String, File> scratchFiles = new Hashtable<String, File>();
+    /**
+     * Parsed CDFs shared by readers, keyed by file identity and
+     * processing option, in access order. Sharing is off by default.
+     */
+    static int readerCacheSize;
+    /**
+     * When set, descriptors of variables and attributes are read when
+     * first used, rather than when the CDF is opened.
+     */
+    static boolean lazyMetadata;
+    /**
+     * Directory of MetadataIndex files, null if they are not used.
+     */
+    static File indexDirectory;
+    /**
+     * When set, files are read with positional reads through the page
+     * cache, instead of being mapped.
+     */
+    static boolean positionalReads;
+    /**
+     * When set, CDFs opened from http URLs are read with range requests.
+     */
+    static boolean rangeRequests;
+    /**
+     * Local copies of CDFs opened from http URLs, null if not used.
+     */
+    static URLCache urlCache;
+    static final LinkedHashMap<String, CDFImpl> readers =
+        new LinkedHashMap<String, CDFImpl>(16, 0.75f, true);
 
     private CDFFactory() {
     }
@@ -50,14 +90,22 @@ public final class CDFFactory {
     }
 
     static CDFImpl getVersion(ByteBuffer buf) throws Throwable {
+        return getVersion(buf, null);
+    }
+
+    /**
+     * creates CDFImpl object from a buffer containing the CDF. key
+     * identifies the source file of a compressed CDF, so that its scratch
+     * file may be reused; it is null for other sources.
+     */
+    static CDFImpl getVersion(ByteBuffer buf, String key) throws Throwable {
         LongBuffer lbuf = buf.asLongBuffer();
         long magic = lbuf.get();
         if (magic == CDF3_MAGIC) {
             return new CDF3Impl(buf);
         }
         if (magic == CDF3_COMPRESSED_MAGIC) {
-            ByteBuffer mbuf = uncompressed(buf, 3);
-            return new CDF3Impl(mbuf);
+            return uncompress(buf, 3, key);
         }
         if (magic == CDF2_MAGIC_DOT5) {
             int release = buf.getInt(24);
@@ -74,8 +122,7 @@ public final class CDFFactory {
                     } else {
                         if ((x == (short)0xcccc) && (sbuf.get() == 1)) {
                             // is compressed - positioned at CCR
-                            ByteBuffer mbuf = uncompressed(buf, 2);
-                            return new CDF2Impl(mbuf, 6);
+                            return uncompress(buf, 2, key);
                         }
                     }
                         
@@ -99,11 +146,36 @@ public final class CDFFactory {
         clean();
         File file = new File(fname);
         final String _fname = file.getPath();
+        String identity = fileIdentity(file);
+        File dir = indexDirectory;
+        MetadataIndex index = null;
+        if (dir != null) index = MetadataIndex.read(dir, file, identity);
         FileInputStream fis = new FileInputStream(file);
         FileChannel ch = fis.getChannel();
-        ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
-        fis.close();
-        CDFImpl cdf = getVersion(buf);
+        CDFImpl cdf = null;
+        MetadataIndex.opening.set(index);
+        try {
+            if (positionalReads) cdf = getPaged(ch, identity);
+            if (cdf != null) {
+                // read through the page cache
+            } else if (ch.size() > segmentThreshold) {
+                cdf = getSegmented(ch, _fname);
+            } else {
+                ByteBuffer buf =
+                    ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                fis.close();
+                cdf = getVersion(buf, identity);
+                if (cdf.buf == buf) {
+                    cdf.setRegion(new MappedMemory.FileRegion(file));
+                }
+            }
+        } catch (Throwable th) {
+            fis.close();
+            if (index != null) index.release();
+            throw th;
+        } finally {
+            MetadataIndex.opening.remove();
+        }
         ((CDFImpl)cdf).setOption(new ProcessingOption() {
             public String missingRecordOption() {
                 if (option) return "accept";
@@ -115,12 +187,291 @@ public final class CDFFactory {
             public boolean isFile() {return true;};
         });
         cdfMap.put(cdf, _fname);
+        if ((dir != null) && (index == null)) {
+            try {
+                MetadataIndex.write(dir, file, identity, cdf);
+            } catch (IOException ex) {
+                // the file is indexed on a later open
+            }
+        }
+        return cdf;
+    }
+
+    /**
+     * returns a CDFImpl object for a file, shared with other readers of
+     * the same version of the file. Each call must be matched by a call
+     * to release().
+     */
+    static CDFImpl acquire(String fname, boolean option) throws Throwable {
+        String key = fileIdentity(new File(fname)) + "|" + option;
+        synchronized (readers) {
+            CDFImpl cdf = readers.get(key);
+            if (cdf != null) {
+                cdf.references++;
+                return cdf;
+            }
+        }
+        CDFImpl cdf = getCDF(fname, option);
+        Vector<CDFImpl> evicted = new Vector<CDFImpl>();
+        synchronized (readers) {
+            CDFImpl other = readers.get(key);
+            if (other != null) {
+                // opened concurrently by another thread
+                other.references++;
+                evicted.add(cdf);
+                cdf = other;
+            } else {
+                cdf.references = 1;
+                if (readerCacheSize > 0) {
+                    cdf.cached = true;
+                    readers.put(key, cdf);
+                }
+                trimReaders(evicted);
+            }
+        }
+        for (int i = 0; i < evicted.size(); i++) evicted.get(i).close();
+        return cdf;
+    }
+
+    /**
+     * releases a CDFImpl object obtained from acquire(). When it is no
+     * longer used its read ahead is cancelled, and it is closed unless
+     * it is in the cache.
+     */
+    static void release(CDFImpl cdf) {
+        boolean cached;
+        synchronized (readers) {
+            if (cdf.references > 0) cdf.references--;
+            if (cdf.references > 0) return;
+            cached = cdf.cached;
+        }
+        if (cached) {
+            cdf.cancelReadAhead();
+        } else {
+            cdf.close();
+        }
+    }
+
+    /**
+     * Sets the number of parsed CDF files kept for sharing between
+     * readers of the same file. Files that are modified are parsed again.
+     * A file in the cache keeps its channel and memory mapping after its
+     * last reader is closed, until it is evicted; its read ahead is
+     * cancelled when its last reader is closed. Sharing is off (size 0)
+     * by default, so that closing a reader releases the file at once.
+     * @param size maximum number of files
+     */
+    public static void setReaderCacheSize(int size) {
+        Vector<CDFImpl> evicted = new Vector<CDFImpl>();
+        synchronized (readers) {
+            readerCacheSize = size;
+            trimReaders(evicted);
+        }
+        for (int i = 0; i < evicted.size(); i++) evicted.get(i).close();
+    }
+
+    /**
+     * removes least recently used entries beyond readerCacheSize, adding
+     * those no longer in use to evicted. Called with readers locked.
+     */
+    static void trimReaders(Vector<CDFImpl> evicted) {
+        Iterator<CDFImpl> it = readers.values().iterator();
+        while (readers.size() > readerCacheSize) {
+            CDFImpl eldest = it.next();
+            it.remove();
+            eldest.cached = false;
+            if (eldest.references == 0) evicted.add(eldest);
+        }
+    }
+
+    /**
+     * Sets whether CDFs opened afterwards read their metadata on demand.
+     * Opening then reads only the CDR, GDR and the names of variables;
+     * a variable's descriptor is read when the variable is first used,
+     * attribute descriptors when any attribute is first used, and
+     * attribute values when first requested.
+     * @param lazy true to read metadata on demand
+     */
+    public static void setLazyMetadata(boolean lazy) {
+        lazyMetadata = lazy;
+    }
+
+    /**
+     * Sets the directory in which an index of the metadata of each CDF
+     * file opened is kept. A file opened again, while unchanged, is set
+     * up from its index without reading its variable and attribute
+     * descriptors. Indexing is disabled if dir is null.
+     * @param dir the index directory
+     */
+    public static void setIndexDirectory(File dir) {
+        indexDirectory = dir;
+    }
+
+    /**
+     * Sets whether files opened afterwards are read with positional reads
+     * instead of being memory mapped. Data is then read in pages kept in
+     * a cache of bounded size (see getPageCache()), which suits file
+     * systems on which mapping is slow or not allowed. Whole file
+     * compressed CDFs are read into memory.
+     * @param value true to use positional reads
+     */
+    public static void setPositionalReads(boolean value) {
+        positionalReads = value;
+    }
+
+    /**
+     * returns the cache of pages of files read with positional reads.
+     * Its capacity bounds the memory used for such files.
+     */
+    public static BlockCache getPageCache() {
+        return PagedBuffer.pageCache;
+    }
+
+    /**
+     * creates CDFImpl object reading a file with positional reads. A whole
+     * file compressed CDF is read into memory. Returns null if the file
+     * is not a CDF.
+     */
+    static CDFImpl getPaged(FileChannel ch, String key) throws Throwable {
+        ByteBuffer head = ByteBuffer.allocate(28);
+        while (head.hasRemaining()) {
+            if (ch.read(head, head.position()) < 0) break;
+        }
+        if (head.position() < 8) return null;
+        long magic = head.getLong(0);
+        if (magic == CDF3_MAGIC) {
+            return new CDF3Impl(new PagedBuffer(ch, 3));
+        }
+        if (magic == CDF2_MAGIC_DOT5) {
+            return new CDF2Impl(new PagedBuffer(ch, 2), head.getInt(24));
+        }
+        if ((magic >>> 32) != 0xcdf26002l) {
+            if (magic != CDF3_COMPRESSED_MAGIC) return null;
+        } else {
+            if ((magic & 0xffffffffl) == 0x0000ffffl) {
+                return new CDF2Impl(new PagedBuffer(ch, 2), 6);
+            }
+        }
+        if (ch.size() > Integer.MAX_VALUE) {
+            throw new Throwable("Size of compressed file exceeds " +
+            "Integer.MAX_VALUE");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int)ch.size());
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, buf.position()) < 0) break;
+        }
+        ch.close();
+        buf.flip();
+        return getVersion(buf, key);
+    }
+
+    /**
+     * creates CDFImpl object for a file too large to be mapped as a
+     * single buffer. Only uncompressed version 3 files are supported.
+     * The channel is kept open for mapping segments on demand.
+     */
+    static CDFImpl getSegmented(FileChannel ch, String fname)
+        throws Throwable {
+        ByteBuffer mbuf = ByteBuffer.allocate(8);
+        ch.read(mbuf, 0);
+        if (mbuf.getLong(0) != CDF3_MAGIC) {
+            ch.close();
+            throw new Throwable("Size of file " + fname + " exceeds " +
+            "Integer.MAX_VALUE. Only uncompressed version 3 files of this " +
+            "size can be mapped.");
+        }
+        return new CDF3Impl(new SegmentedBuffer(ch));
+    }
+    /**
+     * Sets whether CDFs opened from http URLs are read with HTTP range
+     * requests, instead of being downloaded as a whole. Only the
+     * descriptor records and the blocks of data that are used are then
+     * transferred, and kept in the page cache (see getPageCache()).
+     * Blocks of a variable that are close to each other are fetched with
+     * a single request. CDFs are downloaded as before if the server does
+     * not honour range requests, and whole file compressed CDFs are
+     * always downloaded.
+     * @param value true to use range requests
+     */
+    public static void setRangeRequests(boolean value) {
+        rangeRequests = value;
+    }
+
+    /**
+     * creates CDFImpl object reading a remote CDF with range requests.
+     * Returns null if range requests are not supported for url, or the
+     * CDF is whole file compressed.
+     */
+    static CDFImpl getRemote(URL url) throws Throwable {
+        String[] validator = new String[1];
+        long size = HttpBuffer.contentLength(url, validator);
+        if (size < 28) return null;
+        String tag = validator[0];
+        ByteBuffer head = HttpBuffer.getRange(url, 0, 28, size, tag);
+        if (head == null) return null;
+        long magic = head.getLong(0);
+        CDFImpl cdf = null;
+        if (magic == CDF3_MAGIC) {
+            cdf = new CDF3Impl(new HttpBuffer(url, size, 3, tag));
+        } else if (magic == CDF2_MAGIC_DOT5) {
+            cdf = new CDF2Impl(new HttpBuffer(url, size, 2, tag),
+                head.getInt(24));
+        } else if (((magic >>> 32) == 0xcdf26002l) &&
+            ((magic & 0xffffffffl) == 0x0000ffffl)) {
+            cdf = new CDF2Impl(new HttpBuffer(url, size, 2, tag), 6);
+        }
+        if (cdf == null) return null;
+        final String _url = url.toString();
+        cdf.setSource(new CDFSource() {
+            public String getName() {return _url;};
+            public boolean isFile() {return false;};
+        });
+        return cdf;
+    }
+
+    /**
+     * Sets the directory in which CDFs opened from http URLs are kept, so
+     * that they are downloaded again only if they have changed, as told
+     * by the server in reply to a conditional request. Cached copies are
+     * memory mapped as local files. When the total size of the copies
+     * exceeds maxSize, the least recently used ones are deleted. The
+     * directory may be shared by several processes.
+     * @param dir cache directory, or null to stop caching
+     * @param maxSize upper limit of the total size of cached copies
+     */
+    public static void setURLCache(File dir, long maxSize) {
+        urlCache = (dir == null)?null:new URLCache(dir, maxSize);
+    }
+
+    /**
+     * creates CDFImpl object from the local copy of a remote CDF. Returns
+     * null if url is not cached. The source of the CDF is url, as for a
+     * CDF that is not cached.
+     */
+    static CDFImpl getCached(URL url) throws Throwable {
+        URLCache cache = urlCache;
+        if ((cache == null) || !URLCache.accepts(url)) return null;
+        CDFImpl cdf = getCDF(cache.get(url).getPath());
+        // cached blocks are still shared with other readers of the copy
+        cdf.getIdentity();
+        final String _url = url.toString();
+        cdf.setSource(new CDFSource() {
+            public String getName() {return _url;};
+            public boolean isFile() {return false;};
+        });
         return cdf;
     }
+
     /**
      * creates  CDFImpl object from a URL.
      */
     static CDFImpl getCDF(URL url) throws Throwable {
+        CDFImpl cached = getCached(url);
+        if (cached != null) return cached;
+        if (rangeRequests) {
+            CDFImpl cdf = getRemote(url);
+            if (cdf != null) return cdf;
+        }
         final String _url = url.toString();
         URLConnection con = new CDFUrl(url).openConnection();
         int remaining = con.getContentLength();
@@ -139,47 +490,180 @@ public final class CDFFactory {
         });
         return cdf;
     }
+    /**
+     * returns a string identifying a file by its path, size and
+     * modification time.
+     */
+    static String fileIdentity(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException ex) {
+            path = file.getAbsolutePath();
+        }
+        return path + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    /**
+     * Sets the directory for scratch files that hold uncompressed copies
+     * of whole file compressed CDFs. The default is the directory given
+     * by java.io.tmpdir.
+     * @param dir the scratch directory, or null for the default
+     */
+    public static void setScratchDirectory(File dir) {
+        scratchDirectory = dir;
+    }
+
+    /**
+     * Sets the uncompressed size above which a whole file compressed CDF
+     * is inflated into a memory mapped scratch file rather than into
+     * memory. Scratch files are reused by later opens of the same,
+     * unchanged, source file, and deleted on exit.
+     * @param size size in bytes; 0 to always use a scratch file
+     */
+    public static void setScratchThreshold(long size) {
+        scratchThreshold = size;
+    }
+
+    /**
+     * creates CDFImpl object for a whole file compressed CDF.
+     */
+    static CDFImpl uncompress(ByteBuffer buf, int version, String key)
+        throws Throwable {
+        long ulen = (version == 3)?buf.getLong(8 + 20):buf.getInt(8 + 12);
+        if ((ulen + 8) <= scratchThreshold) {
+            ByteBuffer mbuf = uncompressed(buf, version);
+            if (version == 3) return new CDF3Impl(mbuf);
+            return new CDF2Impl(mbuf, 6);
+        }
+        File file = scratchFile(buf, version, key, ulen);
+        FileChannel ch = new RandomAccessFile(file, "r").getChannel();
+        if (ch.size() > segmentThreshold) {
+            if (version == 3) return new CDF3Impl(new SegmentedBuffer(ch));
+            ch.close();
+            throw new Throwable("Uncompressed size of version 2 CDF " +
+            "exceeds Integer.MAX_VALUE");
+        }
+        ByteBuffer mbuf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        ch.close();
+        CDFImpl cdf;
+        if (version == 3) {
+            cdf = new CDF3Impl(mbuf);
+        } else {
+            cdf = new CDF2Impl(mbuf, 6);
+        }
+        cdf.setRegion(new MappedMemory.FileRegion(file));
+        return cdf;
+    }
+
+    /**
+     * returns a scratch file containing the uncompressed CDF, reusing the
+     * file created for the same key if it is still present.
+     */
+    static File scratchFile(ByteBuffer buf, int version, String key,
+        long ulen) throws IOException {
+        if (key != null) {
+            synchronized (scratchFiles) {
+                File file = scratchFiles.get(key);
+                if ((file != null) && (file.length() == (ulen + 8))) {
+                    return file;
+                }
+                file = writeScratchFile(buf, version, ulen);
+                scratchFiles.put(key, file);
+                return file;
+            }
+        }
+        return writeScratchFile(buf, version, ulen);
+    }
+
+    static File writeScratchFile(ByteBuffer buf, int version, long ulen)
+        throws IOException {
+        int DATA_OFFSET = (version == 3)?(8 + 32):(8 + 20);
+        long len = (version == 3)?(buf.getLong(8) - 32):(buf.getInt(8) - 20);
+        File file = File.createTempFile("cdfj", ".cdf", scratchDirectory);
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        FileChannel ch = fos.getChannel();
+        try {
+            ByteBuffer magic = buf.duplicate();
+            magic.position(0);
+            magic.limit(8);
+            while (magic.hasRemaining()) ch.write(magic);
+            ByteBuffer src = buf.duplicate();
+            src.position(DATA_OFFSET);
+            src.limit((int)(DATA_OFFSET + len));
+            CompressionCodec codec =
+                CompressionCodecs.getCodec(compressionType(buf, version));
+            long n;
+            if (codec instanceof GZIPCodec) {
+                n = ((GZIPCodec)codec).decompress(src, ch);
+            } else {
+                if (ulen > Integer.MAX_VALUE) {
+                    throw new IOException("Uncompressed size " + ulen +
+                    " exceeds Integer.MAX_VALUE");
+                }
+                ByteBuffer dst = ByteBuffer.allocate((int)ulen);
+                n = codec.decompress(src, dst);
+                dst.flip();
+                while (dst.hasRemaining()) ch.write(dst);
+            }
+            if (n != ulen) {
+                throw new IOException("Compressed CDF is truncated: " + n +
+                " of " + ulen + " bytes");
+            }
+        } catch (IOException ex) {
+            fos.close();
+            file.delete();
+            throw ex;
+        }
+        fos.close();
+        return file;
+    }
+
     static ByteBuffer uncompressed(ByteBuffer buf, int version) {
         int DATA_OFFSET = 8 + 20;
         if (version == 3) DATA_OFFSET = 8 + 32;
-        byte[] ba;
-        int offset;
         int len = buf.getInt(8) - 20;
         if (version == 3) len = (int)(buf.getLong(8) - 32);
         int ulen = buf.getInt(8 + 12);
         if (version == 3) ulen = (int)(buf.getLong(8 + 20));
+        CompressionCodec codec =
+            CompressionCodecs.getCodec(compressionType(buf, version));
         byte [] udata = new byte[ulen + 8];
+        buf.position(0);
         buf.get(udata, 0, 8); // copy the magic words
-        if (!buf.hasArray()) { // read data into byte array
-            ba = new byte[len];
-            buf.position(DATA_OFFSET);
-            buf.get(ba);
-            offset = 0;
-        } else {
-            ba = buf.array();
-            offset = DATA_OFFSET;
-        }
+        ByteBuffer src = buf.duplicate();
+        src.position(DATA_OFFSET);
+        src.limit(DATA_OFFSET + len);
+        ByteBuffer dst = ByteBuffer.wrap(udata);
+        dst.position(8);
         int n = 0;
         try {
-            ByteArrayInputStream bais = 
-                new ByteArrayInputStream(ba, offset, len);
-            GZIPInputStream gz = new GZIPInputStream(bais);
-            int toRead = udata.length - 8;
-            int off = 8;
-            while (toRead > 0) {
-                n = gz.read(udata, off, toRead);
-                if (n == -1) break;
-                off += n;
-                toRead -= n;
-            }
+            n = codec.decompress(src, dst);
         } catch (IOException ex) {
             System.out.println(ex.toString());
             return null;
         }
-        if (n < 0) return null;
+        if (n < ulen) return null;
         return ByteBuffer.wrap(udata);
     }
 
+    /**
+     * returns compression type of a compressed CDF, read from the CPR
+     * that the CCR points to.
+     */
+    static int compressionType(ByteBuffer buf, int version) {
+        long cpr = (version == 3)?buf.getLong(8 + 12):buf.getInt(8 + 8);
+        int recordType = (version == 3)?8:4;
+        if ((cpr <= 0) || ((cpr + recordType + 8) > buf.limit())) {
+            return CompressionCodec.GZIP;
+        }
+        if (buf.getInt((int)cpr + recordType) != CDFImpl.CPR_RECORD_TYPE) {
+            return CompressionCodec.GZIP;
+        }
+        return buf.getInt((int)cpr + recordType + 4);
+    }
+
     public static class ProcessingOption {
         String missingRecordsOption() {return "reject";}
     }
@@ -191,27 +675,33 @@ public final class CDFFactory {
         public boolean isByteArray() {return false;};
         public boolean isByteBuffer() {return false;};
     }
-    private static long mappedMemoryUsed() {
-        if (cdfMap.size() == 0) return 0;
-        Set set = cdfMap.keySet();
-        Iterator it = set.iterator();
-        long size = 0;
-        while (it.hasNext()) {
-            size += ((CDFImpl)it.next()).getBuffer().limit();
-        }
-        return size;
+    /**
+     * returns number of bytes of CDF files currently mapped.
+     */
+    public static long mappedMemoryUsed() {
+        return MappedMemory.getUsed();
     }
+
+    /**
+     * Sets the budget for memory mapped CDF files. When it is exceeded,
+     * the least recently used files, or windows of large files, are
+     * unmapped; they are mapped again when next used.
+     * A mapping from which buffers, such as views returned by
+     * Variable.getViews(), have been obtained is left to the garbage
+     * collector, rather than unmapped; use CDFImpl.pin() to keep a CDF
+     * mapped while such buffers are in use.
+     * @param value budget in bytes
+     */
     public static void setMaxMappedMemory(long value) {
-        if (maxMappedMemory != null) {
-            if (maxMappedMemory.longValue() > value) return;
-        }
         maxMappedMemory = new Long(value);
+        MappedMemory.setBudget(value);
     }
+
+    /**
+     * unmaps least recently used files until the mapped memory is within
+     * the budget.
+     */
     public static void clean() {
-        if (maxMappedMemory != null) {
-            if (mappedMemoryUsed() > maxMappedMemory.longValue()) {
-                System.gc();
-            }
-        }
+        MappedMemory.trim(null);
     }
 }
@@ -2,6 +2,7 @@ package gov.nasa.gsfc.spdf.cdfj;
 import java.io.*;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.lang.reflect.*;
 import java.util.zip.*;
 /*public*/ abstract class CDFImpl implements java.io.Serializable {
@@ -14,6 +15,12 @@ import java.util.zip.*;
     public static final int VXR_RECORD_TYPE = 6;
     public static final int VVR_RECORD_TYPE = 7;
     public static final int CVVR_RECORD_TYPE = 13;
+    public static final int CPR_RECORD_TYPE = 11;
+    /**
+     * Number of leading bytes, containing the CDR, read when a file is
+     * read through a channel.
+     */
+    static final int HEADER_SIZE = 1024;
     public static final String STRINGDELIMITER = new String("\\N ");
     /**
      * CDF offsets
@@ -70,9 +77,44 @@ import java.util.zip.*;
     int lastLeapSecondId;
 
     transient ByteBuffer buf;
+    /**
+     * Set when the file is read through a channel, rather than held in a
+     * single buffer: if it is too large to be mapped as one buffer, or is
+     * read with positional reads.
+     */
+    transient ChannelBuffer storage;
+    /**
+     * Set when buf is a mapped file managed by MappedMemory; buf is then
+     * null, and the mapping is obtained from the region.
+     */
+    transient MappedMemory.Region region;
+    transient Object identity;
+    /**
+     * Number of readers sharing this object, and whether it is in the
+     * shared reader cache of CDFFactory.
+     */
+    transient int references;
+    transient boolean cached;
+    /**
+     * Read ahead tasks scheduled for this CDF, and the number of times
+     * read ahead has been cancelled; a task stops when it changes.
+     */
+    transient Vector<Future<?>> readAheads;
+    transient volatile int readAheadGeneration;
+    transient volatile boolean closed;
     protected String[] varNames;
     protected Hashtable variableTable;
     Hashtable attributeTable;
+    /**
+     * Set in lazy mode: location of the VDR of each variable, by name
+     * and by type and number. Variables are read when first used.
+     */
+    transient Hashtable<String, VDRLocation> vdrIndex;
+    transient Hashtable<String, VDRLocation> vdrNumbers;
+    /**
+     * Index the CDF was set up from, if any; it stays mapped until close.
+     */
+    transient MetadataIndex index;
     protected CDFCore thisCDF;
     protected CDFFactory.CDFSource source;
     protected CDFFactory.ProcessingOption processingOption;
@@ -82,11 +124,23 @@ import java.util.zip.*;
     }
 
     protected ByteBuffer getRecord(long offset)  {
-        ByteBuffer _buf = buf.duplicate();
+        if (storage != null) return storage.getRecord(offset);
+        ByteBuffer _buf = buffer().duplicate();
         _buf.position((int)offset);
         return _buf.slice();
     }
 
+    /**
+     * returns type of the record at offset, reading only its header.
+     */
+    int recordType(long offset) {
+        if (storage == null) {
+            return getRecord(offset).getInt(offset_RECORD_TYPE);
+        }
+        return storage.get(offset, offset_RECORD_TYPE + 4)
+            .getInt(offset_RECORD_TYPE);
+    }
+
     /**
      * returns byte order of source CDF
      */
@@ -99,12 +153,120 @@ import java.util.zip.*;
         return ((flags & FLAGS_MAJORITY_MASK) == ROW_MAJOR);
     }
 
+    /**
+     * reads the variable and attribute descriptors, or, if
+     * CDFFactory.lazyMetadata is set, only the names and locations of
+     * variable descriptors.
+     */
+    void readMetadata() {
+        MetadataIndex index = MetadataIndex.opening.get();
+        if (index != null) {
+            index.apply(this);
+            return;
+        }
+        // descriptors of remote files are read when used, to save requests
+        if (!CDFFactory.lazyMetadata &&
+            ((storage == null) || !storage.isRemote())) {
+            variableTable = variables();
+            attributeTable = attributes();
+            return;
+        }
+        long [] offsets = new long[] {zVDRHead, rVDRHead};
+        String [] vtypes = {"z", "r"};
+        vdrIndex = new Hashtable<String, VDRLocation>();
+        vdrNumbers = new Hashtable<String, VDRLocation>();
+        Vector<String> v = new Vector<String>();
+        for (int vtype = 0; vtype < 2; vtype++) {
+            long offset = offsets[vtype];
+            while (offset != 0) {
+                ByteBuffer _buf = getRecord(offset);
+                _buf.position(offset_NEXT_VDR);
+                long next = longInt(_buf);
+                VDRLocation loc = new VDRLocation();
+                loc.offset = offset;
+                loc.vtype = vtypes[vtype];
+                loc.number = _buf.getInt(offset_NUM);
+                loc.name = getString(offset + offset_VAR_NAME);
+                v.add(loc.name);
+                vdrIndex.put(loc.name, loc);
+                vdrNumbers.put(loc.vtype + loc.number, loc);
+                offset = next;
+            }
+        }
+        varNames = new String[v.size()];
+        for (int i = 0; i < v.size(); i++) {
+            varNames[i] = v.elementAt(i);
+        }
+        variableTable = new Hashtable<String, CDFVariable>();
+    }
+
+    static final class VDRLocation {
+        String name;
+        String vtype;
+        int number;
+        long offset;
+        /**
+         * attribute entries read before the variable
+         */
+        Vector<AttributeEntry> entries = new Vector<AttributeEntry>();
+        /**
+         * first records, last records and offsets of the data blocks, in
+         * the mapping of a MetadataIndex, if read from one
+         */
+        transient LongBuffer blocks;
+
+        long[][] getBlocks() {
+            LongBuffer lb = blocks.duplicate();
+            long[][] la = new long[3][lb.remaining()/3];
+            for (int k = 0; k < 3; k++) lb.get(la[k]);
+            return la;
+        }
+    }
+
+    /**
+     * returns the named variable, reading its descriptor if needed.
+     */
+    CDFVariable variable(String name) {
+        if (vdrIndex == null) return (CDFVariable)variableTable.get(name);
+        synchronized (variableTable) {
+            CDFVariable var = (CDFVariable)variableTable.get(name);
+            if (var != null) return var;
+            VDRLocation loc = vdrIndex.get(name);
+            if (loc == null) return null;
+            var = new CDFVariable(loc.offset, loc.vtype);
+            if (loc.blocks != null) var.setLocator(loc.getBlocks());
+            var.attributes.addAll(loc.entries);
+            loc.entries = null;
+            variableTable.put(name, var);
+            return var;
+        }
+    }
+
+    /**
+     * links an attribute entry to its variable in lazy mode, keeping it
+     * with the VDR location if the variable has not been read. Returns
+     * false if there is no such variable.
+     */
+    boolean linkToLocation(AttributeEntry ae, String type) {
+        VDRLocation loc = vdrNumbers.get(type + ae.getVariableNumber());
+        if (loc == null) return false;
+        synchronized (variableTable) {
+            CDFVariable var = (CDFVariable)variableTable.get(loc.name);
+            if (var != null) {
+                var.attributes.add(ae);
+            } else {
+                loc.entries.add(ae);
+            }
+        }
+        return true;
+    }
+
     /**
      * returns name to Variable map
      */
     protected Hashtable variables()  {
         if (variableTable != null) return variableTable;
-        int [] offsets = new int[] {(int)zVDRHead, (int)rVDRHead};
+        long [] offsets = new long[] {zVDRHead, rVDRHead};
         String [] vtypes = {"z", "r"};
         Hashtable table = new Hashtable();
         Vector v = new Vector();
@@ -149,7 +311,7 @@ import java.util.zip.*;
      * the named variable
      */
     public Variable getVariable(String name) {
-        return (Variable)variableTable.get(name);
+        return variable(name);
     }
 
     /**
@@ -176,6 +338,7 @@ import java.util.zip.*;
      */
     public String [] globalAttributeNames() {
         Vector vec = new Vector();
+        Hashtable<?, ?> attributeTable = attributes();
         if (attributeTable == null) return new String[0];
         Set set = attributeTable.keySet();
         Iterator iter = set.iterator();
@@ -196,7 +359,8 @@ import java.util.zip.*;
      * returns names of variable attributes in a String[]
      */
     public String [] variableAttributeNames(String name) {
-        CDFVariable var = (CDFVariable)variableTable.get(name);
+        attributes();
+        CDFVariable var = variable(name);
         if (var == null) return null;
         String [] sa = new String [var.attributes.size()];
         for (int i = 0; i < sa.length; i++) {
@@ -210,6 +374,7 @@ import java.util.zip.*;
      * returns value of the named global attribute
      */
     public Object getAttribute(String atr) {
+        Hashtable<?, ?> attributeTable = attributes();
         if (attributeTable == null) return null;
         CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
         if (a == null) return null;
@@ -232,6 +397,7 @@ import java.util.zip.*;
      * object.
      */
     public GlobalAttribute getGlobalAttribute(String atr) throws Throwable {
+        Hashtable<?, ?> attributeTable = attributes();
         if (attributeTable == null) throw new Throwable("No attribute named " + atr);
         final CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
         if (a == null) throw new Throwable("No attribute named " + atr);
@@ -270,7 +436,8 @@ import java.util.zip.*;
      * returns value of the named attribute for the named variable
      */
     public Object getAttribute(String var, String atr) {
-        CDFVariable c = (CDFVariable)variableTable.get(var);
+        attributes();
+        CDFVariable c = variable(var);
         if (c == null) return null;
         Vector attrs = c.attributes;
         Vector values = new Vector();
@@ -287,6 +454,7 @@ import java.util.zip.*;
      * returns list of AttributeEntry objects for the named global attribute.
      */
     public Vector getAttributeEntries(String atr) throws Throwable {
+        Hashtable<?, ?> attributeTable = attributes();
         if (attributeTable == null) throw new Throwable("No attribute named " + atr);
         final CDFAttribute a = (CDFAttribute)attributeTable.get(atr);
         if (a == null) throw new Throwable("No attribute named " + atr);
@@ -300,7 +468,8 @@ import java.util.zip.*;
      * for the named variable.
      */
     public Vector getAttributeEntries(String var, String atr) {
-        CDFVariable c = (CDFVariable)variableTable.get(var);
+        attributes();
+        CDFVariable c = variable(var);
         if (c == null) return null;
         Vector attrs = c.attributes;
         Vector entries = new Vector();
@@ -333,7 +502,19 @@ import java.util.zip.*;
         if (attributeTable != null) return attributeTable;
         long offset = ADRHead;
         if (offset == 0) return null;
-        Hashtable table = new Hashtable();
+        if (vdrIndex != null) {
+            synchronized (vdrIndex) {
+                if (attributeTable == null) attributeTable = readAttributes();
+                return attributeTable;
+            }
+        }
+        return readAttributes();
+    }
+
+    Hashtable<String, CDFAttribute> readAttributes()  {
+        long offset = ADRHead;
+        Hashtable<String, CDFAttribute> table =
+            new Hashtable<String, CDFAttribute>();
         ByteBuffer _buf = getRecord(offset);
         while (true) {
             _buf.position(offset_NEXT_ADR);
@@ -348,7 +529,6 @@ import java.util.zip.*;
             offset = next;
             _buf = getRecord(offset);
         }
-        attributeTable = table;
         return table;
     }
     /**
@@ -360,6 +540,20 @@ import java.util.zip.*;
         int num;
         Vector zEntries = new Vector();
         Vector gEntries = new Vector();
+
+        /**
+         * creates an attribute with entries read from a MetadataIndex.
+         */
+        CDFAttribute(String name, int scope, int num, Vector g, Vector z) {
+            this.name = name;
+            this.scope = scope;
+            this.num = num;
+            gEntries = g;
+            zEntries = z;
+            if ((scope == 2) || (scope == 4)) linkToVariables(gEntries, "r");
+            linkToVariables(zEntries, "z");
+        }
+
         public CDFAttribute(long offset)  {
             name = getString(offset + offset_ATTR_NAME);
             ByteBuffer _buf = getRecord(offset);
@@ -393,15 +587,16 @@ import java.util.zip.*;
         public Vector getAttributeEntries(long offset) {
             if (offset == 0) return null;
             Vector list = new Vector();
-            ByteBuffer _buf = getRecord(offset);
             while (true) {
+                ByteBuffer _buf = getRecord(offset);
                 _buf.position(offset_NEXT_AEDR);
                 long next = longInt(_buf);
                 _buf.position(0);
-                AttributeEntry ae = new CDFAttributeEntry(_buf, name);
+                AttributeEntry ae = new CDFAttributeEntry(_buf, name, offset,
+                    vdrIndex != null);
                 list.add(ae);
                 if (next == 0) break;
-                _buf = getRecord(next);
+                offset = next;
             }
             return list;
         }
@@ -411,6 +606,9 @@ import java.util.zip.*;
         public void linkToVariables(Vector entries, String type) {
             for (int e = 0; e < entries.size(); e++) {
                 AttributeEntry ae = (AttributeEntry)entries.elementAt(e);
+                if (vdrIndex != null) {
+                    if (linkToLocation(ae, type)) continue;
+                }
                 CDFVariable var = (CDFVariable)
                        getCDFVariable(type, ae.getVariableNumber());
                 if (var == null) {
@@ -438,7 +636,6 @@ import java.util.zip.*;
      * AttributeEntry class
      */
     public class CDFAttributeEntry implements AttributeEntry, Serializable {
-        transient ByteBuffer _buf;
         int variableNumber;
         int type;
         int nelement;
@@ -446,15 +643,53 @@ import java.util.zip.*;
         String stringValue;
         String[] stringValues = null;
         Object value;
+        /**
+         * offset of the AEDR, -1 if not known
+         */
+        long offset = -1;
+        volatile boolean valueRead;
         public CDFAttributeEntry(ByteBuffer buf, String name) {
+            this(buf, name, -1, false);
+        }
+
+        /**
+         * reads the entry header from buf, the AEDR at offset. If lazy,
+         * the value is read when first used.
+         */
+        CDFAttributeEntry(ByteBuffer buf, String name, long offset,
+            boolean lazy) {
+            this.offset = offset;
             attribute = name;
-            _buf = buf.duplicate();
+            ByteBuffer _buf = buf.duplicate();
             _buf.position(offset_ENTRYNUM);
             variableNumber = _buf.getInt();
             _buf.position(offset_ATTR_DATATYPE);
             type = _buf.getInt();
             _buf.position(offset_ATTR_NUM_ELEMENTS);
             nelement = _buf.getInt();
+            if (!lazy) readValue(_buf);
+        }
+
+        /**
+         * creates an entry whose header was read from a MetadataIndex.
+         */
+        CDFAttributeEntry(String name, long offset, int variableNumber,
+            int type, int nelement) {
+            attribute = name;
+            this.offset = offset;
+            this.variableNumber = variableNumber;
+            this.type = type;
+            this.nelement = nelement;
+        }
+
+        void readValue() {
+            if (valueRead) return;
+            synchronized (this) {
+                if (!valueRead) readValue(getRecord(offset));
+            }
+        }
+
+        void readValue(ByteBuffer _buf) {
             _buf.position(offset_VALUE);
             if (type > 50) {
                 byte [] ba = new byte[nelement];
@@ -484,6 +719,7 @@ import java.util.zip.*;
             } else {
                 value = getNumberAttribute(type, nelement, _buf, byteOrder);
             }
+            valueRead = true;
         }
         public int getType() {return type;}
         public int getNumberOfElements() {return nelement;}
@@ -494,12 +730,14 @@ import java.util.zip.*;
             return DataTypes.isStringType(type);
         }
         public Object getValue() {
+            readValue();
             return (isStringType())?(stringValues!=null?stringValues:
                                                         stringValue):value;
         }
         public String getAttributeName() {return attribute;}
         public int getVariableNumber() {return variableNumber;}
         public boolean isSameAs(AttributeEntry ae) {
+            readValue();
             if (getType() != ae.getType()) return false;
             if (getNumberOfElements() != ae.getNumberOfElements()) return false;
                 
@@ -541,19 +779,21 @@ import java.util.zip.*;
         public Object padValue;
         long offset;
         boolean completed = false;
-        transient ByteBuffer _buf;
         int dataItemSize;
         int blockingFactor;
+        long cprOffset;
+        int compressionType = -1;
         DataLocator locator;
         public CDFVariable(long offset, String vtype) {
             this.offset = offset;
             this.vtype = vtype;
-            _buf = getRecord(offset);
+            ByteBuffer _buf = getRecord(offset);
             name = getString(offset + offset_VAR_NAME);
             _buf.position(offset_VAR_NUM_ELEMENTS);
             numberOfElements = _buf.getInt();
             _buf.position(offset_NUM);
             number = _buf.getInt();
+            cprOffset = longInt(_buf);
             _buf.position(offset_FLAGS);
             flags = _buf.getInt();
             _buf.position(offset_sRecords);
@@ -634,7 +874,7 @@ import java.util.zip.*;
         synchronized void complete() {
             if (completed) return;
             if (numberOfValues > 0) {
-                locator = new DataLocator(_buf, numberOfValues,
+                locator = new DataLocator(getRecord(offset), numberOfValues,
                     ((flags & 4) != 0));
                 checkContinuity();
             }
@@ -643,17 +883,26 @@ import java.util.zip.*;
         boolean isComplete() {
             return completed;
         }
+
+        /**
+         * sets the location of data blocks, read from a MetadataIndex.
+         */
+        synchronized void setLocator(long[][] blocks) {
+            locator = new DataLocator(blocks[0], blocks[1], blocks[2],
+                numberOfValues, ((flags & 4) != 0));
+            checkContinuity();
+            completed = true;
+        }
         boolean recordGap = false;
         void checkContinuity() {
             if (numberOfValues == 0) return;
-            long[][] locations = locator.getLocations();
-            long last = locations[0][0] - 1;
-            for (int i = 0; i < locations.length; i++) {
-                if (locations[i][0] != (last + 1)) {
+            long last = locator.firstRecords[0] - 1;
+            for (int i = 0; i < locator.size(); i++) {
+                if (locator.firstRecords[i] != (last + 1)) {
                     recordGap = true;
                     break;
                 }
-                last = locations[i][1];
+                last = locator.lastRecords[i];
             }
             if (recordGap) {
                 if (sRecords == 0) {
@@ -718,13 +967,12 @@ import java.util.zip.*;
                 if ((flags & 4) != 0) throw new Throwable("Function not " +
                     "supported for compressed variables ");
             }
-            long[][] locations = locator.getLocations();
             Vector dbufs = new Vector();
             int size = getDataItemSize();
-            for (int i = 0; i < locations.length; i++) {
-                int first = (int)locations[i][0];
-                int last = (int)locations[i][1];
-                ByteBuffer bv = getRecord(locations[i][2]);
+            for (int i = 0; i < locator.size(); i++) {
+                int first = (int)locator.firstRecords[i];
+                int last = (int)locator.lastRecords[i];
+                ByteBuffer bv = getRecord(locator.offsets[i]);
                 int clen = (last - first + 1)*size;
                         //System.out.println("uclen: " + clen);
                 boolean compressed = false;
@@ -754,6 +1002,55 @@ import java.util.zip.*;
             return getDataBuffers(false);
         }
 
+        /**
+         * Returns read only views of the stored values of a range of
+         * records, one per data block overlapping the range, without
+         * copying. Returns null if the variable is compressed, or if its
+         * stored type or byte order differs from the target.
+         */
+        public VariableDataBuffer[] getViews(Class<?> cl, ByteOrder bo,
+            int[] pt)
+            throws Throwable {
+            if (!completed) complete();
+            if (isCompressed()) return null;
+            if (bo != getByteOrder()) return null;
+            if (DataTypes.storedClass(type) != cl) return null;
+            if (locator == null) return new VariableDataBuffer[0];
+            int first;
+            int last;
+            if (!recordVariance()) {
+                first = 0;
+                last = 0;
+            } else if (pt == null) {
+                first = (int)locator.firstRecords[0];
+                last = (int)locator.lastRecords[locator.size() - 1];
+            } else {
+                first = pt[0];
+                last = (pt.length > 1)?pt[1]:pt[0];
+            }
+            int size = getDataItemSize();
+            Vector<VariableDataBuffer> views =
+                new Vector<VariableDataBuffer>();
+            for (int blk = locator.blockIndex(first); blk < locator.size();
+                blk++) {
+                int _first = (int)locator.firstRecords[blk];
+                if (_first > last) break;
+                int _last = (int)locator.lastRecords[blk];
+                int from = (first > _first)?first:_first;
+                int to = (last < _last)?last:_last;
+                ByteBuffer bv = getRecord(locator.offsets[blk]);
+                bv.position(offset_RECORDS + (from - _first)*size);
+                ByteBuffer view = bv.slice();
+                view.limit((to - from + 1)*size);
+                view = view.asReadOnlyBuffer();
+                view.order(getByteOrder());
+                views.add(new VariableDataBuffer(from, to, view, false));
+            }
+            VariableDataBuffer[] vdbuf = new VariableDataBuffer[views.size()];
+            views.toArray(vdbuf);
+            return vdbuf;
+        }
+
         /**
          * returns whether row major ordering is in use
          */
@@ -784,6 +1081,22 @@ import java.util.zip.*;
             return locator.isReallyCompressed();
         }
 
+        /**
+         * returns compression type recorded in the variable's CPR
+         */
+        public synchronized int getCompressionType() {
+            if (!isCompressed()) return CompressionCodec.NONE;
+            if (compressionType >= 0) return compressionType;
+            compressionType = CompressionCodec.GZIP;
+            if (cprOffset > 0) {
+                ByteBuffer cpr = getRecord(cprOffset);
+                if (cpr.getInt(offset_RECORD_TYPE) == CPR_RECORD_TYPE) {
+                    compressionType = cpr.getInt(offset_RECORD_TYPE + 4);
+                }
+            }
+            return compressionType;
+        }
+
         /**
          * returns pad value
          */
@@ -909,9 +1222,9 @@ import java.util.zip.*;
         public int[] getRecordRange() {
             if (!completed) complete();
             if (locator == null) return null;
-            long[][] locations = locator.getLocations();
+            int n = locator.size();
             return new int[]
-                {(int)locations[0][0], (int)locations[locations.length - 1][1]};
+                {(int)locator.firstRecords[0], (int)locator.lastRecords[n - 1]};
         }
 
         /**
@@ -1356,34 +1669,90 @@ import java.util.zip.*;
 
     /**
      * DataLocator
+     * Block locations are held in three parallel arrays, ordered by
+     * first record.
      */
     public class DataLocator implements VariableDataLocator,
         java.io.Serializable {
-        private transient ByteBuffer _buf;
         private int numberOfValues;
         private boolean compressed;
-        protected Vector locations = new Vector();
+        final long[] firstRecords;
+        final long[] lastRecords;
+        final long[] offsets;
         protected DataLocator(ByteBuffer b, int n, boolean compr) {
-            _buf = b;
+            ByteBuffer _buf = b;
             numberOfValues = n;
             compressed = compr;
             _buf.position(offset_FIRST_VXR);
             long offset = longInt(_buf);
             ByteBuffer bx = getRecord(offset);
             Vector v =  _getLocations(bx);
-            registerNodes(bx, v);
+            Vector<long[]> locations = new Vector<long[]>();
+            registerNodes(bx, v, locations);
+            int count = locations.size();
+            firstRecords = new long[count];
+            lastRecords = new long[count];
+            offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                long[] loc = locations.elementAt(i);
+                firstRecords[i] = loc[0];
+                lastRecords[i] = loc[1];
+                offsets[i] = loc[2];
+            }
+        }
+
+        DataLocator(long[] first, long[] last, long[] off, int n,
+            boolean compr) {
+            firstRecords = first;
+            lastRecords = last;
+            offsets = off;
+            numberOfValues = n;
+            compressed = compr;
         }
 
         public boolean isReallyCompressed() {return compressed;}
 
-        public long[][] getLocations() {
-            long[][] loc = new long[locations.size()][3];
-            for (int i = 0; i < locations.size(); i++) {
-                long[] ia = (long [])locations.elementAt(i);
-                loc[i][0] = ia[0];
-                loc[i][1] = ia[1];
-                loc[i][2] = ia[2];
+        /**
+         * returns number of blocks.
+         */
+        public int size() {return offsets.length;}
+
+        public long getFirstRecord(int blk) {return firstRecords[blk];}
+
+        public long getLastRecord(int blk) {return lastRecords[blk];}
+
+        public long getOffset(int blk) {return offsets[blk];}
+
+        /**
+         * returns first record, last record and offset of a block.
+         */
+        public long[] getLocation(int blk) {
+            return new long[] {firstRecords[blk], lastRecords[blk],
+                offsets[blk]};
+        }
+
+        /**
+         * returns index of the block containing the given record or, if the
+         * record is missing, of the first block following it. Returns size()
+         * if the record is past the last block.
+         */
+        public int blockIndex(long record) {
+            int low = 0;
+            int high = lastRecords.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastRecords[mid] < record) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
             }
+            return low;
+        }
+
+        public long[][] getLocations() {
+            long[][] loc = new long[offsets.length][];
+            for (int i = 0; i < offsets.length; i++) loc[i] = getLocation(i);
             return loc;
         }
 
@@ -1417,25 +1786,33 @@ import java.util.zip.*;
             return locations;
         }
 
-        void registerNodes(ByteBuffer bx, Vector v) {
+        void registerNodes(ByteBuffer bx, Vector v,
+            Vector<long[]> locations) {
             int vrtype = VVR_RECORD_TYPE;
             if (compressed) vrtype = CVVR_RECORD_TYPE;
             
+            // entries of a VXR are taken to be all of the same kind in
+            // remote files, saving a request for each block
+            boolean remote = (storage != null) && storage.isRemote();
+            boolean vxr = false;
             for (int i = 0; i < v.size(); i++) {
                 long [] loc = (long [])v.elementAt(i);
-                ByteBuffer bb = getRecord(loc[2]);
-                if (bb.getInt(offset_RECORD_TYPE) == VXR_RECORD_TYPE) {
+                if (!remote || (i == 0)) {
+                    vxr = (recordType(loc[2]) == VXR_RECORD_TYPE);
+                }
+                if (vxr) {
+                    ByteBuffer bb = getRecord(loc[2]);
                     Vector vin =  _getLocations(bb);
-                    registerNodes(bb, vin);
+                    registerNodes(bb, vin, locations);
                 } else {
                     locations.add(loc);
                 }
             }
         }
         public Vector getLocationsAsVector() {
-            Vector _locations = new Vector();
+            Vector<long[]> _locations = new Vector<long[]>(offsets.length);
             long[][] loc = getLocations();
-            for (int i = 0; i < locations.size(); i++) {
+            for (int i = 0; i < loc.length; i++) {
                 _locations.add(loc[i]);
             }
             return _locations;
@@ -1484,12 +1861,65 @@ import java.util.zip.*;
             bv = getValueBuffer(offset);
         } else {
             int size = var.getDataItemSize();
-            bv = getValueBuffer(offset, size , count);
+            bv = getValueBuffer(offset, size , count,
+                var.getCompressionType());
         }
         bv.order(getByteOrder());
         return bv;
     }
 
+    /**
+     * returns ByteBuffer containing the values of block blk of variable
+     * var, telling storage that the blocks that follow it closely are
+     * about to be read.
+     */
+    ByteBuffer positionBuffer(Variable var, int blk) {
+        DataLocator locator = (DataLocator)var.getLocator();
+        if ((storage != null) && storage.prefetches()) prefetch(var, blk);
+        int count = (int)(locator.getLastRecord(blk) -
+            locator.getFirstRecord(blk) + 1);
+        return positionBuffer(var, locator.getOffset(blk), count);
+    }
+
+    /**
+     * Largest gap between blocks of data that are read together.
+     */
+    static final int MAX_PREFETCH_GAP = 4096;
+
+    /**
+     * tells storage that block blk of var, and the blocks that follow it
+     * closely, are about to be read, so that they may be read together.
+     */
+    void prefetch(Variable var, int blk) {
+        DataLocator locator = (DataLocator)var.getLocator();
+        long[] offsets = locator.offsets;
+        long offset = offsets[blk];
+        int size = var.getDataItemSize();
+        int header = var.isCompressed()?offset_CDATA:offset_RECORDS;
+        long end = offset;
+        int last = blk;
+        while (true) {
+            // for compressed blocks, this is an upper limit
+            long count = locator.lastRecords[last] -
+                locator.firstRecords[last] + 1;
+            end = offsets[last] + header + count*size;
+            if ((last + 1) == offsets.length) break;
+            long next = offsets[last + 1];
+            if ((next < offsets[last]) || (next > (end + MAX_PREFETCH_GAP))) {
+                break;
+            }
+            if ((next - offset) > PagedBuffer.MAX_COMBINED) break;
+            last++;
+        }
+        if (last == blk) return;
+        if (var.isCompressed()) {
+            end = offsets[last] + storage.recordSize(offsets[last]);
+        }
+        long[] group = new long[last - blk + 1];
+        System.arraycopy(offsets, blk, group, 0, group.length);
+        storage.prefetch(group, end);
+    }
+
     public ByteBuffer getValueBuffer(long offset) {
         ByteBuffer bv = getRecord(offset);
         bv.position(offset_RECORDS);
@@ -1497,6 +1927,21 @@ import java.util.zip.*;
     }
 
     public ByteBuffer getValueBuffer(long offset, int size, int number) {
+        return getValueBuffer(offset, size, number, CompressionCodec.GZIP);
+    }
+
+    /**
+     * returns ByteBuffer containing number values of the given size
+     * decompressed from the block at offset, using the codec for the
+     * given compression type.
+     */
+    public ByteBuffer getValueBuffer(long offset, int size, int number,
+        int cType) {
+        BlockCache cache = BlockCache.getDefault();
+        ByteBuffer cached = cache.get(getIdentity(), offset);
+        if ((cached != null) && (cached.capacity() >= size*number)) {
+            return cached;
+        }
         ByteBuffer bv = getRecord(offset);
         if (bv.getInt(offset_RECORD_TYPE) == VVR_RECORD_TYPE) {
 /*
@@ -1506,36 +1951,43 @@ import java.util.zip.*;
             bv.position(offset_RECORDS);
             return bv;
         }
+        CompressionCodec codec = CompressionCodecs.getCodec(cType);
         int clen = lowOrderInt(bv, offset_CSIZE);
-        byte [] work = new byte[clen];
         bv.position(offset_CDATA);
-        bv.get(work);
-        byte [] udata = new byte[size*number];
+        bv.limit(offset_CDATA + clen);
+        ByteBuffer udata = ByteBuffer.allocate(size*number);
         int n = 0;
         try {
-            GZIPInputStream gz =
-                new GZIPInputStream(new ByteArrayInputStream(work));
-            int toRead = udata.length;
-            int off = 0;
-            while (toRead > 0) {
-                n = gz.read(udata, off, toRead);
-                if (n == -1) break;
-                off += n;
-                toRead -= n;
-            }
+            n = codec.decompress(bv, udata);
         } catch (IOException ex) {
             System.out.println(ex.toString() + " at offset " + offset);
             System.out.println("Trying to get data as uncompressed");
             return getValueBuffer(offset);
         }
-        if (n < 0) return null;
-        return ByteBuffer.wrap(udata);
+        if (n < udata.capacity()) return null;
+        udata.position(0);
+        return cache.put(getIdentity(), offset, udata);
+    }
+
+    /**
+     * returns an object identifying the source of this CDF for caching.
+     * For files, this is derived from the path, size and modification
+     * time, so that separate opens of an unchanged file share entries.
+     */
+    synchronized Object getIdentity() {
+        if (identity != null) return identity;
+        if ((source != null) && source.isFile()) {
+            identity = CDFFactory.fileIdentity(new File(source.getName()));
+        } else {
+            identity = new Object();
+        }
+        return identity;
     }
     /**
      * returns dimensions of the named variable.
      */
     public int [] variableDimensions(String name) {
-        Variable var = (Variable)variableTable.get(name);
+        Variable var = variable(name);
         if (var == null) return null;
         int [] dims = var.getDimensions();
         int [] ia = new int[dims.length];
@@ -1552,6 +2004,7 @@ import java.util.zip.*;
     protected abstract String getString(long offset);
 
     protected String getString(long offset, int max)  {
+        if (storage != null) return getString(storage.get(offset, max), max);
         return getString(getRecord(offset), max);
     }
 
@@ -1573,7 +2026,6 @@ import java.util.zip.*;
         if (type == DataTypes.EPOCH16) ne = 2*nelement;
         long[] lvalue = null;
         double[] value = null;
-        long longInt = DataTypes.longInt[type];
         boolean longType = false;
         try {
             if ((type > 20) || (type < 10)) {
@@ -1584,20 +2036,28 @@ import java.util.zip.*;
                     value = new double[ne];
                 }
                 for (int i = 0; i < ne; i++) {
-                    Number num =
-                        (Number)DataTypes.method[type].invoke(vbufLocal,
-                        new Object [] {});
-                    if (!longType) value[i] = num.doubleValue();
-                    if (longType) lvalue[i] = num.longValue();
+                    switch (DataTypes.typeCategory[type]) {
+                    case DataTypes.FLOAT:
+                        value[i] = vbufLocal.getFloat();
+                        break;
+                    case DataTypes.DOUBLE:
+                        value[i] = vbufLocal.getDouble();
+                        break;
+                    case DataTypes.LONG:
+                        lvalue[i] = vbufLocal.getLong();
+                        break;
+                    case DataTypes.SIGNED_INTEGER:
+                        value[i] = DataConverter.getLong(vbufLocal, type);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported " +
+                            "type " + type);
+                    }
                 }
             } else {
                 value = new double[ne];
                 for (int i = 0; i < nelement; i++) {
-                    Number num =
-                        (Number)DataTypes.method[type].invoke(vbufLocal,
-                        new Object [] {});
-                    int n = num.intValue();
-                    value[i] = (n >= 0)?(double)n:(double)(longInt + n);
+                    value[i] = DataConverter.getLong(vbufLocal, type);
                 }
             }
         } catch(Exception ex) {
@@ -1622,10 +2082,142 @@ import java.util.zip.*;
     public boolean isBigEndian() {return bigEndian;}
 
     protected void setBuffer(ByteBuffer b) {buf = b;}
-    protected ByteBuffer getBuffer() {return buf;}
+    protected ByteBuffer getBuffer() {return buffer();}
+
+    /**
+     * returns the buffer containing the CDF, mapping it again if it has
+     * been unmapped.
+     */
+    ByteBuffer buffer() {
+        MappedMemory.Region r = region;
+        if (r != null) return r.get();
+        return buf;
+    }
+
+    /**
+     * hands the mapped buffer over to the mapped memory manager. The
+     * region must map the same file.
+     */
+    void setRegion(MappedMemory.Region r) {
+        ByteBuffer b = buf;
+        region = r;
+        buf = null;
+        r.set(b);
+    }
+
+    /**
+     * keeps the mapping of this CDF from being unmapped to satisfy the
+     * mapped memory budget, until unpin() is called.
+     */
+    public void pin() {
+        if (region != null) region.pin();
+        if (storage != null) storage.pin();
+    }
+
+    public void unpin() {
+        if (region != null) region.unpin();
+        if (storage != null) storage.unpin();
+    }
+
+    /**
+     * unmaps the CDF. Neither this object, nor buffers obtained from it,
+     * may be used afterwards.
+     */
+    public void close() {
+        closed = true;
+        cancelReadAhead();
+        if (region != null) region.release();
+        if (storage != null) storage.close();
+        if (index != null) index.release();
+    }
+
+    /**
+     * loads the blocks of the named variable that contain records first
+     * to last, so that reading them does not wait for the disk.
+     */
+    public void warm(String varName, int first, int last) throws Throwable {
+        Variable var = getVariable(varName);
+        if (var == null) throw new Throwable("No such variable: " + varName);
+        VariableDataLocator vl = var.getLocator();
+        if (!(vl instanceof DataLocator)) return;
+        DataLocator locator = (DataLocator)vl;
+        for (int blk = locator.blockIndex(first); blk < locator.size();
+            blk++) {
+            if (locator.getFirstRecord(blk) > last) break;
+            ReadAhead.load(this, var, locator, blk);
+        }
+    }
+
+    /**
+     * loads blocks from to to - 1 of var in the background.
+     */
+    void readAhead(Variable var, DataLocator locator, int from, int to) {
+        synchronized (this) {
+            if (closed) return;
+            if (readAheads == null) readAheads = new Vector<Future<?>>();
+            for (int i = readAheads.size() - 1; i >= 0; i--) {
+                if (readAheads.get(i).isDone()) readAheads.remove(i);
+            }
+            readAheads.add(ReadAhead.schedule(this, var, locator, from, to,
+                readAheadGeneration));
+        }
+    }
+
+    /**
+     * cancels the read ahead tasks of this CDF, waiting for a block being
+     * loaded.
+     */
+    void cancelReadAhead() {
+        synchronized (this) {
+            readAheadGeneration++;
+        }
+        awaitReadAhead();
+    }
+
+    /**
+     * waits for the read ahead tasks of this CDF to finish.
+     */
+    void awaitReadAhead() {
+        Vector<Future<?>> pending;
+        synchronized (this) {
+            if (readAheads == null) return;
+            pending = readAheads;
+            readAheads = new Vector<Future<?>>();
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < pending.size(); i++) {
+            Future<?> task = pending.get(i);
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (Throwable th) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
 
     public void extractBytes(int bufOffset, byte[] ba, int offset, int len) {
-        ((ByteBuffer)buf.duplicate().position(bufOffset)).get(ba, offset, len);
+        if (storage != null) {
+            storage.get(bufOffset, len).get(ba, offset, len);
+            return;
+        }
+        ((ByteBuffer)buffer().duplicate().position(bufOffset)).get(ba, offset,
+            len);
+    }
+
+    /**
+     * returns number of bytes of the source currently held in memory.
+     */
+    long mappedSize() {
+        if (storage != null) return storage.mappedSize();
+        MappedMemory.Region r = region;
+        if (r != null) return (r.buffer == null)?0:r.size;
+        return buf.limit();
     }
 
     protected int getRecordOffset() {return offset_RECORDS;}
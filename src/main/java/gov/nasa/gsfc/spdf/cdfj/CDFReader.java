@@ -91,7 +91,7 @@ public class CDFReader extends GenericReader {
 
     private TimeSeries getTimeSeries(String varName, double[] timeRange,
         TimeInstantModel tspec) throws CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         TimeSeriesX ts = null;
         try {
             ts = new TSExtractor.GeneralTimeSeriesX(this, var,
@@ -144,7 +144,7 @@ public class CDFReader extends GenericReader {
     private TimeSeriesOneD getTimeSeries(String varName, double[] timeRange,
         TimeInstantModel tspec, boolean columnMajor) throws
         CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         TimeSeriesX ts = null;
         try {
             ts = new TSExtractor.GeneralTimeSeriesX(this, var,
@@ -471,13 +471,13 @@ public class CDFReader extends GenericReader {
      *         depends on.
      */
     public String[] getDependent(String varName) {
-        String[] anames = thisCDF.variableAttributeNames(varName);
+        String[] anames = cdf().variableAttributeNames(varName);
         if (anames == null) return new String[0];
         Vector dependent = new Vector();
         for (int i = 0; i < anames.length; i++) {
             if (!anames[i].startsWith("DEPEND_")) continue;
             dependent.add(
-                ((Vector)thisCDF.getAttribute(varName, anames[i])).get(0));
+                ((Vector)cdf().getAttribute(varName, anames[i])).get(0));
         }
         String[] sa = new String[dependent.size()];
         dependent.toArray(sa);
@@ -701,7 +701,7 @@ public class CDFReader extends GenericReader {
     }
 /*
     void checkType(String varName) throws Throwable {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         int type = var.getType();
         if (DataTypes.typeCategory[type] == DataTypes.LONG) {
             throw new Throwable("This method cannot be used for " +
@@ -715,7 +715,7 @@ public class CDFReader extends GenericReader {
         double[][] _getTimeSeries(String varName, boolean ignoreFill,
             double[] timeRange) throws Throwable {
             checkType(varName);
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             Method method = TSExtractor.getMethod(var, "TimeSeries", 0);
             return (double[][])method.invoke(null, new Object []
                 {rdr, var, new Boolean(ignoreFill), timeRange});
@@ -723,21 +723,21 @@ public class CDFReader extends GenericReader {
         TimeSeries _getTimeSeries(String varName, boolean ignoreFill,
             double[] timeRange, TimeInstantModel tspec) throws Throwable {
             checkType(varName);
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             Method method = TSExtractor.getMethod(var, "TimeSeriesObject", 0);
             TimeSeries ts =  (TimeSeries)method.invoke(null, new Object []
                 {rdr, var, new Boolean(ignoreFill), timeRange, tspec});
             return new TimeSeriesImpl(ts);
         }
         public double[][] getTimeSeries(String varName) throws Throwable {
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             if (var.getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             return _getTimeSeries(varName, true, null);
         }
         public double[][] getTimeSeries(String varName, int[] startTime,
             int[] stopTime) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 0) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             double[] trange = getAvailableTimeRange(varName);
             double[] tr = TSExtractor.getOverlap(rdr, trange, varName,
@@ -746,7 +746,7 @@ public class CDFReader extends GenericReader {
         }
         public TimeSeries getTimeSeries(String varName, int[] startTime,
             int[] stopTime, TimeInstantModel tspec) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 0) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             double[] trange = getAvailableTimeRange(varName);
             double[] tr = TSExtractor.getOverlap(rdr, trange, varName,
@@ -755,13 +755,13 @@ public class CDFReader extends GenericReader {
         }
         public double[][] getTimeSeries(String varName, boolean ignoreFill)
             throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 0) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             return _getTimeSeries(varName, ignoreFill, null);
         }
         public double[][] getTimeSeries(String varName, boolean ignoreFill,
             int[] startTime, int[] stopTime) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 0) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             double[] trange = getAvailableTimeRange(varName);
             double[] tr = TSExtractor.getOverlap(rdr, trange, varName,
@@ -771,7 +771,7 @@ public class CDFReader extends GenericReader {
         public TimeSeries getTimeSeries(String varName, boolean ignoreFill,
             int[] startTime, int[] stopTime, TimeInstantModel tspec) throws
             Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 0) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 0) throw new
                 Throwable(varName + " is not a scalar.");
             double[] trange = getAvailableTimeRange(varName);
             double[] tr = TSExtractor.getOverlap(rdr, trange, varName,
@@ -991,7 +991,7 @@ public class CDFReader extends GenericReader {
         private double[][] _getTimeSeries(String varName, int component,
             boolean ignoreFill, double[] timeRange) throws Throwable {
             checkType(varName);
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             Method method = TSExtractor.getMethod(var, "TimeSeries", 1);
             return (double[][])method.invoke(null, new Object []
                 {rdr, var, new Integer(component), new Boolean(ignoreFill),
@@ -1001,7 +1001,7 @@ public class CDFReader extends GenericReader {
             boolean ignoreFill, double[] timeRange, TimeInstantModel tspec)
             throws Throwable {
             checkType(varName);
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             Method method = TSExtractor.getMethod(var, "TimeSeriesObject", 1);
             TimeSeries ts = (TimeSeries)method.invoke(null, new Object []
                 {rdr, var, new Integer(component), new Boolean(ignoreFill),
@@ -1010,7 +1010,7 @@ public class CDFReader extends GenericReader {
         }
         public double[][] getTimeSeries(String varName, int component)
             throws Throwable {
-            Variable var = thisCDF.getVariable(varName);
+            Variable var = cdf().getVariable(varName);
             if (var.getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             int dim = var.getEffectiveDimensions()[0];
@@ -1020,10 +1020,10 @@ public class CDFReader extends GenericReader {
         }
         public double[][] getTimeSeries(String varName, int component,
             int[] startTime, int[] stopTime) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 1) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             Integer dim = (Integer)
-                (thisCDF.getVariable(varName).getElementCount().get(0));
+                (cdf().getVariable(varName).getElementCount().get(0));
             if ((component < 0) || (component > dim.intValue())) throw new
                 Throwable("Invalid component " + component + " for " +
                 varName);
@@ -1035,10 +1035,10 @@ public class CDFReader extends GenericReader {
         public TimeSeries getTimeSeries(String varName, int component,
             int[] startTime, int[] stopTime, TimeInstantModel tspec) throws
             Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 1) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             Integer dim = (Integer)
-                (thisCDF.getVariable(varName).getElementCount().get(0));
+                (cdf().getVariable(varName).getElementCount().get(0));
             if ((component < 0) || (component > dim.intValue())) throw new
                 Throwable("Invalid component " + component + " for " +
                 varName);
@@ -1049,10 +1049,10 @@ public class CDFReader extends GenericReader {
         }
         public double[][] getTimeSeries(String varName, int component,
             boolean ignoreFill) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 1) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             Integer dim = (Integer)
-                (thisCDF.getVariable(varName).getElementCount().get(0));
+                (cdf().getVariable(varName).getElementCount().get(0));
             if ((component < 0) || (component > dim.intValue())) throw new
                 Throwable("Invalid component " + component + " for " +
                 varName);
@@ -1061,10 +1061,10 @@ public class CDFReader extends GenericReader {
         public double[][] getTimeSeries(String varName, int component,
             boolean ignoreFill, int[] startTime, int[] stopTime) throws
             Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 1) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             Integer dim = (Integer)
-                (thisCDF.getVariable(varName).getElementCount().get(0));
+                (cdf().getVariable(varName).getElementCount().get(0));
             if ((component < 0) || (component > dim.intValue())) throw new
                 Throwable("Invalid component " + component + " for " +
                 varName);
@@ -1076,10 +1076,10 @@ public class CDFReader extends GenericReader {
         public TimeSeries getTimeSeries(String varName, int component,
             boolean ignoreFill, int[] startTime, int[] stopTime,
             TimeInstantModel tspec) throws Throwable {
-            if (thisCDF.getVariable(varName).getEffectiveRank() != 1) throw new
+            if (cdf().getVariable(varName).getEffectiveRank() != 1) throw new
                 Throwable(varName + " is not a vector.");
             Integer dim = (Integer)
-               (thisCDF.getVariable(varName).getElementCount().get(0));
+               (cdf().getVariable(varName).getElementCount().get(0));
             if ((component < 0) || (component > dim.intValue())) throw new
                 Throwable("Invalid component " + component + " for " +
                 varName);
@@ -554,7 +554,7 @@ public class CDFWriter extends GenericWriter {
             (cdf.rowMajority() == rowMajority)) {
             VariableDataBuffer[] dbufs = null;
             try {
-                Variable var = cdf.thisCDF.getVariable(vn);
+                Variable var = cdf.cdf().getVariable(vn);
                 dbufs = var.getDataBuffers(true);
             } catch (Throwable th) {
                 throw new CDFException.ReaderError(th.getMessage());
@@ -626,7 +626,7 @@ public class CDFWriter extends GenericWriter {
                          if (!dc.timeOrderOK(firstTime)) {
                              throw new CDFException.WriterError("Time Backup -"
                              + "Time of first record for variable " + vn +
-                             " of CDF " + cdf.thisCDF.getSource().getName() +
+                             " of CDF " + cdf.cdf().getSource().getName() +
                              " starts before the end of previous CDF");
                          }
                      }
@@ -851,7 +851,7 @@ public class CDFWriter extends GenericWriter {
         throws Throwable {
         Object container = null;
         CDFDataType ctype = SupportedTypes.cdfType(rdr.getType(varName));
-        Variable var = rdr.thisCDF.getVariable(varName);
+        Variable var = rdr.cdf().getVariable(varName);
         ByteOrder order = ByteOrder.LITTLE_ENDIAN;
         if ((ctype == CDFDataType.INT1) || (ctype == CDFDataType.UINT1)) {
             container = var.getByteContainer(null);
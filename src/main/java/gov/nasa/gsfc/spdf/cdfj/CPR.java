@@ -5,15 +5,26 @@ public class CPR {
         4/*RecordType*/ + 4/*cType*/ + 4/*rfuA*/ + 4/*pCount*/ +
         4/*cParms*/);
     protected long position;
+    int cType;
+    int parameter;
+
+    public CPR() {
+        this(CompressionCodec.GZIP, 9);
+    }
+
+    public CPR(int cType, int parameter) {
+        this.cType = cType;
+        this.parameter = parameter;
+    }
     
     public ByteBuffer get() {
         record.position(0);
         record.putLong((long)(record.capacity()));
         record.putInt(11);
-        record.putInt(5);
+        record.putInt(cType);
         record.putInt(0);
         record.putInt(1);
-        record.putInt(9);
+        record.putInt(parameter);
         record.position(0);
         return record;
     }
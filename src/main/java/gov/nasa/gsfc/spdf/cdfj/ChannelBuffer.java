@@ -0,0 +1,95 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * ChannelBuffer gives access to a CDF file that is read through a
+ * FileChannel on demand, rather than held in a single ByteBuffer.
+ * Implementations are SegmentedBuffer, which maps the file as a list of
+ * windows, PagedBuffer, which reads it with positional reads, and
+ * HttpBuffer, which reads a remote file with HTTP range requests; the
+ * latter has no channel.
+ */
+abstract class ChannelBuffer {
+    final FileChannel ch;
+    final long size;
+
+    ChannelBuffer(FileChannel ch) throws IOException {
+        this.ch = ch;
+        size = ch.size();
+    }
+
+    ChannelBuffer(long size) {
+        ch = null;
+        this.size = size;
+    }
+
+    /**
+     * returns size of the file.
+     */
+    long size() {return size;}
+
+    /**
+     * returns a buffer positioned at 0 that starts at the given file offset
+     * and contains at least len bytes, len being limited by the end of file.
+     */
+    abstract ByteBuffer get(long offset, long len);
+
+    /**
+     * returns a buffer containing the record that starts at the given
+     * offset. Size of the record is read from the record header.
+     */
+    ByteBuffer getRecord(long offset) {
+        long len = recordSize(offset);
+        if ((len < 8) || ((offset + len) > size)) len = 8;
+        return get(offset, len);
+    }
+
+    /**
+     * returns size of the record at offset, from its (version 3) header.
+     */
+    long recordSize(long offset) {
+        return get(offset, 8).getLong(0);
+    }
+
+    /**
+     * returns number of bytes of the file currently mapped.
+     */
+    abstract long mappedSize();
+
+    /**
+     * tells that the records starting at the given offsets, in increasing
+     * order, are about to be read, and that they end before the offset
+     * end. Implementations may read them together.
+     */
+    void prefetch(long[] offsets, long end) {
+    }
+
+    /**
+     * returns whether prefetch() does anything.
+     */
+    boolean prefetches() {return false;}
+
+    /**
+     * returns whether reads are expensive enough to be avoided where
+     * possible, as for a remote file.
+     */
+    boolean isRemote() {return false;}
+
+    void pin() {
+    }
+
+    void unpin() {
+    }
+
+    /**
+     * releases memory held for the file, and closes the channel.
+     */
+    void close() {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ex) {
+        }
+    }
+}
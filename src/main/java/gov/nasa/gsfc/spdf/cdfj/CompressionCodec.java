@@ -0,0 +1,50 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+/**
+ * Compression algorithm used for variable data blocks (CVVR records) and
+ * for whole file compression (CCR records).
+ * The type of a codec is the cType stored in the CPR record that
+ * describes the compression.
+ * @see CompressionCodecs
+ */
+public interface CompressionCodec {
+    public static final int NONE = 0;
+    public static final int RLE = 1;
+    public static final int HUFF = 2;
+    public static final int AHUFF = 3;
+    public static final int GZIP = 5;
+
+    /**
+     * returns the CPR compression type.
+     * @return the cType of the CPR record
+     */
+    public int getType();
+
+    /**
+     * returns the compression parameter recorded in the CPR record.
+     * @return the cParms value
+     */
+    public int getParameter();
+
+    /**
+     * Decompresses the bytes between position and limit of src into dst,
+     * starting at the position of dst. Decompression stops when either
+     * the compressed stream ends, or dst is full.
+     * The position of dst is advanced by the number of bytes stored, and
+     * the position of src past the compressed data read.
+     * @param src compressed data
+     * @param dst destination buffer
+     * @return number of bytes stored in dst
+     * @throws IOException if the compressed data is not valid
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException;
+
+    /**
+     * Compresses the bytes between position and limit of src.
+     * @param src uncompressed data
+     * @return buffer, positioned at 0, containing the compressed data
+     * @throws IOException if an error occurs
+     */
+    public ByteBuffer compress(ByteBuffer src) throws IOException;
+}
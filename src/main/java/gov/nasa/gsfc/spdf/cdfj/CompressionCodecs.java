@@ -0,0 +1,64 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.*;
+/**
+ * Registry of compression codecs, keyed by CPR compression type.
+ * Codecs for the standard CDF compression types (RLE, HUFF, AHUFF and
+ * GZIP) are registered by default. A registered codec replaces the
+ * existing codec of the same type.
+ */
+public final class CompressionCodecs {
+    static final Hashtable<Integer, CompressionCodec> codecs =
+        new Hashtable<Integer, CompressionCodec>();
+    static {
+        register(new RLECodec());
+        register(new HuffmanCodec());
+        register(new AdaptiveHuffmanCodec());
+        register(new GZIPCodec());
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * registers a codec for its compression type.
+     */
+    public static void register(CompressionCodec codec) {
+        codecs.put(codec.getType(), codec);
+    }
+
+    /**
+     * returns the codec for the given compression type, or null.
+     */
+    public static CompressionCodec get(int type) {
+        return codecs.get(type);
+    }
+
+    /**
+     * returns the codec for the given compression type.
+     * @throws IllegalArgumentException if no codec is registered for type
+     */
+    static CompressionCodec getCodec(int type) {
+        CompressionCodec codec = codecs.get(type);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unsupported compression " +
+            "type " + type);
+        }
+        return codec;
+    }
+
+    /**
+     * returns bytes between position and limit of buf as an array, without
+     * copying if possible. The array slice starts at off[0].
+     */
+    static byte[] array(ByteBuffer buf, int[] off) {
+        if (buf.hasArray()) {
+            off[0] = buf.arrayOffset() + buf.position();
+            return buf.array();
+        }
+        byte[] ba = new byte[buf.remaining()];
+        buf.duplicate().get(ba);
+        off[0] = 0;
+        return ba;
+    }
+}
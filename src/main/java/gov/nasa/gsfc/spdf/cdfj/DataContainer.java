@@ -3,6 +3,7 @@ import java.io.*;
 import java.nio.*;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 public class DataContainer {
     VDR vdr;
@@ -15,7 +16,17 @@ public class DataContainer {
     static final int VVR_PREAMBLE = 12;
     static final int CVVR_PREAMBLE = 24;
     final boolean rowMajority;
-    final int CXR_MAX_ENTRIES = 6;
+    /**
+     * Default maximum number of entries of a VXR.
+     */
+    static final int DEFAULT_VXR_ENTRIES = 64;
+    int vxrEntries = DEFAULT_VXR_ENTRIES;
+    /**
+     * Default upper limit of the size of a block of data of a variable
+     * joined from consecutive records added separately.
+     */
+    static final int DEFAULT_BLOCK_SIZE = 256*1024;
+    int blockSize = DEFAULT_BLOCK_SIZE;
     public DataContainer(VDR vdr) {
         this(vdr, true);
     }
@@ -27,6 +38,12 @@ public class DataContainer {
     public VDR getVDR() {return vdr;}
     public VXR getVXR() {return vxr;}
     CPR cpr;
+    CompressionCodec codec = CompressionCodecs.get(CompressionCodec.GZIP);
+    /**
+     * sets the codec used to compress the data, if the variable is
+     * compressed.
+     */
+    void setCodec(CompressionCodec codec) {this.codec = codec;}
     DataContainer timeContainer;
     Vector<Integer> _firstRecords;
     Vector<Integer> _lastRecords;
@@ -141,6 +158,7 @@ public class DataContainer {
             lastRecords.add(new Integer(last));
             bufs.add(buf);
             points.add(new Integer(npt));
+            if (stream != null) flush(false);
             return;
         }
         ArrayAttribute aa = new ArrayAttribute(data);
@@ -339,40 +357,52 @@ public class DataContainer {
         lastRecords.add(new Integer(last));
         bufs.add(buf);
         points.add(new Integer(npt));
+        if (stream != null) flush(false);
     }
     long[] locs;
-    VXR[] vxrs;
+    VXRTree tree;
+    /**
+     * returns size of the descriptors and data of the variable, after
+     * compressing its blocks if it is compressed. A block that cannot be
+     * compressed fails with a RuntimeException.
+     */
     public int getSize() {
-        // update vdr
-        int size = vdr.getSize();
-        if (vdr.isCompressed()) {
-            cpr = new CPR();
-            cpr.position = position + size;
-            vdr.setCPROffset(cpr.position);
-            size += cpr.getSize();
+        Vector<Callable<Object>> tasks = prepare();
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).call();
+            } catch (Exception ex) {
+                throw new RuntimeException("Compression failed: " + ex, ex);
+            }
         }
-        if (bufs.size() > 0) {
-            int last = -1;
-            int nbuf = bufs.size() - 1;
-            while (nbuf >= 0) {
-                if (bufs.get(nbuf) != null) {
-                    last = lastRecords.get(nbuf).intValue();
-                    break;
-                }
-                nbuf--;
+        return layout();
+    }
+
+    /**
+     * collects the blocks to be written, joining consecutive records, and
+     * returns the tasks that compress them if the variable is compressed.
+     * The tasks may be run in any order, and on any thread, before
+     * layout() is called.
+     */
+    Vector<Callable<Object>> prepare() {
+        Vector<Callable<Object>> tasks = new Vector<Callable<Object>>();
+        _bufs = null;
+        int last = -1;
+        int nbuf = bufs.size() - 1;
+        while (nbuf >= 0) {
+            if (bufs.get(nbuf) != null) {
+                last = lastRecords.get(nbuf).intValue();
+                break;
             }
-            if (last < 0) return size;
-            vdr.setMaxRec(last);
-        } else {
-            return size;
+            nbuf--;
         }
-        vdr.setVXRHead(position + size);
-        
+        if (last < 0) return tasks;
+        vdr.setMaxRec(last);
         _firstRecords = new Vector<Integer>();
         _lastRecords = new Vector<Integer>();
         _bufs = new Vector<ByteBuffer>();
         if (timeContainer == null) {
-            int nbuf = 0;
+            nbuf = 0;
             while (nbuf < bufs.size()) {
                 if (bufs.get(nbuf) != null) {
                     _firstRecords.add(firstRecords.get(nbuf));
@@ -382,7 +412,7 @@ public class DataContainer {
                 nbuf++;
             }
         } else {
-            int nbuf = 0;
+            nbuf = 0;
             while (nbuf < bufs.size()) {
                 if (bufs.get(nbuf) != null) {
                     int _first = firstRecords.get(nbuf);
@@ -398,75 +428,48 @@ public class DataContainer {
             }
         }
             
-        int vxrsNeeded = _bufs.size()/CXR_MAX_ENTRIES;
-        int lastVXREntries = _bufs.size() - vxrsNeeded*CXR_MAX_ENTRIES;
-        if (lastVXREntries > 0) {
-            vxrsNeeded++;
-        } else {
-            lastVXREntries = CXR_MAX_ENTRIES;
-        }
-        vxrs = new VXR[vxrsNeeded];
-        locs = new long[_bufs.size()];
-        int nbuf = 0;
-        long _position = -1l;
-        for (int v = 0; v < vxrs.length; v++) {
-            _position = position + size;
-            vxrs[v] = new VXR();
-            int entries = CXR_MAX_ENTRIES;
-            if (v == (vxrs.length - 1)) {
-                entries = lastVXREntries;
-            }
-            vxrs[v].numEntries = entries;
-            size += vxrs[v].getSize();
-            if (!vdr.isCompressed()) {
-                for (int e = 0; e < entries; e++) {
-                    locs[nbuf] = position + size;
-                    int len = VVR_PREAMBLE + _bufs.get(nbuf).limit();
-                    size += len;
-                    nbuf++;
-                }
-            } else {
-                vdr.setBlockingFactor(getBlockingFactor());
-                if (doNotCompress) {
-                    for (int e = 0; e < entries; e++) {
-                        locs[nbuf] = position + size;
-                        int len = CVVR_PREAMBLE + _bufs.get(nbuf).limit();
-                        size += len;
-                        nbuf++;
-                    }
-                    return size;
-                }
-                for (int e = 0; e < entries; e++) {
-                    locs[nbuf] = position + size;
-                    ByteBuffer b = _bufs.get(nbuf);
-                    byte[] uncompressed = null;
-                    if (b.hasArray()) {
-                        uncompressed = b.array();
-                    } else {
-                        uncompressed = new byte[b.remaining()];
-                        b.get(uncompressed);
-                        _bufs.setElementAt(null,nbuf);
-                    }
-                    ByteArrayOutputStream baos;
-                    baos = new ByteArrayOutputStream(uncompressed.length);
-                    try {
-                        GZIPOutputStream gzos = new GZIPOutputStream(baos);
-                        gzos.write(uncompressed, 0, uncompressed.length);
-                        gzos.finish();
-                        baos.flush();
-                        b = ByteBuffer.wrap(baos.toByteArray());
-                        _bufs.setElementAt(b, nbuf);
-                        int len = CVVR_PREAMBLE + b.limit();
-                        size += len;
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                    nbuf++;
+        if (!doNotCompress) coalesce();
+        if (vdr.isCompressed()) {
+            vdr.setBlockingFactor(getBlockingFactor());
+            if (!doNotCompress) {
+                for (nbuf = 0; nbuf < _bufs.size(); nbuf++) {
+                    final int n = nbuf;
+                    tasks.add(new Callable<Object>() {
+                        public Object call() throws IOException {
+                            ByteBuffer b = _bufs.get(n).duplicate();
+                            _bufs.setElementAt(codec.compress(b), n);
+                            return null;
+                        }
+                    });
                 }
             }
-            if (v != (vxrs.length - 1)) vxrs[v].setVXRNext(position + size);
         }
-        if (vxrs.length > 1) vdr.setVXRTail(_position);
+        return tasks;
+    }
+
+    /**
+     * lays out the VDR, CPR, index and blocks prepared by prepare(),
+     * starting at position, and returns their size.
+     */
+    int layout() {
+        int size = vdr.getSize();
+        if (vdr.isCompressed()) {
+            cpr = new CPR(codec.getType(), codec.getParameter());
+            cpr.position = position + size;
+            vdr.setCPROffset(cpr.position);
+            size += cpr.getSize();
+        }
+        if (_bufs == null) return size;
+        vdr.setVXRHead(position + size);
+        vdr.setVXRTail(position + size);
+        tree = new VXRTree(_bufs.size(), vxrEntries);
+        size += tree.getSize();
+        int preamble = (vdr.isCompressed())?CVVR_PREAMBLE:VVR_PREAMBLE;
+        locs = new long[_bufs.size()];
+        for (int nbuf = 0; nbuf < _bufs.size(); nbuf++) {
+            locs[nbuf] = position + size;
+            size += preamble + _bufs.get(nbuf).limit();
+        }
         return size;
     }
 
@@ -477,50 +480,55 @@ public class DataContainer {
             buf.put(cpr.get());
         }
         if (_bufs == null) return buf;
-        int nbuf = 0;
         if (_bufs.size() > 0) {
-            for (int v = 0; v < vxrs.length; v++) {
-                buf.put(vxrs[v].get());
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    int n = _firstRecords.get(nbuf + e).intValue();
-                    buf.putInt(n);
-                }
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    int n = _lastRecords.get(nbuf + e).intValue();
-                    buf.putInt(n);
-                }
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    buf.putLong(locs[nbuf + e]);
-                }
-                if (!vdr.isCompressed()) {
-                    for (int e = 0; e < vxrs[v].numEntries; e++) {
-                        buf.putLong(VVR_PREAMBLE + _bufs.get(nbuf + e).limit());
-                        buf.putInt(7);
-                        buf.put(_bufs.get(nbuf + e));
-                    }
-                } else {
-                    for (int e = 0; e < vxrs[v].numEntries; e++) {
-                        ByteBuffer b = _bufs.get(nbuf + e);
-                        buf.putLong(CVVR_PREAMBLE + b.limit());
-                        buf.putInt(13);
-                        buf.putInt(0);
-                        buf.putLong((long)b.limit());
-                        buf.put(b);
-                    }
-                }
-                nbuf += vxrs[v].numEntries;
+            buf.put(tree.get(vdr.vXRHead, _firstRecords, _lastRecords, locs));
+            for (int nbuf = 0; nbuf < _bufs.size(); nbuf++) {
+                ByteBuffer b = _bufs.get(nbuf).duplicate();
+                buf.put(header(b.remaining()));
+                buf.put(b);
             }
         }
         return buf;
     }
+    /**
+     * returns the largest number of records of a block.
+     */
     int getBlockingFactor() {
         int n = -1;
-        for (int i = 0; i < points.size(); i++) {
-            int p = points.get(i).intValue();
+        for (int i = 0; i < _bufs.size(); i++) {
+            int p = _lastRecords.get(i).intValue() -
+                _firstRecords.get(i).intValue() + 1;
             if (p > n) n = p;
         }
         return n;
     }
+
+    /**
+     * joins runs of entries of _bufs that hold consecutive records into
+     * blocks of up to blockSize bytes, so that data added a few records
+     * at a time is not stored as many small blocks.
+     */
+    void coalesce() {
+        Vector<Integer> first = new Vector<Integer>();
+        Vector<Integer> last = new Vector<Integer>();
+        Vector<ByteBuffer> blocks = new Vector<ByteBuffer>();
+        int nbuf = 0;
+        while (nbuf < _bufs.size()) {
+            int end = span(_firstRecords, _lastRecords, _bufs, nbuf,
+                blockSize);
+            first.add(_firstRecords.get(nbuf));
+            last.add(_lastRecords.get(end - 1));
+            if ((end - nbuf) == 1) {
+                blocks.add(_bufs.get(nbuf));
+            } else {
+                blocks.add(join(_bufs, nbuf, end));
+            }
+            nbuf = end;
+        }
+        _firstRecords = first;
+        _lastRecords = last;
+        _bufs = blocks;
+    }
     public ByteBuffer addJavaArray(Object data, int dataType, boolean relax)
         throws Throwable {
         ArrayAttribute aa = new ArrayAttribute(data);
@@ -616,63 +624,209 @@ public class DataContainer {
         return (next[0] > buf.getDouble(buf.limit() - 8));
     }
 
+    /**
+     * writes the VDR, CPR, index and blocks with positional writes, so
+     * that containers may be written concurrently.
+     */
     public void update(FileChannel channel) throws IOException {
-        channel.position(position);
-        channel.write(vdr.get());
+        long pos = position;
+        ByteBuffer b = vdr.get();
+        writeFully(channel, b, pos);
+        pos += b.limit();
         if (vdr.isCompressed()) {
-            channel.write(cpr.get());
+            b = cpr.get();
+            writeFully(channel, b, pos);
+            pos += b.limit();
         }
         if (_bufs == null) return;
-        int nbuf = 0;
-        ByteBuffer longbuf = ByteBuffer.allocate(8);
-        ByteBuffer intbuf = ByteBuffer.allocate(4);
-        if (_bufs.size() > 0) {
-            for (int v = 0; v < vxrs.length; v++) {
-                channel.write(vxrs[v].get());
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    int n = _firstRecords.get(nbuf + e).intValue();
-                    writeInt(channel, intbuf, n);
-                }
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    int n = _lastRecords.get(nbuf + e).intValue();
-                    writeInt(channel, intbuf, n);
-                }
-                for (int e = 0; e < vxrs[v].numEntries; e++) {
-                    writeLong(channel, longbuf, locs[nbuf + e]);
-                }
-                if (!vdr.isCompressed()) {
-                    for (int e = 0; e < vxrs[v].numEntries; e++) {
-                        writeLong(channel, longbuf, 
-                            VVR_PREAMBLE + _bufs.get(nbuf + e).limit());
-                        writeInt(channel, intbuf, 7);
-                        channel.write(_bufs.get(nbuf + e));
-                    }
-                } else {
-                    for (int e = 0; e < vxrs[v].numEntries; e++) {
-                        ByteBuffer b = _bufs.get(nbuf + e);
-                        writeLong(channel, longbuf, CVVR_PREAMBLE + b.limit());
-                        writeInt(channel, intbuf, 13);
-                        writeInt(channel, intbuf, 0);
-                        writeLong(channel, longbuf, (long)b.limit());
-                        channel.write(b);
-                    }
+        writeFully(channel, tree.get(pos, _firstRecords, _lastRecords, locs),
+            pos);
+        for (int nbuf = 0; nbuf < _bufs.size(); nbuf++) {
+            b = _bufs.get(nbuf).duplicate();
+            ByteBuffer h = header(b.remaining());
+            writeFully(channel, h, locs[nbuf]);
+            writeFully(channel, b, locs[nbuf] + h.limit());
+        }
+    }
+
+    /**
+     * returns the header of a VVR, or of a CVVR if the variable is
+     * compressed, holding len bytes of data.
+     */
+    ByteBuffer header(int len) {
+        ByteBuffer h;
+        if (!vdr.isCompressed()) {
+            h = ByteBuffer.allocate(VVR_PREAMBLE);
+            h.putLong(VVR_PREAMBLE + len);
+            h.putInt(7);
+        } else {
+            h = ByteBuffer.allocate(CVVR_PREAMBLE);
+            h.putLong(CVVR_PREAMBLE + len);
+            h.putInt(13);
+            h.putInt(0);
+            h.putLong((long)len);
+        }
+        h.flip();
+        return h;
+    }
+
+    /**
+     * channel to which blocks are written as data is added, if this
+     * container belongs to a StreamingWriter.
+     */
+    FileChannel stream;
+    /**
+     * number of leading entries of bufs that have been written.
+     */
+    int written;
+    Vector<Integer> blockFirst = new Vector<Integer>();
+    Vector<Integer> blockLast = new Vector<Integer>();
+    Vector<Long> blockOffsets = new Vector<Long>();
+    int blockRecords = -1;
+
+    void setStream(FileChannel ch) {
+        stream = ch;
+    }
+
+    /**
+     * writes the buffers added since the last flush to the stream, as
+     * blocks of up to blockSize bytes that join buffers of consecutive
+     * records. Unless all is true, the last block is held until it is
+     * full, or data that does not follow it is added. Written buffers
+     * are dropped, except the last, which tells the last record.
+     */
+    void flush(boolean all) throws IOException {
+        int n = bufs.size();
+        int i = written;
+        while (i < n) {
+            int j = i + 1;
+            if (!doNotCompress) {
+                j = span(firstRecords, lastRecords, bufs, i, blockSize);
+                if (!all && (j == n) &&
+                    (bytes(bufs, i, j) < blockSize)) {
+                    break;
                 }
-                nbuf += vxrs[v].numEntries;
             }
+            writeBlock(i, j);
+            i = j;
+        }
+        written = i;
+        while (written > 1) {
+            firstRecords.remove(0);
+            lastRecords.remove(0);
+            bufs.remove(0);
+            points.remove(0);
+            written--;
+        }
+    }
+
+    /**
+     * writes entries from to to - 1 of bufs as a single VVR, or CVVR, at
+     * the end of the stream.
+     */
+    void writeBlock(int from, int to) throws IOException {
+        ByteBuffer data = join(bufs, from, to);
+        if (vdr.isCompressed() && !doNotCompress) data = codec.compress(data);
+        ByteBuffer header = header(data.remaining());
+        long offset = stream.size();
+        writeFully(stream, header, offset);
+        writeFully(stream, data, offset + header.limit());
+        int first = firstRecords.get(from).intValue();
+        int last = lastRecords.get(to - 1).intValue();
+        blockFirst.add(Integer.valueOf(first));
+        blockLast.add(Integer.valueOf(last));
+        blockOffsets.add(Long.valueOf(offset));
+        if ((last - first + 1) > blockRecords) blockRecords = last - first + 1;
+    }
+
+    /**
+     * returns the end of the run of entries, starting at from, that hold
+     * consecutive records and together fit in size bytes. The run has at
+     * least one entry.
+     */
+    static int span(Vector<Integer> first, Vector<Integer> last,
+        Vector<ByteBuffer> bufs, int from, int size) {
+        long bytes = bufs.get(from).remaining();
+        int to = from + 1;
+        while ((to < bufs.size()) && (first.get(to).intValue() ==
+            (last.get(to - 1).intValue() + 1)) &&
+            ((bytes + bufs.get(to).remaining()) <= size)) {
+            bytes += bufs.get(to).remaining();
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * returns the number of bytes held by entries from to to - 1 of bufs.
+     */
+    static long bytes(Vector<ByteBuffer> bufs, int from, int to) {
+        long n = 0;
+        for (int i = from; i < to; i++) n += bufs.get(i).remaining();
+        return n;
+    }
+
+    /**
+     * returns a buffer, positioned at 0, holding the contents of entries
+     * from to to - 1 of bufs.
+     */
+    static ByteBuffer join(Vector<ByteBuffer> bufs, int from, int to) {
+        if ((to - from) == 1) return bufs.get(from).duplicate();
+        ByteBuffer data = ByteBuffer.allocate((int)bytes(bufs, from, to));
+        for (int i = from; i < to; i++) data.put(bufs.get(i).duplicate());
+        data.flip();
+        return data;
+    }
+
+    static void writeFully(FileChannel ch, ByteBuffer buf, long offset)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            offset += ch.write(buf, offset);
         }
     }
-    void writeInt(FileChannel ch, ByteBuffer buf, int value) throws
-        IOException {
-        buf.position(0);
-        buf.putInt(value);
-        buf.position(0);
-        ch.write(buf);
+
+    /**
+     * sets the pointers of the VDR, and of the index of the blocks
+     * written to the stream, for a VDR at position, and returns the size
+     * of the VDR, CPR and index.
+     */
+    long layoutIndex() {
+        long size = vdr.getSize();
+        if (vdr.isCompressed()) {
+            cpr = new CPR(codec.getType(), codec.getParameter());
+            cpr.position = position + size;
+            vdr.setCPROffset(cpr.position);
+            size += cpr.getSize();
+        }
+        int nblocks = blockOffsets.size();
+        if (nblocks == 0) return size;
+        vdr.setMaxRec(blockLast.lastElement().intValue());
+        if (vdr.isCompressed()) vdr.setBlockingFactor(blockRecords);
+        vdr.setVXRHead(position + size);
+        vdr.setVXRTail(position + size);
+        tree = new VXRTree(nblocks, vxrEntries);
+        size += tree.getSize();
+        return size;
     }
-    void writeLong(FileChannel ch, ByteBuffer buf, long value) throws
-        IOException {
-        buf.position(0);
-        buf.putLong(value);
-        buf.position(0);
-        ch.write(buf);
+
+    /**
+     * writes the VDR, CPR and index laid out by layoutIndex().
+     */
+    void writeIndex(FileChannel ch) throws IOException {
+        long pos = position;
+        ByteBuffer b = vdr.get();
+        writeFully(ch, b, pos);
+        pos += b.limit();
+        if (vdr.isCompressed()) {
+            b = cpr.get();
+            writeFully(ch, b, pos);
+            pos += b.limit();
+        }
+        if (blockOffsets.size() == 0) return;
+        long[] offsets = new long[blockOffsets.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = blockOffsets.get(i).longValue();
+        }
+        writeFully(ch, tree.get(pos, blockFirst, blockLast, offsets), pos);
     }
 }
@@ -0,0 +1,164 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+/**
+ * Conversion of CDF integer data to java numeric types.
+ * Values are read in the byte order of the source buffer. Unsigned types
+ * are widened by masking, so that no value is boxed and no reflection is
+ * used on the read path.
+ * Bulk methods read n values starting at the buffer's position, store them
+ * in data[0] to data[n - 1] and advance the position past the values read.
+ */
+final class DataConverter {
+    private DataConverter() {
+    }
+
+    static boolean isUnsigned(int type) {
+        return DataTypes.typeCategory[type] == DataTypes.UNSIGNED_INTEGER;
+    }
+
+    /**
+     * returns integer value at the buffer's position, and advances the
+     * position.
+     */
+    static long getLong(ByteBuffer bv, int type) {
+        int pos = bv.position();
+        long value = getLong(bv, type, pos);
+        bv.position(pos + DataTypes.size[type]);
+        return value;
+    }
+
+    /**
+     * returns integer value at the given position.
+     */
+    static long getLong(ByteBuffer bv, int type, int pos) {
+        boolean unsigned = isUnsigned(type);
+        switch (DataTypes.size[type]) {
+        case 1:
+            return (unsigned)?(bv.get(pos) & 0xff):bv.get(pos);
+        case 2:
+            return (unsigned)?(bv.getShort(pos) & 0xffff):bv.getShort(pos);
+        case 4:
+            return (unsigned)?(bv.getInt(pos) & 0xffffffffl):bv.getInt(pos);
+        case 8:
+            return bv.getLong(pos);
+        default:
+            throw new IllegalArgumentException("Not an integer type " + type);
+        }
+    }
+
+    static void toDouble(ByteBuffer bv, int type, double[] data, int n) {
+        int pos = bv.position();
+        boolean unsigned = isUnsigned(type);
+        switch (DataTypes.size[type]) {
+        case 1:
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i) & 0xff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i);
+            }
+            break;
+        case 2:
+            ShortBuffer sbuf = bv.asShortBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i) & 0xffff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i);
+            }
+            break;
+        case 4:
+            IntBuffer ibuf = bv.asIntBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) {
+                    data[i] = ibuf.get(i) & 0xffffffffl;
+                }
+            } else {
+                for (int i = 0; i < n; i++) data[i] = ibuf.get(i);
+            }
+            break;
+        case 8:
+            LongBuffer lbuf = bv.asLongBuffer();
+            for (int i = 0; i < n; i++) data[i] = lbuf.get(i);
+            break;
+        default:
+            throw new IllegalArgumentException("Not an integer type " + type);
+        }
+        bv.position(pos + n*DataTypes.size[type]);
+    }
+
+    static void toFloat(ByteBuffer bv, int type, float[] data, int n) {
+        int pos = bv.position();
+        boolean unsigned = isUnsigned(type);
+        switch (DataTypes.size[type]) {
+        case 1:
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i) & 0xff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i);
+            }
+            break;
+        case 2:
+            ShortBuffer sbuf = bv.asShortBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i) & 0xffff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i);
+            }
+            break;
+        case 4:
+            IntBuffer ibuf = bv.asIntBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) {
+                    data[i] = ibuf.get(i) & 0xffffffffl;
+                }
+            } else {
+                for (int i = 0; i < n; i++) data[i] = ibuf.get(i);
+            }
+            break;
+        case 8:
+            LongBuffer lbuf = bv.asLongBuffer();
+            for (int i = 0; i < n; i++) data[i] = lbuf.get(i);
+            break;
+        default:
+            throw new IllegalArgumentException("Not an integer type " + type);
+        }
+        bv.position(pos + n*DataTypes.size[type]);
+    }
+
+    static void toLong(ByteBuffer bv, int type, long[] data, int n) {
+        int pos = bv.position();
+        boolean unsigned = isUnsigned(type);
+        switch (DataTypes.size[type]) {
+        case 1:
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i) & 0xff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = bv.get(pos + i);
+            }
+            break;
+        case 2:
+            ShortBuffer sbuf = bv.asShortBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i) & 0xffff;
+            } else {
+                for (int i = 0; i < n; i++) data[i] = sbuf.get(i);
+            }
+            break;
+        case 4:
+            IntBuffer ibuf = bv.asIntBuffer();
+            if (unsigned) {
+                for (int i = 0; i < n; i++) {
+                    data[i] = ibuf.get(i) & 0xffffffffl;
+                }
+            } else {
+                for (int i = 0; i < n; i++) data[i] = ibuf.get(i);
+            }
+            break;
+        case 8:
+            bv.asLongBuffer().get(data, 0, n);
+            break;
+        default:
+            throw new IllegalArgumentException("Not an integer type " + type);
+        }
+        bv.position(pos + n*DataTypes.size[type]);
+    }
+}
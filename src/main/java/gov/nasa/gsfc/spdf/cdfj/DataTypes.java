@@ -100,6 +100,25 @@ public final class DataTypes {
             if (size[i] <= 4) longInt[i] = ((long)1) << 8*size[i];
         }
     }
+    /**
+     * returns the java primitive type whose layout is identical to that
+     * of the given CDF type, or null if there is none.
+     */
+    static Class<?> storedClass(int type) {
+        switch (typeCategory[type]) {
+        case FLOAT:
+            return Float.TYPE;
+        case DOUBLE:
+            return Double.TYPE;
+        case LONG:
+            return Long.TYPE;
+        case SIGNED_INTEGER:
+            if (size[type] == 1) return Byte.TYPE;
+            if (size[type] == 2) return Short.TYPE;
+            if (size[type] == 4) return Integer.TYPE;
+        }
+        return null;
+    }
     public DataTypes() {
         Class tc = getClass();
         try {
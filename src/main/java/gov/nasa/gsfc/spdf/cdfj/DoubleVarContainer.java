@@ -76,7 +76,6 @@ public final class DoubleVarContainer extends BaseVarContainer implements
         double[] data = (double[])_data;
         int position = _buf.position();
         DoubleBuffer dbuf = _buf.asDoubleBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 0:
@@ -114,31 +113,11 @@ public final class DoubleVarContainer extends BaseVarContainer implements
             _buf.position(position);
             break;
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.doubleValue();
-                }
-                dbuf.put(data, 0, _num);
-                position += 8*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(double)x:(double)(longInt + x);
-                }
+                DataConverter.toDouble(bv, type, data, _num);
                 dbuf.put(data, 0, _num);
                 position += 8*_num;
                 processed += (_num/elements);
@@ -8,7 +8,28 @@ public class Extractor {
     static int MAX_ARRAY = 3;
     static Hashtable numericMethodMap = new Hashtable();
     static Hashtable stringMethodMap = new Hashtable();
+    static boolean methodsLoaded;
+
+    /**
+     * replaces the extractors for func by the static methods
+     * get&lt;func&gt;0 to get&lt;func&gt;3 of cl, whose argument types are
+     * args[0] to args[3]. GenericReader uses the replacements from then
+     * on; a rank whose entry in args is null is read by CDFImpl.
+     */
     public static void addFunction(String func, Class cl, Class[][] args) {
+        Method[] ma = getMethods(func, cl, args);
+        synchronized (numericMethodMap) {
+            loadMethods();
+            if (numericMethodMap.put(func, ma) != null) {
+                System.out.println("replacing value for the function " +
+                    func);
+            }
+            override(func, ma);
+        }
+    }
+
+    static Method[] getMethods(String func, Class<?> cl,
+        Class[][] args) {
         Method[] ma = new Method[MAX_ARRAY + 1];
         for (int j = 0; j <= MAX_ARRAY; j++) {
             if (args[j] == null) continue;
@@ -18,29 +39,25 @@ public class Extractor {
                 ex.printStackTrace();
             }
         }
-        if (numericMethodMap.put(func, ma) != null) {
-            System.out.println("replacing value for the function " + func);
-        }
+        return ma;
     }
 
-    static {
-        Class cl = null;
-        Class cdfClass = null;
-        Class variableClass = null;
-        try {
-            cl  = Class.forName("gov.nasa.gsfc.spdf.cdfj.Extractor");
-            cdfClass = Class.forName("gov.nasa.gsfc.spdf.cdfj.CDFImpl");
-            variableClass =
-                Class.forName("gov.nasa.gsfc.spdf.cdfj.Variable");
-        } catch (ClassNotFoundException ex) {
-        }
+    /**
+     * fills the reflective function maps the first time they are used.
+     * Called with numericMethodMap locked.
+     */
+    static void loadMethods() {
+        if (methodsLoaded) return;
+        methodsLoaded = true;
+        Class<?> cl = Extractor.class;
+        Class<?> cdfClass = CDFImpl.class;
+        Class<?> variableClass = Variable.class;
         int[] ia = new int[0];
-        double[] da = new double[0];
         // Series
         Class[] seriesArgs = new Class[] {cdfClass, variableClass};
         Class[][] arglist = new Class[MAX_ARRAY + 1][];
         for (int i = 0; i <= MAX_ARRAY; i++) arglist[i] = seriesArgs;
-        addFunction("Series",cl,  arglist);
+        numericMethodMap.put("Series", getMethods("Series", cl, arglist));
         // Element
         arglist = new Class[][]{
             null,
@@ -48,14 +65,14 @@ public class Extractor {
             new Class[] {cdfClass, variableClass, Integer.class,
                 Integer.class},
             null};
-        addFunction("Element", cl, arglist);
+        numericMethodMap.put("Element", getMethods("Element", cl, arglist));
         // Point
         arglist = new Class[][]{
             new Class[] {cdfClass, variableClass, Integer.class},
             new Class[] {cdfClass, variableClass, Integer.class},
             new Class[] {cdfClass, variableClass, Integer.class},
             new Class[] {cdfClass, variableClass, Integer.class}};
-        addFunction("Point", cl, arglist);
+        numericMethodMap.put("Point", getMethods("Point", cl, arglist));
         // Range
         arglist = new Class[][]{
             new Class[] {cdfClass, variableClass, Integer.class, Integer.class},
@@ -65,14 +82,14 @@ public class Extractor {
 */
             null,
             null};
-        addFunction("Range", cl, arglist);
+        numericMethodMap.put("Range", getMethods("Range", cl, arglist));
         // Elements
         arglist = new Class[][]{
             null,
             new Class[] {cdfClass, variableClass, ia.getClass()},
             null,
             null};
-        addFunction("Elements", cl, arglist);
+        numericMethodMap.put("Elements", getMethods("Elements", cl, arglist));
         // RangeForElements
         arglist = new Class[][]{
             null,
@@ -80,7 +97,8 @@ public class Extractor {
                          Integer.class, ia.getClass()},
             null,
             null};
-        addFunction("RangeForElements", cl, arglist);
+        numericMethodMap.put("RangeForElements",
+            getMethods("RangeForElements", cl, arglist));
         // RangeForElement
         arglist = new Class[][]{
             null,
@@ -88,7 +106,8 @@ public class Extractor {
                          Integer.class, Integer.class},
             null,
             null};
-        addFunction("RangeForElement", cl, arglist);
+        numericMethodMap.put("RangeForElement",
+            getMethods("RangeForElement", cl, arglist));
         // String rank 0 and 1 only
         Method[] ma;
         try {
@@ -108,6 +127,9 @@ public class Extractor {
         IllegalAccessException, InvocationTargetException {
         int rank = var.getEffectiveRank();
         Method[] ma;
+        synchronized (numericMethodMap) {
+            loadMethods();
+        }
         if (DataTypes.isStringType(var.getType())) {
             ma = ( Method[])stringMethodMap.get(func);
             if (ma == null) return null;
@@ -122,6 +144,161 @@ public class Extractor {
         return ma[rank];
     }
 
+    /**
+     * installs methods registered with addFunction in the typed function
+     * table for func.
+     */
+    static void override(String func, Method[] ma) {
+        for (int j = 0; j <= MAX_ARRAY; j++) {
+            final Method m = ma[j];
+            if (func.equals("Series")) {
+                seriesFunctions[j] = (m == null)?null:
+                    (cdf, var) -> invoke(m, cdf, var);
+            } else if (func.equals("Point")) {
+                pointFunctions[j] = (m == null)?null:
+                    (cdf, var, pt) -> invoke(m, cdf, var,
+                    Integer.valueOf(pt));
+            } else if (func.equals("Range")) {
+                rangeFunctions[j] = (m == null)?null:
+                    (cdf, var, first, last) -> invoke(m, cdf, var,
+                    Integer.valueOf(first), Integer.valueOf(last));
+            } else if (func.equals("Element")) {
+                elementFunctions[j] = (m == null)?null:
+                    (cdf, var, idx) -> invoke(m, cdf, var,
+                    Integer.valueOf(idx));
+            } else if (func.equals("Elements")) {
+                elementsFunctions[j] = (m == null)?null:
+                    (cdf, var, idx) -> invoke(m, cdf, var, idx);
+            } else if (func.equals("RangeForElement")) {
+                rangeForElementFunctions[j] = (m == null)?null:
+                    (cdf, var, first, last, idx) -> invoke(m, cdf, var,
+                    Integer.valueOf(first), Integer.valueOf(last),
+                    Integer.valueOf(idx));
+            } else if (func.equals("RangeForElements")) {
+                rangeForElementsFunctions[j] = (m == null)?null:
+                    (cdf, var, first, last, idx) -> invoke(m, cdf, var,
+                    Integer.valueOf(first), Integer.valueOf(last), idx);
+            }
+        }
+    }
+
+    static Object invoke(Method method, Object... args) throws Throwable {
+        try {
+            return method.invoke(null, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /*
+     * Typed equivalents of the reflective function map. Calls through
+     * these do not box their arguments, and exceptions thrown by the
+     * extractor reach the caller unwrapped. Entries are replaced by
+     * methods registered with addFunction.
+     */
+    public interface SeriesFunction {
+        Object get(CDFImpl thisCDF, Variable var) throws Throwable;
+    }
+
+    public interface PointFunction {
+        Object get(CDFImpl thisCDF, Variable var, int point) throws Throwable;
+    }
+
+    public interface RangeFunction {
+        Object get(CDFImpl thisCDF, Variable var, int first, int last)
+            throws Throwable;
+    }
+
+    public interface ElementFunction {
+        Object get(CDFImpl thisCDF, Variable var, int element)
+            throws Throwable;
+    }
+
+    public interface ElementsFunction {
+        Object get(CDFImpl thisCDF, Variable var, int[] elements)
+            throws Throwable;
+    }
+
+    public interface RangeForElementFunction {
+        Object get(CDFImpl thisCDF, Variable var, int first, int last,
+            int element) throws Throwable;
+    }
+
+    public interface RangeForElementsFunction {
+        Object get(CDFImpl thisCDF, Variable var, int first, int last,
+            int[] elements) throws Throwable;
+    }
+
+    static final SeriesFunction[] seriesFunctions = new SeriesFunction[] {
+        Extractor::getSeries0, Extractor::getSeries1, Extractor::getSeries2,
+        Extractor::getSeries3};
+    static final SeriesFunction[] stringSeriesFunctions =
+        new SeriesFunction[] {
+        Extractor::getStringSeries0, Extractor::getStringSeries1};
+    static final PointFunction[] pointFunctions = new PointFunction[] {
+        Extractor::getPoint0, Extractor::getPoint1, Extractor::getPoint2,
+        Extractor::getPoint3};
+    static final RangeFunction[] rangeFunctions = new RangeFunction[] {
+        Extractor::getRange0, Extractor::getRange1, null, null};
+    static final ElementFunction[] elementFunctions = new ElementFunction[] {
+        null, Extractor::getElement1, null, null};
+    static final ElementsFunction[] elementsFunctions =
+        new ElementsFunction[] {null, Extractor::getElements1, null, null};
+    static final RangeForElementFunction[] rangeForElementFunctions =
+        new RangeForElementFunction[] {null, Extractor::getRangeForElement1,
+        null, null};
+    static final RangeForElementsFunction[] rangeForElementsFunctions =
+        new RangeForElementsFunction[] {null,
+        Extractor::getRangeForElements1, null, null};
+
+    /**
+     * returns entry of a numeric function table applicable to the variable,
+     * or null.
+     */
+    static <T> T select(Variable var, T[] functions) {
+        if (DataTypes.isStringType(var.getType())) return null;
+        int rank = var.getEffectiveRank();
+        if (DataTypes.typeCategory[var.getType()] == DataTypes.LONG) {
+            if (rank > 0) return null;
+        }
+        return (rank < functions.length)?functions[rank]:null;
+    }
+
+    public static SeriesFunction getSeriesFunction(Variable var) {
+        if (DataTypes.isStringType(var.getType())) {
+            int rank = var.getEffectiveRank();
+            return (rank < stringSeriesFunctions.length)?
+                stringSeriesFunctions[rank]:null;
+        }
+        return select(var, seriesFunctions);
+    }
+
+    public static PointFunction getPointFunction(Variable var) {
+        return select(var, pointFunctions);
+    }
+
+    public static RangeFunction getRangeFunction(Variable var) {
+        return select(var, rangeFunctions);
+    }
+
+    public static ElementFunction getElementFunction(Variable var) {
+        return select(var, elementFunctions);
+    }
+
+    public static ElementsFunction getElementsFunction(Variable var) {
+        return select(var, elementsFunctions);
+    }
+
+    public static RangeForElementFunction getRangeForElementFunction(
+        Variable var) {
+        return select(var, rangeForElementFunctions);
+    }
+
+    public static RangeForElementsFunction getRangeForElementsFunction(
+        Variable var) {
+        return select(var, rangeForElementsFunctions);
+    }
+
     public static Object getSeries0(CDFImpl thisCDF, Variable var) throws 
         IllegalAccessException, InvocationTargetException, Throwable {
         if (var.isMissingRecords()) {
@@ -142,23 +319,19 @@ public class Extractor {
             data = new double[numberOfValues];
             pad = new Double(((double[])getPadValue(thisCDF, var))[0]);
         }
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int offset = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             // fill if necessary
             if (!longType) {
                 while (offset < first) data[offset++] = pad.doubleValue();
             } else {
                 while (offset < first) ldata[offset++] = pad.longValue();
             }
-                
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -169,19 +342,13 @@ public class Extractor {
                 while (offset <= last) data[offset++] = bvd.get();
                 break;
             case 2:
-                method = DataTypes.method[type];
                 while (offset <= last) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 while (offset <= last) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 5:
@@ -332,22 +499,19 @@ public class Extractor {
               "are supported at this time.");
         }
         double[] padValue = (double[])getPadValue(thisCDF, var);
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int offset = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             while (offset < first) {
                 for (int m = 0; m < elements; m++) {
                     data[offset][m] = padValue[m];
                 }
                 offset++;
             }
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -384,11 +548,9 @@ public class Extractor {
     static void doSignedInteger(ByteBuffer bv, int type, int first, 
         int last, int count, double[][] data) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < count; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[n][e] = num.doubleValue();
+                data[n][e] = DataConverter.getLong(bv, type);
             }
         }
     }
@@ -401,12 +563,10 @@ public class Extractor {
         int index = first;
         doSignedInteger(bv, pos, type, size, first, last, data, index);
 /*
-        Method method = DataTypes.method[type];
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[n] = num.doubleValue();
+            data[n] = DataConverter.getLong(bv, type);
             pos += size;
         }
 */
@@ -416,12 +576,10 @@ public class Extractor {
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = DataConverter.getLong(bv, type);
             pos += size;
         }
         return index;
@@ -430,14 +588,12 @@ public class Extractor {
     static void doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[n][e] = num.doubleValue();
+                data[n][e] = DataConverter.getLong(bv, type);
             }
             pos += size;
         }
@@ -446,14 +602,12 @@ public class Extractor {
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data,
         int index) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[index][e] = num.doubleValue();
+                data[index][e] = DataConverter.getLong(bv, type);
             }
             pos += size;
             index++;
@@ -464,13 +618,9 @@ public class Extractor {
     static void doUnsignedInteger(ByteBuffer bv, int type, int first, 
         int last, int count, double[][] data) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < count; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[n][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[n][e] = DataConverter.getLong(bv, type);
             }
         }
     }
@@ -478,14 +628,10 @@ public class Extractor {
     static void doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[n] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[n] = DataConverter.getLong(bv, type);
             pos += size;
         }
     }
@@ -493,14 +639,10 @@ public class Extractor {
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         bv.position(pos);
         for (int n = first; n <= last; n++) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = DataConverter.getLong(bv, type);
             pos += size;
         }
         return index;
@@ -509,16 +651,12 @@ public class Extractor {
     static void doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data) throws
         IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[n][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[n][e] = DataConverter.getLong(bv, type);
             }
             pos += size;
         }
@@ -527,16 +665,12 @@ public class Extractor {
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, int[] offsets, double[][] data,
         int index) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         bv.position(pos);
         int ne = offsets.length;
         for (int n = first; n <= last; n++) {
             for (int e = 0; e < ne; e++) {
                 bv.position(pos + offsets[e]);
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[index][e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[index][e] = DataConverter.getLong(bv, type);
             }
             pos += size;
             index++;
@@ -545,11 +679,16 @@ public class Extractor {
     }
 
     public static Object getElement1(CDFImpl thisCDF, Variable var, Integer idx)
+        throws Throwable {
+        return getElement1(thisCDF, var, idx.intValue());
+    }
+
+    public static Object getElement1(CDFImpl thisCDF, Variable var, int idx)
         throws Throwable {
         if (var.isMissingRecords()) {
-             return thisCDF.get(var.getName(), idx.intValue());
+             return thisCDF.get(var.getName(), idx);
         }
-        int element = idx.intValue();
+        int element = idx;
         int numberOfValues = var.getNumberOfValues();
         if (numberOfValues == 0) return null;
         if (!var.recordVariance()) numberOfValues = 1;
@@ -571,21 +710,18 @@ public class Extractor {
             padValue = (double[])getPadValue(thisCDF, var);
         }
         int loff = element*DataTypes.size[type];
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int offset = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             if (!longType) {
                 while (offset < first) data[offset++] = padValue[element];
             } else {
                 while (offset < first) ldata[offset++] = longPadValue[element];
             }
-            Method method;
             int pos = bv.position() + loff;
             switch (DataTypes.typeCategory[type]) {
             case 0:
@@ -664,15 +800,13 @@ public class Extractor {
             data = new double[numberOfValues][ne];
             padValue = (double[])getPadValue(thisCDF, var);
         }
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int offset = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             if (!longType) {
                 while (offset < first) {
                     for (int e = 0; e < ne; e++) {
@@ -688,7 +822,6 @@ public class Extractor {
                     offset++;
                 }
             }
-            Method method;
             int pos = bv.position();
             switch (DataTypes.typeCategory[type]) {
             case 0:
@@ -745,15 +878,13 @@ public class Extractor {
         int n1 = (((Integer)elementCount(var).elementAt(1))).intValue();
         double [][][] data = new double[numberOfValues][n0][n1];
         double[] padValue = (double[])getPadValue(thisCDF, var);
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int offset = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             if (var.rowMajority()) {
                 while (offset < first) {
                     for (int m = 0; m < n0; m++) {
@@ -980,40 +1111,34 @@ public class Extractor {
     }
 
     public static Object getPoint0(CDFImpl thisCDF,Variable var, Integer pt) 
+        throws Throwable {
+        return getPoint0(thisCDF, var, pt.intValue());
+    }
+
+    public static Object getPoint0(CDFImpl thisCDF,Variable var, int pt) 
         throws Throwable {
         if (var.isMissingRecords()) {
-             return thisCDF.getPoint(var.getName(), pt.intValue());
+             return thisCDF.getPoint(var.getName(), pt);
         }
-        int point = pt.intValue();
+        int point = pt;
         int type = var.getType();
         int itemSize = var.getDataItemSize();
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
-        for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
+        for (int blk = locations.blockIndex(point); blk < locations.size();
+            blk++) {
+            long [] loc = locations.getLocation(blk);
             if (loc[1] < point) continue;
             if (loc[0] > point) return null;
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position() + (point - (int)loc[0])*itemSize;
-            Method method;
-            Number num;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 return new Double((double)bv.getFloat(pos));
             case 1:
                 return new Double(bv.getDouble(pos));
             case 2:
-                method = DataTypes.method[type];
-                num = (Number)method.invoke(bv, new Object[] {});
-                return new Double(num.doubleValue());
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
-                num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                double d = (x >= 0)?(double)x:(double)(longInt + x);
-                return new Double(d);
+                return Double.valueOf(DataConverter.getLong(bv, type, pos));
             case 5:
                 return new Long(bv.getLong(pos));
             }
@@ -1023,26 +1148,29 @@ public class Extractor {
 
     public static double[] getPoint1(CDFImpl thisCDF,Variable var, Integer pt) 
         throws Throwable {
-        int point = pt.intValue();
+        return getPoint1(thisCDF, var, pt.intValue());
+    }
+
+    public static double[] getPoint1(CDFImpl thisCDF,Variable var, int pt) 
+        throws Throwable {
+        int point = pt;
         int type = var.getType();
         if (DataTypes.typeCategory[type] == DataTypes.LONG) {
             throw new Throwable("Only scalar variables of type int8 " +
               "are supported at this time.");
         }
         int itemSize = var.getDataItemSize();
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
-        for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
+        for (int blk = locations.blockIndex(point); blk < locations.size();
+            blk++) {
+            long [] loc = locations.getLocation(blk);
             if (loc[1] < point) continue;
             if (loc[0] > point) return null;
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position() + (point - (int)loc[0])*itemSize;
             bv.position(pos);
             int n = (((Integer)elementCount(var).elementAt(0))).intValue();
             double [] da = new double[n];
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1057,19 +1185,13 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
                 for (int i = 0; i < n; i++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    da[i] = num.doubleValue();
+                    da[i] = DataConverter.getLong(bv, type);
                 }
                 return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 for (int i = 0; i < n; i++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    da[i] = (x >= 0)?(double)x:(double)(longInt + x);
+                    da[i] = DataConverter.getLong(bv, type);
                 }
                 return da;
             }
@@ -1079,27 +1201,30 @@ public class Extractor {
 
     public static double[][] getPoint2(CDFImpl thisCDF, Variable var,
         Integer pt) throws Throwable {
-        int point = pt.intValue();
+        return getPoint2(thisCDF, var, pt.intValue());
+    }
+
+    public static double[][] getPoint2(CDFImpl thisCDF, Variable var,
+        int pt) throws Throwable {
+        int point = pt;
         int type = var.getType();
         if (DataTypes.typeCategory[type] == DataTypes.LONG) {
             throw new Throwable("Only scalar variables of type int8 " +
               "are supported at this time.");
         }
         int itemSize = var.getDataItemSize();
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
-        for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
+        for (int blk = locations.blockIndex(point); blk < locations.size();
+            blk++) {
+            long [] loc = locations.getLocation(blk);
             if (loc[1] < point) continue;
             if (loc[0] > point) return null;
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position() + (point - (int)loc[0])*itemSize;
             bv.position(pos);
             int n0 = (((Integer)elementCount(var).elementAt(0))).intValue();
             int n1 = (((Integer)elementCount(var).elementAt(1))).intValue();
             double [][] da = new double[n0][n1];
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1134,45 +1259,32 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            da[i][j] = num.doubleValue();
+                            da[i][j] = DataConverter.getLong(bv, type);
                         }
                     }
                 } else {
                     for (int i = 0; i < n1; i++) {
                         for (int j = 0; j < n0; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            da[j][i] = num.doubleValue();
+                            da[j][i] = DataConverter.getLong(bv, type);
                         }
                     }
                 }
                 return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            int x = num.intValue();
-                            double d = (x >= 0)?(double)x:(double)(longInt + x);
+                            double d = DataConverter.getLong(bv, type);
                             da[i][j] = d;
                         }
                     }
                 } else {
                     for (int i = 0; i < n1; i++) {
                         for (int j = 0; j < n0; j++) {
-                            Number num = 
-                                (Number)method.invoke(bv, new Object[] {});
-                            int x = num.intValue();
-                            double d = (x >= 0)?(double)x:(double)(longInt + x);
+                            double d = DataConverter.getLong(bv, type);
                             da[j][i] = d;
                         }
                     }
@@ -1194,8 +1306,13 @@ public class Extractor {
 
     public static Object getRange0(CDFImpl thisCDF, Variable var,
         Integer istart, Integer iend) throws Throwable {
-        int start = istart.intValue();
-        int end = iend.intValue();
+        return getRange0(thisCDF, var, istart.intValue(), iend.intValue());
+    }
+
+    public static Object getRange0(CDFImpl thisCDF, Variable var,
+        int istart, int iend) throws Throwable {
+        int start = istart;
+        int end = iend;
         if (var.isMissingRecords()) {
              return thisCDF.getRange(var.getName(), start, end);
         }
@@ -1220,8 +1337,7 @@ public class Extractor {
             padValue = (double[])getPadValue(thisCDF, var);
         }
         int [] blks = null;
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         if (locations == null) {
             fillWithPad(longType, _data, start, end, _pad);
             return _data;
@@ -1300,7 +1416,7 @@ public class Extractor {
             Object[] oa = positionBuffer((CDFImpl)thisCDF, var, blks, blk,
                 start, end);
             if (oa == null) { //
-                long [] loc = (long [])locations.get(blk - 1);
+                long [] loc = locations.getLocation(blk - 1);
                 if (!longType) {
                     double lastValue = 
                         var.asDoubleArray(new int[]{(int)loc[1]})[0];
@@ -1346,7 +1462,6 @@ public class Extractor {
                 }
             }
             last = ((Integer)oa[2]).intValue();
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -1357,19 +1472,13 @@ public class Extractor {
                 while (offset <= (last - start)) data[offset++] = bvd.get();
                 break;
             case 2:
-                method = DataTypes.method[type];
                 while (offset <= (last - start)) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 while (offset <= (last - start)) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 5:
@@ -1423,12 +1532,17 @@ public class Extractor {
      */
     public static double [][] getRange1(CDFImpl thisCDF, Variable var,
         Integer istart, Integer iend) throws Throwable {
+        return getRange1(thisCDF, var, istart.intValue(), iend.intValue());
+    }
+
+    public static double [][] getRange1(CDFImpl thisCDF, Variable var,
+        int istart, int iend) throws Throwable {
         int type = var.getType();
         if (DataTypes.typeCategory[type] == DataTypes.LONG) {
             throw new Throwable("Long type not supported in this context");
         }
-        int start = istart.intValue();
-        int end = iend.intValue();
+        int start = istart;
+        int end = iend;
         int numberOfValues = var.getNumberOfValues();
         int itemSize = var.getDataItemSize();
         int elements = (((Integer)elementCount(var).elementAt(0))).intValue();
@@ -1436,8 +1550,7 @@ public class Extractor {
         double [] padValue = (double[])getPadValue(thisCDF, var);
 
         int [] blks = null;
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         if (locations != null) {
              blks =  getBlockRange(locations, var.recordVariance(), start, end);
         }
@@ -1478,8 +1591,9 @@ public class Extractor {
                 start, end);
             if (oa == null) {
                 if (substitute) {
-                    int [] loc = (int [])locations.get(blk - 1);
-                    double[] lastValue = var.asDoubleArray(new int[]{loc[1]});
+                    long [] loc = locations.getLocation(blk - 1);
+                    double[] lastValue =
+                        var.asDoubleArray(new int[]{(int)loc[1]});
                     while (offset < data.length) {
                         data[offset] = lastValue;
                         offset++;
@@ -1593,10 +1707,16 @@ public class Extractor {
      */
     public static Object getRangeForElement1(CDFImpl thisCDF, Variable var,
         Integer istart, Integer iend, Integer ielement) throws Throwable {
-        int element = ielement.intValue();
+        return getRangeForElement1(thisCDF, var,
+            istart.intValue(), iend.intValue(), ielement.intValue());
+    }
+
+    public static Object getRangeForElement1(CDFImpl thisCDF, Variable var,
+        int istart, int iend, int ielement) throws Throwable {
+        int element = ielement;
         if (!validElement(var, new int[] {element})) return null;
-        int start = istart.intValue();
-        int end = iend.intValue();
+        int start = istart;
+        int end = iend;
         if (var.isMissingRecords()) {
              return ((CDFImpl)thisCDF).getRange(var.getName(), start, end,
              element);
@@ -1618,8 +1738,7 @@ public class Extractor {
             padValue = (double[])getPadValue(thisCDF, var);
         }
         int loff = element*DataTypes.size[type];
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int [] blks =  
             getBlockRange(locations, var.recordVariance(), start, end);
         int firstBlock = blks[0];
@@ -1728,9 +1847,15 @@ public class Extractor {
      */
     public static Object getRangeForElements1(CDFImpl thisCDF, Variable var,
         Integer istart, Integer iend, int[] idx) throws Throwable {
+        return getRangeForElements1(thisCDF, var,
+            istart.intValue(), iend.intValue(), idx);
+    }
+
+    public static Object getRangeForElements1(CDFImpl thisCDF, Variable var,
+        int istart, int iend, int[] idx) throws Throwable {
         if (!validElement(var, idx)) return null;
-        int start = istart.intValue();
-        int end = iend.intValue();
+        int start = istart;
+        int end = iend;
         int numberOfValues = var.getNumberOfValues();
         int size = var.getDataItemSize();
         int ne = idx.length;
@@ -1754,8 +1879,7 @@ public class Extractor {
             loff[i] = idx[i]*DataTypes.size[type];
         }
         // loff contains offsets from the beginning of the item
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int [] blks =  
             getBlockRange(locations, var.recordVariance(), start, end);
         int firstBlock = blks[0];
@@ -1881,12 +2005,10 @@ public class Extractor {
         int numberOfValues = var.getNumberOfValues();
         String [] data = new String[numberOfValues];
         int len = var.getNumberOfElements();
-        Vector locations = 
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            long [] loc = locations.getLocation(blk);
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position();
             for (int n = (int)loc[0]; n <= (int)loc[1]; n++) {
                 data[n] = getStringValue(bv, len);
@@ -1915,12 +2037,10 @@ public class Extractor {
         String [][] data = new String[numberOfValues][elements];
         int size = var.getDataItemSize();
         int len = var.getNumberOfElements();
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            long [] loc = locations.getLocation(blk);
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position();
             for (int n = (int)loc[0]; n <= (int)loc[1]; n++) {
                 for (int m = 0; m < elements; m++) {
@@ -1981,20 +2101,38 @@ public class Extractor {
     }
 
     /**
-     * returns ByteBuffer containing count values for variable var starting at
-     * CDF offset value offset.
+     * returns range of blocks containing the range of records (start, end).
+     * Same as {@link #getBlockRange(Vector, boolean, int, int)}, using
+     * binary search on the locator.
+      * @param locator the block locations for check
+      * @param recordVariance the flag of variable record variance
+      * @param start  the starting record
+      * @param end  the ending record
+      * @return a 1-D int array
      */
-    static ByteBuffer positionBuffer(CDFImpl impl, Variable var, long offset,
-        int count) {
-        ByteBuffer bv;
-        if (!var.isCompressed()) {
-            bv = impl.getValueBuffer(offset);
-        } else {
-            int size = var.getDataItemSize();
-            bv = impl.getValueBuffer(offset, size , count);
-        }
-        bv.order(impl.getByteOrder());
-        return bv;
+    public static int [] getBlockRange(CDFImpl.DataLocator locator,
+        boolean recordVariance, int start, int end) {
+        if (!recordVariance) return new int[] {0, 0};
+        int nblocks = locator.size();
+        if (end < locator.getFirstRecord(0)) return null;
+        if (start > locator.getLastRecord(nblocks - 1)) return null;
+        int firstBlock = locator.blockIndex(start);
+        int lastBlock = locator.blockIndex(end);
+        if (lastBlock == nblocks) {
+            lastBlock--;
+        } else if (end < locator.getFirstRecord(lastBlock)) {
+            lastBlock--;
+        }
+        if (lastBlock < firstBlock) lastBlock = firstBlock;
+        return new int[] {firstBlock, lastBlock};
+    }
+
+    /**
+     * returns ByteBuffer containing the values of block blk of variable
+     * var.
+     */
+    static ByteBuffer positionBuffer(CDFImpl impl, Variable var, int blk) {
+        return impl.positionBuffer(var, blk);
     }
 
     /**
@@ -2004,12 +2142,10 @@ public class Extractor {
      */
     static Object[] positionBuffer(CDFImpl impl, Variable var, int[] blockRange,
         int blk, int start, int end) {
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
-        long [] loc = (long [])locations.elementAt(blk);
-        int first = (int)loc[0];
-        int last = (int)loc[1];
-        ByteBuffer bv = positionBuffer(impl, var, loc[2], (last - first + 1));
+        CDFImpl.DataLocator locator = (CDFImpl.DataLocator)var.getLocator();
+        int first = (int)locator.getFirstRecord(blk);
+        int last = (int)locator.getLastRecord(blk);
+        ByteBuffer bv = positionBuffer(impl, var, blk);
         if (var.recordVariance()) {
             if (blk == blockRange[0]) {// position to first needed
                 int size = var.getDataItemSize();
@@ -2049,15 +2185,13 @@ public class Extractor {
         double [][][][] data = new double[numberOfValues][n0][n1][n2];
         double [] fill = (double[])getFillValue(thisCDF, var);
         double fillValue = (fill[0] != 0)?Double.NaN:fill[1];
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int next = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(last - first + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             if (var.rowMajority()) {
                 for (int n = next; n < first; n++) {
                     for (int m = 0; m < n0; m++) {
@@ -2137,15 +2271,13 @@ public class Extractor {
                 }
                 break;
             case 2:
-                Method method = DataTypes.method[type];
                 if (var.rowMajority()) {
                     for (int n = first; n <= last; n++) {
                         for (int m = 0; m < n0; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n2; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    data[n][m][l][k] = num.doubleValue();
+                                    data[n][m][l][k] =
+                                        DataConverter.getLong(bv, type);
                                 }
                             }
                         }
@@ -2155,9 +2287,8 @@ public class Extractor {
                         for (int m = 0; m < n2; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n0; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    data[n][k][l][m] = num.doubleValue();
+                                    data[n][k][l][m] =
+                                        DataConverter.getLong(bv, type);
                                 }
                             }
                         }
@@ -2165,18 +2296,13 @@ public class Extractor {
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 if (var.rowMajority()) {
                     for (int n = first; n <= last; n++) {
                         for (int m = 0; m < n0; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n2; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    int x = num.intValue();
                                     data[n][m][l][k] =
-                                      (x >= 0)?(double)x:(double)(longInt + x);
+                                        DataConverter.getLong(bv, type);
                                 }
                             }
                         }
@@ -2186,11 +2312,8 @@ public class Extractor {
                         for (int m = 0; m < n2; m++) {
                             for (int l = 0; l < n1; l++) {
                                 for (int k = 0; k < n0; k++) {
-                                    Number num =
-                                    (Number)method.invoke(bv, new Object[] {});
-                                    int x = num.intValue();
                                     data[n][k][l][m] =
-                                      (x >= 0)?(double)x:(double)(longInt + x);
+                                        DataConverter.getLong(bv, type);
                                 }
                             }
                         }
@@ -2216,24 +2339,27 @@ public class Extractor {
       */
     public static double[][][] getPoint3(CDFImpl thisCDF, Variable var,
         Integer pt) throws Throwable {
-        int point = pt.intValue();
+        return getPoint3(thisCDF, var, pt.intValue());
+    }
+
+    public static double[][][] getPoint3(CDFImpl thisCDF, Variable var,
+        int pt) throws Throwable {
+        int point = pt;
         int type = var.getType();
         int itemSize = var.getDataItemSize();
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
-        for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
+        for (int blk = locations.blockIndex(point); blk < locations.size();
+            blk++) {
+            long [] loc = locations.getLocation(blk);
             if (loc[1] < point) continue;
             if (loc[0] > point) return null;
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (int)(loc[1] - loc[0] + 1));
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int pos = bv.position() + (point - (int)loc[0])*itemSize;
             bv.position(pos);
             int n0 = (((Integer)elementCount(var).elementAt(0))).intValue();
             int n1 = (((Integer)elementCount(var).elementAt(1))).intValue();
             int n2 = (((Integer)elementCount(var).elementAt(2))).intValue();
             double [][][] da = new double[n0][n1][n2];
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -2276,14 +2402,11 @@ public class Extractor {
                 }
                 return da;
             case 2:
-                method = DataTypes.method[type];
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n2; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                da[i][j][k] = num.doubleValue();
+                                da[i][j][k] = DataConverter.getLong(bv, type);
                             }
                         }
                     }
@@ -2291,26 +2414,18 @@ public class Extractor {
                     for (int i = 0; i < n2; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n0; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                da[k][j][i] = num.doubleValue();
+                                da[k][j][i] = DataConverter.getLong(bv, type);
                             }
                         }
                     }
                 }
                 return da;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 if (var.rowMajority()) {
                     for (int i = 0; i < n0; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n2; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                int x = num.intValue();
-                                double d = (x >= 0)?(double)x:
-                                    (double)(longInt + x);
+                                double d = DataConverter.getLong(bv, type);
                                 da[i][j][k] = d;
                             }
                         }
@@ -2319,11 +2434,7 @@ public class Extractor {
                     for (int i = 0; i < n2; i++) {
                         for (int j = 0; j < n1; j++) {
                             for (int k = 0; k < n0; k++) {
-                                Number num = 
-                                    (Number)method.invoke(bv, new Object[] {});
-                                int x = num.intValue();
-                                double d = (x >= 0)?(double)x:
-                                    (double)(longInt + x);
+                                double d = DataConverter.getLong(bv, type);
                                 da[k][j][i] = d;
                             }
                         }
@@ -2364,7 +2475,6 @@ public class Extractor {
                return;
            }
        }
-        Method method;
         double[] data = null;
         if (DataTypes.typeCategory[type] != DataTypes.LONG) {
             data = (double[])result;
@@ -2383,19 +2493,13 @@ public class Extractor {
             bvd.get(data, offset, number);
             break;
         case 2:
-            method = DataTypes.method[type];
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                data[offset + e] = num.doubleValue();
+                data[offset + e] = DataConverter.getLong(bv, type);
             }
             break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                data[offset + e] = (x >= 0)?(double)x:(double)(longInt + x);
+                data[offset + e] = DataConverter.getLong(bv, type);
             }
             break;
         case 5:
@@ -2460,13 +2564,14 @@ public class Extractor {
         }
         Object temp = null;
 
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         ByteBuffer bv;
         int blk = 0;
         if (begin > 0) {// position to first needed block
+            blk = locations.blockIndex(begin);
+            if ((blk > 0) && (blk == locations.size())) blk--;
             for (; blk < locations.size(); blk++) {
-                long [] loc = (long [])locations.elementAt(blk);
+                long [] loc = locations.getLocation(blk);
                 int first = (int)loc[0];
                 int last = (int)loc[1];
                 if (last >= begin) break;
@@ -2498,12 +2603,12 @@ public class Extractor {
             }
         }
         for (; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
 
             int count = (last - first + 1);
-            bv = positionBuffer((CDFImpl)thisCDF, var, loc[2], count);
+            bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             if (firstBlock) {
                 if (pt != null) {
                     if (begin > first) {
@@ -2684,24 +2789,23 @@ public class Extractor {
         }
 
         int[] edim = var.getEffectiveDimensions();
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         ByteBuffer bv;
         int blk = 0;
         int offset = 0;
         if (pt == null) {
-            begin = (int)(((long [])locations.elementAt(0))[0]);
-            end = (int)
-                (((long [])locations.elementAt(locations.size() - 1))[1]);
+            begin = (int)locations.getFirstRecord(0);
+            end = (int)locations.getLastRecord(locations.size() - 1);
         }
+        blk = locations.blockIndex(begin);
         int index = 0;
         for (; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
             if (last < begin) continue;
             int count = (last - first + 1);
-            bv = positionBuffer((CDFImpl)thisCDF, var, loc[2], count);
+            bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             // position buffer at the first point desired
             // init is the index of the first point desired
             int pos = 0;
@@ -2751,7 +2855,6 @@ public class Extractor {
     static void do1D(ByteBuffer bv, int type, float[] tf, double[] data,
        int offset, int count, int elements, int _stride) throws
        IllegalAccessException, InvocationTargetException, Throwable {
-        Method method;
         int span = _stride*elements;
         int pos = bv.position();
         switch (DataTypes.typeCategory[type]) {
@@ -2774,29 +2877,20 @@ public class Extractor {
             }
             break;
         case 2:
-            method = DataTypes.method[type];
             span *= DataTypes.size[type];
             for (int n = 0; n < count; n++) {
                 bv.position(pos + n*span);
                 for (int e = 0; e < elements; e++) {
-                    Number num = 
-                        (Number)method.invoke(bv, new Object[] {});
-                    data[offset++] = num.doubleValue();
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
             }
             break;
         case 3:
-            method = DataTypes.method[type];
             span *= DataTypes.size[type];
-            long longInt = DataTypes.longInt[type];
             for (int n = 0; n < count; n++) {
-                bv.position(n*span);
+                bv.position(pos + n*span);
                 for (int e = 0; e < elements; e++) {
-                    Number num = (Number)method.invoke(bv,
-                        new Object[] {});
-                    int x = num.intValue();
-                    data[offset++] =
-                        (x >= 0)?(double)x:(double)(longInt + x);
+                    data[offset++] = DataConverter.getLong(bv, type);
                 }
             }
             break;
@@ -2836,16 +2930,13 @@ public class Extractor {
         } else {
             data = new double[numpt];
         }
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int next = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
-            Method method;
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int n = first % _stride;
             if (n == 0) {
                 n = first;
@@ -2867,21 +2958,15 @@ public class Extractor {
                 }
                 break;
             case 2:
-                method = DataTypes.method[type];
                 for (; pos <= last; pos += _stride) {
                     bv.position(pos*size);
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[next++] = num.doubleValue();
+                    data[next++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];    
-                long longInt = DataTypes.longInt[type];
                 for (; pos <= last; pos += _stride) {
                     bv.position(pos*size);
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[next++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[next++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 5:
@@ -2932,16 +3017,13 @@ public class Extractor {
         int advance = size*_stride;
 
         int loff = element*DataTypes.size[type];
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int point = 0;
         for (int blk = 0; blk < locations.size(); blk++) {
-            long [] loc = (long [])locations.elementAt(blk);
+            long [] loc = locations.getLocation(blk);
             int first = (int)loc[0];
             int last = (int)loc[1];
-            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, loc[2],
-                (last - first + 1));
-            Method method;
+            ByteBuffer bv = positionBuffer((CDFImpl)thisCDF, var, blk);
             int n = first % _stride;
             if (n == 0) {
                 n = first;
@@ -2984,15 +3066,13 @@ public class Extractor {
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int[] stride,
         int point) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         int index = point;
         bv.position(pos);
         int _stride = stride[0];
         int advance = _stride*size;
         int n = first;
         while (n <= last) {
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = DataConverter.getLong(bv, type);
             n += _stride;
             pos += advance;
             bv.position(pos);
@@ -3002,8 +3082,6 @@ public class Extractor {
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int[] stride,
         int point) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         int index = point;
         bv.position(pos);
         int _stride = stride[0];
@@ -3011,9 +3089,7 @@ public class Extractor {
         int n = first;
         while (n <= last) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = DataConverter.getLong(bv, type);
             n += _stride;
             pos += advance;
         }
@@ -3049,8 +3125,7 @@ public class Extractor {
             data = new double[numberOfValues];
         }
 
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int [] blks =
             getBlockRange(locations, var.recordVariance(), begin, end);
         int firstBlock = blks[0];
@@ -3075,7 +3150,6 @@ public class Extractor {
                 }
             }
             n = 0;
-            Method method;
             switch (DataTypes.typeCategory[type]) {
             case 0:
                 FloatBuffer bvf = bv.asFloatBuffer();
@@ -3090,19 +3164,13 @@ public class Extractor {
                 }
                 break;
             case 2:
-                method = DataTypes.method[type];
                 for (; n <= last; n += _stride) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[index++] = num.doubleValue();
+                    data[index++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 3:
-                method = DataTypes.method[type];
-                long longInt = DataTypes.longInt[type];
                 for (; n <= last; n += _stride) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+                    data[index++] = DataConverter.getLong(bv, type);
                 }
                 break;
             case 5:
@@ -3166,8 +3234,7 @@ public class Extractor {
         int itemSize = var.getDataItemSize();
         int advance = itemSize*_stride;
         int loff = element*DataTypes.size[type];
-        Vector locations =
-            ((CDFImpl.DataLocator)var.getLocator()).getLocationsAsVector();
+        CDFImpl.DataLocator locations = (CDFImpl.DataLocator)var.getLocator();
         int [] blks =
             getBlockRange(locations, var.recordVariance(), begin, end);
         int firstBlock = blks[0];
@@ -3243,11 +3310,9 @@ public class Extractor {
     static int doSignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index,
         int[] stride) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
         bv.position(pos);
         for (int n = first; n <= last; n += stride[0]) {
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            data[index++] = num.doubleValue();
+            data[index++] = DataConverter.getLong(bv, type);
             pos += size;
             bv.position(pos);
         }
@@ -3256,14 +3321,10 @@ public class Extractor {
     static int doUnsignedInteger(ByteBuffer bv, int pos, int type,
         int size, int first, int last, double[] data, int index,
         int[] stride) throws IllegalAccessException, InvocationTargetException {
-        Method method = DataTypes.method[type];
-        long longInt = DataTypes.longInt[type];
         bv.position(pos);
         for (int n = first; n <= last; n += stride[0]) {
             bv.position(pos);
-            Number num = (Number)method.invoke(bv, new Object[] {});
-            int x = num.intValue();
-            data[index++] = (x >= 0)?(double)x:(double)(longInt + x);
+            data[index++] = DataConverter.getLong(bv, type);
             pos += size;
         }
         return index;
@@ -3321,7 +3382,6 @@ public class Extractor {
         }
         double[] td = null;
         int n = 0;
-        Method method;
         switch (DataTypes.typeCategory[type]) {
         case 0:
             float[] tf = new float[number];
@@ -3379,21 +3439,15 @@ public class Extractor {
             }
             break;
         case 2:
-            method = DataTypes.method[type];
             td = new double[number];
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                td[e] = num.doubleValue();
+                td[e] = DataConverter.getLong(bv, type);
             }
             break;
         case 3:
-            method = DataTypes.method[type];
             td = new double[number];
-            long longInt = DataTypes.longInt[type];
             for (int e = 0; e < number; e++) {
-                Number num = (Number)method.invoke(bv, new Object[] {});
-                int x = num.intValue();
-                td[e] = (x >= 0)?(double)x:(double)(longInt + x);
+                td[e] = DataConverter.getLong(bv, type);
             }
             break;
         case 5:
@@ -74,7 +74,6 @@ public final class FloatVarContainer extends BaseVarContainer implements
         float[] data = (float[])_data;
         int position = _buf.position();
         FloatBuffer fbuf = _buf.asFloatBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 0:
@@ -112,31 +111,11 @@ public final class FloatVarContainer extends BaseVarContainer implements
             _buf.position(position);
             break;
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.floatValue();
-                }
-                fbuf.put(data, 0, _num);
-                position += 4*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(float)x:(float)(longInt + x);
-                }
+                DataConverter.toFloat(bv, type, data, _num);
                 fbuf.put(data, 0, _num);
                 position += 4*_num;
                 processed += (_num/elements);
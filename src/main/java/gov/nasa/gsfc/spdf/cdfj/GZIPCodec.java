@@ -0,0 +1,261 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.zip.*;
+/**
+ * GZIP compression (CPR cType 5). The parameter is the compression level
+ * recorded in the CPR.
+ * The GZIP header and trailer are handled here, and the deflate data is
+ * processed by an Inflater or Deflater kept per thread, so that no
+ * streams or native zlib state are created per block.
+ */
+final class GZIPCodec implements CompressionCodec {
+    static final int FHCRC = 2;
+    static final int FEXTRA = 4;
+    static final int FNAME = 8;
+    static final int FCOMMENT = 16;
+    static final int TRAILER = 8;
+    static final int CHUNK = 64*1024;
+    static final int MAX_SCRATCH = 4*1024*1024;
+    static final byte[] HEADER = new byte[] {
+        (byte)0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        protected Inflater initialValue() {return new Inflater(true);}
+    };
+    static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+    static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {return new byte[CHUNK];}
+    };
+    static final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {return new byte[CHUNK];}
+    };
+
+    public int getType() {return GZIP;}
+
+    public int getParameter() {return 9;}
+
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int len = src.remaining();
+        byte[] ba;
+        int start;
+        if (src.hasArray()) {
+            ba = src.array();
+            start = src.arrayOffset() + src.position();
+        } else {
+            ba = scratch(len);
+            src.duplicate().get(ba, 0, len);
+            start = 0;
+        }
+        int end = start + len;
+        int data = skipHeader(ba, start, end);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(ba, data, end - data);
+        CRC32 crc = new CRC32();
+        int got = 0;
+        try {
+            if (dst.hasArray()) {
+                byte[] out = dst.array();
+                int off = dst.arrayOffset() + dst.position();
+                int toRead = dst.remaining();
+                while ((got < toRead) && !inflater.finished()) {
+                    int n = inflater.inflate(out, off + got, toRead - got);
+                    if ((n == 0) && stalled(inflater)) break;
+                    got += n;
+                }
+                crc.update(out, off, got);
+                dst.position(dst.position() + got);
+            } else {
+                byte[] out = chunks.get();
+                while (dst.hasRemaining() && !inflater.finished()) {
+                    int want = Math.min(out.length, dst.remaining());
+                    int n = inflater.inflate(out, 0, want);
+                    if ((n == 0) && stalled(inflater)) break;
+                    crc.update(out, 0, n);
+                    dst.put(out, 0, n);
+                    got += n;
+                }
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid GZIP data: " + ex.getMessage());
+        }
+        int used = end - data - inflater.getRemaining();
+        int consumed = data - start + used;
+        if (inflater.finished() && (inflater.getRemaining() >= TRAILER)) {
+            int trailer = data + used;
+            if (littleEndianInt(ba, trailer) != (int)crc.getValue()) {
+                throw new IOException("GZIP CRC mismatch");
+            }
+            consumed += TRAILER;
+        }
+        src.position(src.position() + consumed);
+        return got;
+    }
+
+    /**
+     * Decompresses the bytes between position and limit of src, writing
+     * the data to out in chunks, so that the uncompressed data need not
+     * fit in memory. The GZIP header must be within the first chunk.
+     * @return number of bytes written
+     */
+    long decompress(ByteBuffer src, WritableByteChannel out) throws
+        IOException {
+        ByteBuffer in = src.duplicate();
+        byte[] input = new byte[CHUNK];
+        byte[] output = chunks.get();
+        int n = Math.min(CHUNK, in.remaining());
+        in.get(input, 0, n);
+        int data = skipHeader(input, 0, n);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(input, data, n - data);
+        CRC32 crc = new CRC32();
+        long written = 0;
+        try {
+            while (!inflater.finished()) {
+                int got = inflater.inflate(output);
+                if (got == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Unsupported GZIP preset " +
+                        "dictionary");
+                    }
+                    if (inflater.needsInput()) {
+                        if (!in.hasRemaining()) break;
+                        n = Math.min(CHUNK, in.remaining());
+                        in.get(input, 0, n);
+                        inflater.setInput(input, 0, n);
+                    }
+                    continue;
+                }
+                crc.update(output, 0, got);
+                ByteBuffer bb = ByteBuffer.wrap(output, 0, got);
+                while (bb.hasRemaining()) out.write(bb);
+                written += got;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid GZIP data: " + ex.getMessage());
+        }
+        int trailer = in.position() - inflater.getRemaining();
+        if (inflater.finished() && ((src.limit() - trailer) >= TRAILER)) {
+            ByteBuffer tb = src.duplicate();
+            tb.order(ByteOrder.LITTLE_ENDIAN);
+            if (tb.getInt(trailer) != (int)crc.getValue()) {
+                throw new IOException("GZIP CRC mismatch");
+            }
+            trailer += TRAILER;
+        }
+        src.position(trailer);
+        return written;
+    }
+
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        byte[] ba;
+        int start;
+        if (src.hasArray()) {
+            ba = src.array();
+            start = src.arrayOffset() + src.position();
+        } else {
+            ba = new byte[len];
+            src.duplicate().get(ba);
+            start = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(ba, start, len);
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(ba, start, len);
+        deflater.finish();
+        byte[] out = new byte[HEADER.length + bound(len) + TRAILER];
+        System.arraycopy(HEADER, 0, out, 0, HEADER.length);
+        int pos = HEADER.length;
+        while (!deflater.finished()) {
+            if (pos == (out.length - TRAILER)) {
+                out = java.util.Arrays.copyOf(out, out.length + CHUNK);
+            }
+            pos += deflater.deflate(out, pos, out.length - TRAILER - pos);
+        }
+        putLittleEndianInt(out, pos, (int)crc.getValue());
+        putLittleEndianInt(out, pos + 4, len);
+        src.position(src.limit());
+        return ByteBuffer.wrap(out, 0, pos + TRAILER).slice();
+    }
+
+    /**
+     * returns upper bound of the size of deflated data (as zlib's
+     * deflateBound).
+     */
+    static int bound(int len) {
+        return len + (len >> 12) + (len >> 14) + (len >> 25) + 13;
+    }
+
+    /**
+     * returns offset of the deflate data following the GZIP header that
+     * starts at offset start.
+     */
+    static int skipHeader(byte[] ba, int start, int end) throws IOException {
+        if (((end - start) < HEADER.length) ||
+            ((ba[start] & 0xff) != 0x1f) || ((ba[start + 1] & 0xff) != 0x8b)) {
+            throw new IOException("Not in GZIP format");
+        }
+        if (ba[start + 2] != Deflater.DEFLATED) {
+            throw new IOException("Unsupported GZIP compression method");
+        }
+        int flags = ba[start + 3] & 0xff;
+        int pos = start + HEADER.length;
+        try {
+            if ((flags & FEXTRA) != 0) {
+                pos += 2 + ((ba[pos] & 0xff) | ((ba[pos + 1] & 0xff) << 8));
+            }
+            if ((flags & FNAME) != 0) {
+                while (ba[pos++] != 0);
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (ba[pos++] != 0);
+            }
+            if ((flags & FHCRC) != 0) pos += 2;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Truncated GZIP header");
+        }
+        if (pos > end) throw new IOException("Truncated GZIP header");
+        return pos;
+    }
+
+    static boolean stalled(Inflater inflater) throws IOException {
+        if (inflater.needsDictionary()) {
+            throw new IOException("Unsupported GZIP preset dictionary");
+        }
+        return inflater.needsInput() || inflater.finished();
+    }
+
+    /**
+     * returns this thread's scratch array of at least len bytes. Arrays
+     * larger than MAX_SCRATCH are not kept.
+     */
+    static byte[] scratch(int len) {
+        if (len > MAX_SCRATCH) return new byte[len];
+        byte[] ba = scratch.get();
+        if (ba.length < len) {
+            ba = new byte[len];
+            scratch.set(ba);
+        }
+        return ba;
+    }
+
+    static int littleEndianInt(byte[] ba, int off) {
+        return (ba[off] & 0xff) | ((ba[off + 1] & 0xff) << 8) |
+            ((ba[off + 2] & 0xff) << 16) | ((ba[off + 3] & 0xff) << 24);
+    }
+
+    static void putLittleEndianInt(byte[] ba, int off, int value) {
+        ba[off] = (byte)value;
+        ba[off + 1] = (byte)(value >>> 8);
+        ba[off + 2] = (byte)(value >>> 16);
+        ba[off + 3] = (byte)(value >>> 24);
+    }
+}
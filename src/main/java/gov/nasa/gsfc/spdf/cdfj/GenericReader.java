@@ -3,7 +3,6 @@ import java.io.*;
 import java.net.*;
 import java.nio.*;
 import java.util.*;
-import java.lang.reflect.*;
 /**
  * GenericReader extends MetaData class with methods to access variable
  * data. Data access methods of this class do not require a detailed knowledge
@@ -11,7 +10,7 @@ import java.lang.reflect.*;
  * methods to access
  * time series.
  */
-public class GenericReader extends MetaData {
+public class GenericReader extends MetaData implements AutoCloseable {
     private ThreadGroup tgroup;
     private Hashtable threadMap = new Hashtable();
     static final Hashtable classMap = new Hashtable();
@@ -37,13 +36,8 @@ public class GenericReader extends MetaData {
         File _file = new File(cdfFile);
         if (!_file.exists()) throw new CDFException.ReaderError(
             cdfFile + " does not exist.");
-        if (_file.length() > Integer.MAX_VALUE) throw new 
-            CDFException.ReaderError("Size of file " + cdfFile + " exceeds " +
-            "Integer.MAX_VALUE. If data for individual variables is less " +
-            "than this limit, you can use ReaderFactory.getReader(fileName) " +
-            "to get a " + "GenericReader instance for this file.");
         try {
-            thisCDF = CDFFactory.getCDF(cdfFile);
+            thisCDF = CDFFactory.acquire(cdfFile, false);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -85,17 +79,21 @@ public class GenericReader extends MetaData {
      * @return   a double array of dimension appropriate to the variable.
      */
     public final Object get(String varName) throws CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
+        MappedMemory.enter();
         try {
-            Method method = Extractor.getMethod(var, "Series");
-            if ((method == null) || coreNeeded(var)) {
-                return thisCDF.get(varName);
+            Extractor.SeriesFunction function =
+                Extractor.getSeriesFunction(var);
+            if ((function == null) || coreNeeded(var)) {
+                return cdf().get(varName);
             }
-            return method.invoke(null, new Object [] {thisCDF, var});
+            return function.get(cdf(), var);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -116,13 +114,16 @@ public class GenericReader extends MetaData {
      */
     public final Object getLong(String varName) throws CDFException.ReaderError 
         {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
+        MappedMemory.enter();
         try {
-            return thisCDF.getLong(varName);
+            return cdf().getLong(varName);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -235,12 +236,12 @@ public class GenericReader extends MetaData {
      */
     public final double[] getOneD(String varName, boolean columnMajor) throws
         CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
         if (getNumberOfValues(varName) == 0) return new double[0];
         try {
-            return (double[])thisCDF.getOneD(varName, columnMajor);
+            return (double[])cdf().getOneD(varName, columnMajor);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -267,19 +268,21 @@ public class GenericReader extends MetaData {
      */
     public final Object getRange(String varName, int first, int last) throws
         CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
+        MappedMemory.enter();
         try {
-            Method method = Extractor.getMethod(var, "Range");
-            if ((method == null) || coreNeeded(var)) {
-                return thisCDF.getRange(varName, first, last);
+            Extractor.RangeFunction function =
+                Extractor.getRangeFunction(var);
+            if ((function == null) || coreNeeded(var)) {
+                return cdf().getRange(varName, first, last);
             }
-            return method.invoke(null,
-                new Object[] {thisCDF, var, new Integer(first),
-                new Integer(last)});
+            return function.get(cdf(), var, first, last);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -301,11 +304,11 @@ public class GenericReader extends MetaData {
      */
     public final double[] getRangeOneD(String varName, int first, int last,
         boolean columnMajor) throws CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
         try {
-            return (double[]) thisCDF.getRangeOneD(varName, first, last,
+            return (double[]) cdf().getRangeOneD(varName, first, last,
             columnMajor);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
@@ -314,11 +317,11 @@ public class GenericReader extends MetaData {
 /*
     public final double[] getOneD(String varName, int first, int last,
         int[] stride) throws CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
         try {
-            return thisCDF.get1D(varName, first, last, stride);
+            return cdf().get1D(varName, first, last, stride);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -339,16 +342,19 @@ public class GenericReader extends MetaData {
         checkType(varName);
         if (getEffectiveRank(varName) != 1) throw new
             CDFException.ReaderError(varName + " is not a vector.");
+        MappedMemory.enter();
         try {
-            Variable var = thisCDF.getVariable(varName);
-            Method method = Extractor.getMethod(var, "Element");
-            if ((method == null) || coreNeeded(var)) {
-                return (double[])thisCDF.get(varName, component);
+            Variable var = cdf().getVariable(varName);
+            Extractor.ElementFunction function =
+                Extractor.getElementFunction(var);
+            if ((function == null) || coreNeeded(var)) {
+                return (double[])cdf().get(varName, component);
             }
-            return (double[])method.invoke(null,
-                new Object[] {thisCDF, var, new Integer(component)});
+            return (double[])function.get(cdf(), var, component);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -367,16 +373,19 @@ public class GenericReader extends MetaData {
         checkType(varName);
         if (getEffectiveRank(varName) != 1) throw new
             CDFException.ReaderError(varName + " is not a vector.");
+        MappedMemory.enter();
         try {
-            Variable var = thisCDF.getVariable(varName);
-            Method method = Extractor.getMethod(var, "Elements");
-            if ((method == null) || coreNeeded(var)) {
-                return (double[][])thisCDF.get(varName, components);
+            Variable var = cdf().getVariable(varName);
+            Extractor.ElementsFunction function =
+                Extractor.getElementsFunction(var);
+            if ((function == null) || coreNeeded(var)) {
+                return (double[][])cdf().get(varName, components);
             }
-            return (double[][])method.invoke(null,
-                new Object[] {thisCDF, var, components});
+            return (double[][])function.get(cdf(), var, components);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -398,18 +407,21 @@ public class GenericReader extends MetaData {
         checkType(varName);
         if (getEffectiveRank(varName) != 1) throw new
             CDFException.ReaderError(varName + " is not a vector.");
+        MappedMemory.enter();
         try {
-            Variable var = thisCDF.getVariable(varName);
-            Method method = Extractor.getMethod(var, "RangeForElement");
-            if ((method == null) || coreNeeded(var, new int[]{first, last})) {
-                return (double[])thisCDF.getRange(varName, first, last,
+            Variable var = cdf().getVariable(varName);
+            Extractor.RangeForElementFunction function =
+                Extractor.getRangeForElementFunction(var);
+            if ((function == null) || coreNeeded(var, new int[]{first, last})) {
+                return (double[])cdf().getRange(varName, first, last,
                 component);
             }
-            return (double[])method.invoke(null,
-                new Object[] {thisCDF, var, new Integer(first),
-                new Integer(last), new Integer(component)});
+            return (double[])function.get(cdf(), var, first, last,
+                component);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -431,18 +443,21 @@ public class GenericReader extends MetaData {
         checkType(varName);
         if (getEffectiveRank(varName) != 1) throw new
             CDFException.ReaderError(varName + " is not a vector.");
+        MappedMemory.enter();
         try {
-            Variable var = thisCDF.getVariable(varName);
-            Method method = Extractor.getMethod(var, "RangeForElements");
-            if ((method == null) || coreNeeded(var)) {
-                return (double[][])thisCDF.get(varName, first, last,
+            Variable var = cdf().getVariable(varName);
+            Extractor.RangeForElementsFunction function =
+                Extractor.getRangeForElementsFunction(var);
+            if ((function == null) || coreNeeded(var)) {
+                return (double[][])cdf().get(varName, first, last,
                 components);
             }
-            return (double[][])method.invoke(null,
-                new Object[] {thisCDF, var, new Integer(first),
-                new Integer(last), components});
+            return (double[][])function.get(cdf(), var, first, last,
+                components);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
+        } finally {
+            MappedMemory.exit();
         }
     }
 
@@ -583,6 +598,31 @@ public class GenericReader extends MetaData {
         }
     }
 
+    /**
+     * Returns read only views of the data for the given range of records
+     * without copying, if the variable is not compressed, and is stored
+     * with the specified type and native byte order.
+     * There is one view per data block overlapping the range, each with
+     * its own first and last record.
+     * @param    varName   variable name
+     * @param    targetType  desired type of data
+     * @param    recordRange a range of record numbers; all records if null
+     * @return  the views, or null if the data is not stored as targetType
+     * @throws   CDFException.ReaderError  if ther is a problem
+     */
+    public final VariableDataBuffer[] getViews(String varName,
+        String targetType, int[] recordRange) throws CDFException.ReaderError {
+        Variable var = cdf().getVariable(varName);
+        if (var == null) throw new CDFException.ReaderError(
+            "No such variable " + varName);
+        try {
+            return var.getViews(getContainerClass(targetType),
+                ByteOrder.nativeOrder(), recordRange);
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError(th.getMessage());
+        }
+    }
+
     /**
      * Returns specified data as ByteBuffer of specified type.
      * Order of the ByteBuffer is 'native'. Data is organized according to
@@ -703,7 +743,7 @@ public class GenericReader extends MetaData {
     }
 
     void checkType(String varName) throws CDFException.ReaderError {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new CDFException.ReaderError(
             "No such variable " + varName);
         int type = var.getType();
@@ -715,13 +755,13 @@ public class GenericReader extends MetaData {
         }
     }
 
-    public final boolean sourceIsFile() {return thisCDF.getSource().isFile();}
+    public final boolean sourceIsFile() {return cdf().getSource().isFile();}
 
     /**
      * Returns the name of the source CDF
      * @return the name of the CDF
      */
-    public final String getSource() {return thisCDF.getSource().getName();}
+    public final String getSource() {return cdf().getSource().getName();}
 
     /**
      * Returns whether a variable is scalar.
@@ -772,24 +812,24 @@ public class GenericReader extends MetaData {
         Class cl = (Class)classMap.get(type);
         if (cl == null) throw new Throwable("Invalid type " + type);
         BaseVarContainer container = null;
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (type == "float") {
-            container = new FloatVarContainer(thisCDF, var, range, preserve);
+            container = new FloatVarContainer(cdf(), var, range, preserve);
         }
         if (type == "double") {
-            container = new DoubleVarContainer(thisCDF, var, range, preserve);
+            container = new DoubleVarContainer(cdf(), var, range, preserve);
         }
         if (type == "int") {
-            container = new IntVarContainer(thisCDF, var, range, preserve);
+            container = new IntVarContainer(cdf(), var, range, preserve);
         }
         if (type == "short") {
-            container = new ShortVarContainer(thisCDF, var, range, preserve);
+            container = new ShortVarContainer(cdf(), var, range, preserve);
         }
         if (type == "byte") {
-            container = new ByteVarContainer(thisCDF, var, range);
+            container = new ByteVarContainer(cdf(), var, range);
         }
         if (type == "long") {
-            container = new LongVarContainer(thisCDF, var, range);
+            container = new LongVarContainer(cdf(), var, range);
         }
 /*
         String pkg = getClass().getPackage().getName();
@@ -799,15 +839,15 @@ public class GenericReader extends MetaData {
         Constructor ccons;
         if (type == "byte") {
             ccons = cclass.getConstructor(
-               new Class[]{thisCDF.getClass(), Class.forName(pkg + ".Variable"),
+               new Class[]{cdf().getClass(), Class.forName(pkg + ".Variable"),
                range.getClass()});
         } else {
             ccons = cclass.getConstructor(
-               new Class[]{thisCDF.getClass(), Class.forName(pkg + ".Variable"),
+               new Class[]{cdf().getClass(), Class.forName(pkg + ".Variable"),
                range.getClass(), Boolean.TYPE});
         }
         container = (BaseVarContainer)
-            ccons.newInstance(thisCDF, thisCDF.getVariable(varName), range,
+            ccons.newInstance(cdf(), cdf().getVariable(varName), range,
             preserve);
 */
         container.run();
@@ -897,7 +937,7 @@ public class GenericReader extends MetaData {
 
     VDataContainer getContainer(String varName, Class type,
         int[] recordRange, boolean preserve, ByteOrder bo) throws Throwable {
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         if (var == null) throw new Throwable("No such variable " + varName);
         if (type == Double.TYPE) {
             return var.getDoubleContainer(recordRange, preserve, bo);
@@ -949,4 +989,64 @@ public class GenericReader extends MetaData {
         container.run();
         return container.getBuffer();
     }
+
+    /**
+     * Loads the data of a range of records of a variable into memory, so
+     * that subsequent reads of the range do not wait for the disk or the
+     * network.
+     * @param varName variable name
+     * @param range first and last record of the range, or null for all
+     * records
+     * @throws CDFException.ReaderError if the variable does not exist, or
+     * its data cannot be read
+     */
+    public final void warm(String varName, int[] range) throws
+        CDFException.ReaderError {
+        Variable var = cdf().getVariable(varName);
+        if (var == null) throw new CDFException.ReaderError(
+            "No such variable " + varName);
+        if (range == null) range = var.getRecordRange();
+        if (range == null) return;
+        try {
+            cdf().warm(varName, range[0], range[range.length - 1]);
+        } catch (Throwable th) {
+            throw new CDFException.ReaderError(th.getMessage());
+        }
+    }
+
+    /**
+     * Releases the CDF, after waiting for container threads started by
+     * this reader to finish. Once no other reader of the same file is
+     * open, its read ahead is cancelled and its channel and memory
+     * mapping are released; a CDF kept for sharing between readers (see
+     * CDFFactory.setReaderCacheSize) is released when it leaves the
+     * cache instead. Neither this reader, nor buffers obtained from it,
+     * may be used afterwards; methods of the reader then throw an
+     * IllegalStateException. Closing a closed reader has no effect.
+     */
+    public void close() {
+        CDFImpl cdf;
+        synchronized (this) {
+            cdf = thisCDF;
+            if (cdf == null) return;
+            thisCDF = null;
+        }
+        boolean interrupted = false;
+        Enumeration<?> e = threadMap.elements();
+        while (e.hasMoreElements()) {
+            Thread thread = ((ThreadMapEntry)e.nextElement()).getThread();
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        threadMap.clear();
+        tgroup = null;
+        CDFFactory.release(cdf);
+        if (interrupted) Thread.currentThread().interrupt();
+    }
 }
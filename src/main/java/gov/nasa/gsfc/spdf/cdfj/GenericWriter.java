@@ -2,6 +2,7 @@ package gov.nasa.gsfc.spdf.cdfj;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.*;
 import java.security.MessageDigest;
 import java.lang.reflect.*;
@@ -419,9 +420,68 @@ public class GenericWriter {
         defineVariable(name, dataType, dim, varys, true, true, null, size);
     }
 
+    /**
+     * Sets the compression used for the values of a compressed variable.
+     * GZIP compression is used by default.
+     * @param name variable name
+     * @param  type   compression type, one of the types defined in
+     * {@link CompressionCodec CompressionCodec}
+     * @throws CDFException.WriterError if the variable does not exist, is
+     * not compressed, or if no codec is available for the type
+     */
+    public void setCompression(String name, int type) throws
+        CDFException.WriterError {
+        DataContainer dc = dataContainers.get(name);
+        if (dc == null) throw new CDFException.WriterError("Variable " +
+            name + " is not defined.");
+        if (!dc.getVDR().isCompressed()) throw new CDFException.WriterError(
+            "Variable " + name + " is not compressed.");
+        CompressionCodec codec = CompressionCodecs.get(type);
+        if (codec == null) throw new CDFException.WriterError(
+            "Unsupported compression type " + type);
+        dc.setCodec(codec);
+    }
+
     LinkedHashMap<String, DataContainer> dataContainers =
         new LinkedHashMap<String, DataContainer>();
 
+    /**
+     * Default upper limit of the size of a block of variable data.
+     */
+    public static final int DEFAULT_BLOCK_SIZE =
+        DataContainer.DEFAULT_BLOCK_SIZE;
+    int blockSize = DEFAULT_BLOCK_SIZE;
+    /**
+     * Sets the upper limit of the size of the blocks in which data of a
+     * variable is stored. Data added a few records at a time is joined
+     * into blocks of up to this size, as long as the records are
+     * consecutive; data added in larger pieces is stored as added.
+     * Larger blocks make for a shorter index, fewer reads, and better
+     * compression.
+     * @param size block size in bytes
+     */
+    public void setBlockSize(int size) {
+        blockSize = size;
+        Iterator<DataContainer> it = dataContainers.values().iterator();
+        while (it.hasNext()) it.next().blockSize = size;
+    }
+
+    int vxrEntries = DataContainer.DEFAULT_VXR_ENTRIES;
+    /**
+     * Sets the maximum number of entries of a VXR, the records that index
+     * the blocks of a variable. Blocks of a variable that do not fit in
+     * a single VXR are indexed by a tree of VXRs of this fan-out.
+     * @param n maximum number of entries, at least 2
+     * @throws CDFException.WriterError if n is less than 2
+     */
+    public void setVXREntries(int n) throws CDFException.WriterError {
+        if (n < 2) throw new CDFException.WriterError(
+            "A VXR must hold at least 2 entries.");
+        vxrEntries = n;
+        Iterator<DataContainer> it = dataContainers.values().iterator();
+        while (it.hasNext()) it.next().vxrEntries = n;
+    }
+
     /**
      * Adds an NRV record of string type.
      * @param name variable name
@@ -667,10 +727,20 @@ public class GenericWriter {
         }
         vdr.setNum(variableDescriptors.size());
         variableDescriptors.put(name, vdr);
-        DataContainer dc = new DataContainer(vdr, rowMajority);
+        DataContainer dc = createContainer(vdr);
         dataContainers.put(name, dc);
     }
 
+    /**
+     * returns the container for the data of a newly defined variable.
+     */
+    DataContainer createContainer(VDR vdr) {
+        DataContainer dc = new DataContainer(vdr, rowMajority);
+        dc.vxrEntries = vxrEntries;
+        dc.blockSize = blockSize;
+        return dc;
+    }
+
     HashMap<String, VDR> getVariableDescriptors() {
         return variableDescriptors;
     }
@@ -943,7 +1013,7 @@ public class GenericWriter {
      */
     public void setMD5Needed(boolean need) {needDigest = need;}
 
-    long getSize() {
+    long getSize() throws IOException {
         long size = cdr.getSize();
         size += gdr.getSize();
         Set<String> atset = attributes.keySet();
@@ -962,6 +1032,12 @@ public class GenericWriter {
         }
         Set<String> dcset = dataContainers.keySet();
         Iterator<String> dcit = dcset.iterator();
+        Vector<Callable<Object>> tasks = new Vector<Callable<Object>>();
+        while (dcit.hasNext()) {
+            tasks.addAll(dataContainers.get(dcit.next()).prepare());
+        }
+        run(tasks);
+        dcit = dcset.iterator();
         boolean first = true;
         DataContainer lastContainer = null;
         while (dcit.hasNext()) {
@@ -974,11 +1050,53 @@ public class GenericWriter {
                 lastContainer.getVDR().setVDRNext(dc.position);
             }
             lastContainer = dc;
-            size += dc.getSize();
+            size += dc.layout();
         }
         return size;
     }
 
+    ExecutorService executor;
+    /**
+     * Sets the executor on which the CDF is prepared and written. Blocks
+     * of compressed variables are compressed concurrently, before the
+     * layout of the file is computed, and the regions of the file that
+     * hold the descriptors and data of each variable, which are disjoint,
+     * are then written concurrently. By default, all the work is done on
+     * the thread that writes the CDF.
+     * @param executor executor to use, for example
+     * ForkJoinPool.commonPool(), or null to do all the work on the thread
+     * that writes the CDF
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * runs the tasks on the executor, if any.
+     */
+    void run(Vector<Callable<Object>> tasks) throws IOException {
+        try {
+            if ((executor == null) || (tasks.size() < 2)) {
+                for (int i = 0; i < tasks.size(); i++) tasks.get(i).call();
+                return;
+            }
+            for (Future<Object> f: executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (IOException ex) {
+            throw ex;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            throw new IOException("Write failed: " + cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Write interrupted");
+        } catch (Exception ex) {
+            throw new IOException("Write failed: " + ex);
+        }
+    }
+
     /**
      * Writes CDF to a file.
      * @param fname the output CDF file name
@@ -1007,14 +1125,15 @@ public class GenericWriter {
         if (lastLeapSecondId != -1) {
             gdr.setLastLeapSecondId(lastLeapSecondId); 
         }
-        long len = getSize();
-        if (needDigest) len += 32;
+        long eof = getSize();
+        // the MD5 digest takes the last 16 bytes, beyond the GDR eof
+        long len = needDigest?(eof + 16):eof;
         RandomAccessFile raf = null;
         FileChannel channel = null;
         if (len > Integer.MAX_VALUE) {
             raf = new RandomAccessFile(new File(fname), "rw");
             channel = raf.getChannel();
-            write(channel, len);
+            write(channel, eof);
             raf.close();
             return true;
         }
@@ -1086,24 +1205,37 @@ public class GenericWriter {
                 obuf.put(ae.get());
             }
         }
+        // regions of the containers are disjoint, and written to views
         Set<String> dcset = dataContainers.keySet();
         Iterator<String> dcit = dcset.iterator();
-        ByteBuffer cbuf = obuf;
+        Vector<Callable<Object>> tasks = new Vector<Callable<Object>>();
         while (dcit.hasNext()) {
-            DataContainer dc = dataContainers.get(dcit.next());
-            cbuf = dc.update(cbuf);
+            final DataContainer dc = dataContainers.get(dcit.next());
+            final ByteBuffer view = obuf.duplicate();
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    dc.update(view);
+                    return null;
+                }
+            });
         }
+        run(tasks);
         obuf.position((int)gdr.position);
-        gdr.setEof(obuf.limit());
+        gdr.setEof(eof);
         gdr.setNumAttr(attributes.size());
         gdr.setNzVars(dataContainers.size());
         obuf.put(gdr.get());
-        ByteBuffer digest = null;
         if (needDigest) {
-            obuf.position(0);
-            digest = getDigest(obuf);
+            // the digest follows, and covers, the rest of the file
+            ByteBuffer contents = obuf.duplicate();
+            contents.position(0);
+            contents.limit((int)eof);
+            ByteBuffer digest = getDigest(contents);
+            if (digest != null) {
+                obuf.position((int)eof);
+                obuf.put(digest);
+            }
         }
-        if (digest != null) cbuf.put(digest);
         if (isWindows()) {
             writeWin(fname, obuf);
         } else {
@@ -1113,6 +1245,8 @@ public class GenericWriter {
                 obuf.position(0);
                 channel.write(obuf);
             }
+            // drop the tail of a longer file written over
+            if (channel.size() > len) channel.truncate(len);
             channel.force(true);
             raf.close();
         }
@@ -1184,13 +1318,48 @@ public class GenericWriter {
     public void setLastLeapSecondId(int n) {
         lastLeapSecondId = n;
     }
-    void write(FileChannel channel, long len) throws IOException {
+    /**
+     * writes the CDF, of size eof, to channel, followed by its digest if
+     * one is needed.
+     */
+    void write(FileChannel channel, long eof) throws IOException {
         cdr.setRowMajority(rowMajority);
         cdr.setMD5Needed(needDigest);
         channel.write(cdr.get());
         // need gdrbuf for insertion of pointers later
         gdr.position = channel.position();
         channel.position(gdr.position + gdr.getSize());
+        writeAttributes(channel);
+        final FileChannel ch = channel;
+        Set<String> dcset = dataContainers.keySet();
+        Iterator<String> dcit = dcset.iterator();
+        Vector<Callable<Object>> tasks = new Vector<Callable<Object>>();
+        while (dcit.hasNext()) {
+            final DataContainer dc = dataContainers.get(dcit.next());
+            tasks.add(new Callable<Object>() {
+                public Object call() throws IOException {
+                    dc.update(ch);
+                    return null;
+                }
+            });
+        }
+        run(tasks);
+        // an existing file may be longer
+        if (channel.size() > eof) channel.truncate(eof);
+        channel.position(gdr.position);
+        gdr.setEof(eof);
+        gdr.setNumAttr(attributes.size());
+        gdr.setNzVars(dataContainers.size());
+        channel.write(gdr.get());
+        if (needDigest) {
+            getDigest(channel);
+        }
+    }
+    /**
+     * lays out the attributes starting at the current position of
+     * channel, and writes them.
+     */
+    void writeAttributes(FileChannel channel) throws IOException {
         // assemble attributes
         Set<String> atset = attributes.keySet();
         Iterator<String> ait = atset.iterator();
@@ -1240,22 +1409,10 @@ public class GenericWriter {
                 channel.write(ae.get());
             }
         }
-        Set<String> dcset = dataContainers.keySet();
-        Iterator<String> dcit = dcset.iterator();
-        while (dcit.hasNext()) {
-            DataContainer dc = dataContainers.get(dcit.next());
-            dc.update(channel);
-        }
-        channel.position(gdr.position);
-        gdr.setEof(channel.size());
-        gdr.setNumAttr(attributes.size());
-        gdr.setNzVars(dataContainers.size());
-        channel.write(gdr.get());
-        channel.position(channel.size());
-        if (needDigest) {
-            getDigest(channel);
-        }
     }
+    /**
+     * appends the MD5 digest of the contents of channel.
+     */
     void getDigest(FileChannel channel) throws IOException {
         MessageDigest md = null;
         try {
@@ -1279,10 +1436,8 @@ public class GenericWriter {
             md.update(ba, 0, trans);
             remaining -= trans;
         }
-        //System.out.println(channel.position());
-        //channel.position(channel.size());
-        channel.write(ByteBuffer.wrap(md.digest()));
-        //System.out.println(channel.size());
+        DataContainer.writeFully(channel, ByteBuffer.wrap(md.digest()),
+            channel.size());
     }
     void writeWin(String fname, ByteBuffer buf) throws IOException {
         FileOutputStream fos = new FileOutputStream(fname);
@@ -0,0 +1,117 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+/**
+ * HttpBuffer reads a remote CDF file with HTTP range requests, so that
+ * only the descriptor records and the blocks of data actually used are
+ * transferred. Pages and blocks are kept in the page cache, as for
+ * PagedBuffer; blocks that are prefetched together are fetched with a
+ * single request.
+ * Range requests carry the ETag, or the Last-Modified date, of the file
+ * when it was opened as If-Range, so that parts of a file that has since
+ * changed are not mixed with those already read; reading then fails.
+ */
+final class HttpBuffer extends PagedBuffer {
+    final URL url;
+    final String validator;
+
+    HttpBuffer(URL url, long size, int version, String validator) {
+        super(size, version, DEFAULT_PAGE_SIZE);
+        this.url = url;
+        this.validator = validator;
+    }
+
+    /**
+     * returns size of the resource at url, or -1 if this is not known,
+     * or if url is not an http URL. validator[0] is set to its strong
+     * ETag, or else its Last-Modified date, or null if it has neither.
+     */
+    static long contentLength(URL url, String[] validator) throws
+        IOException {
+        validator[0] = null;
+        URLConnection con = new CDFUrl(url).openConnection();
+        if (!(con instanceof HttpURLConnection)) return -1;
+        HttpURLConnection hcon = (HttpURLConnection)con;
+        try {
+            hcon.setRequestMethod("HEAD");
+            if (hcon.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return -1;
+            }
+            String etag = hcon.getHeaderField("ETag");
+            if ((etag != null) && !etag.startsWith("W/")) {
+                validator[0] = etag;
+            } else {
+                validator[0] = hcon.getHeaderField("Last-Modified");
+            }
+            return hcon.getContentLengthLong();
+        } finally {
+            hcon.disconnect();
+        }
+    }
+
+    /**
+     * returns len bytes starting at offset of the resource at url, of
+     * the given size, or null if the server does not honour range
+     * requests, or the resource no longer matches validator.
+     * @throws IOException if the range returned is not the one asked for
+     */
+    static ByteBuffer getRange(URL url, long offset, int len, long size,
+        String validator) throws IOException {
+        HttpURLConnection con =
+            (HttpURLConnection)new CDFUrl(url).openConnection();
+        try {
+            long last = offset + len - 1;
+            con.setRequestProperty("Range", "bytes=" + offset + "-" + last);
+            if (validator != null) {
+                con.setRequestProperty("If-Range", validator);
+            }
+            if (con.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return null;
+            }
+            String range = con.getHeaderField("Content-Range");
+            String expected = "bytes " + offset + "-" + last + "/";
+            if ((range == null) || !(range.equals(expected + size) ||
+                range.equals(expected + "*"))) {
+                throw new IOException("Content-Range " + range +
+                " does not match the range requested, " + expected + size);
+            }
+            byte[] ba = new byte[len];
+            InputStream is = con.getInputStream();
+            try {
+                int got = 0;
+                while (got < len) {
+                    int n = is.read(ba, got, len - got);
+                    if (n < 0) throw new EOFException();
+                    got += n;
+                }
+            } finally {
+                is.close();
+            }
+            return ByteBuffer.wrap(ba);
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    boolean isRemote() {return true;}
+
+    /**
+     * reads len bytes starting at offset with a range request.
+     */
+    ByteBuffer read(long offset, int len) {
+        ByteBuffer bb;
+        try {
+            bb = getRange(url, offset, len, size, validator);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read " + len +
+            " bytes at " + offset + " of " + url + ": " + ex);
+        }
+        if (bb == null) {
+            throw new RuntimeException("Range request for " + len +
+            " bytes at " + offset + " of " + url + " was not honoured, " +
+            "or the file has changed");
+        }
+        return bb;
+    }
+}
@@ -0,0 +1,236 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+/**
+ * Static Huffman coding (CPR cType 2, parameter 0).
+ * The compressed stream starts with the byte frequencies, scaled to fit
+ * in a byte, written as runs: first symbol, last symbol, and the counts
+ * for the symbols in the run, the list terminated by a zero. The counts
+ * are followed by the codes, most significant bit first, and the code
+ * of the end of stream symbol.
+ */
+final class HuffmanCodec implements CompressionCodec {
+    static final int END_OF_STREAM = 256;
+    static final int NODES = 514;
+
+    public int getType() {return HUFF;}
+
+    public int getParameter() {return 0;}
+
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        BitInput in = new BitInput(ba, off[0], off[0] + len);
+        int[] count = new int[NODES];
+        int[] child0 = new int[NODES];
+        int[] child1 = new int[NODES];
+        int first = in.getByte();
+        int last = in.getByte();
+        for (;;) {
+            for (int i = first; i <= last; i++) count[i] = in.getByte();
+            first = in.getByte();
+            if (first == 0) break;
+            last = in.getByte();
+        }
+        count[END_OF_STREAM] = 1;
+        int root = buildTree(count, child0, child1);
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            int node = root;
+            while (node > END_OF_STREAM) {
+                node = (in.getBit() != 0)?child1[node]:child0[node];
+            }
+            if (node == END_OF_STREAM) break;
+            dst.put((byte)node);
+        }
+        src.position(src.position() + (in.index - off[0]));
+        return dst.position() - start;
+    }
+
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        long[] freq = new long[256];
+        for (int i = 0; i < len; i++) freq[ba[off[0] + i] & 0xff]++;
+        int[] count = new int[NODES];
+        long max = 0;
+        for (int i = 0; i < 256; i++) if (freq[i] > max) max = freq[i];
+        if (max == 0) {
+            freq[0] = 1;
+            max = 1;
+        }
+        max = max/255 + 1;
+        for (int i = 0; i < 256; i++) {
+            count[i] = (int)(freq[i]/max);
+            if ((count[i] == 0) && (freq[i] != 0)) count[i] = 1;
+        }
+        count[END_OF_STREAM] = 1;
+        BitOutput out = new BitOutput(len/2 + 512);
+        writeCounts(out, count);
+        int[] child0 = new int[NODES];
+        int[] child1 = new int[NODES];
+        int root = buildTree(count, child0, child1);
+        int[] code = new int[END_OF_STREAM + 1];
+        int[] bits = new int[END_OF_STREAM + 1];
+        assignCodes(child0, child1, code, bits, 0, 0, root);
+        for (int i = 0; i < len; i++) {
+            int c = ba[off[0] + i] & 0xff;
+            out.putBits(code[c], bits[c]);
+        }
+        out.putBits(code[END_OF_STREAM], bits[END_OF_STREAM]);
+        src.position(src.limit());
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    static void writeCounts(BitOutput out, int[] count) {
+        int first = 0;
+        while ((first < 255) && (count[first] == 0)) first++;
+        int next;
+        for (; first < 256; first = next) {
+            int last = first + 1;
+            for (;;) {
+                for (; last < 256; last++) if (count[last] == 0) break;
+                last--;
+                for (next = last + 1; next < 256; next++) {
+                    if (count[next] != 0) break;
+                }
+                if (next > 255) break;
+                if ((next - last) > 3) break;
+                last = next;
+            }
+            out.putByte(first);
+            out.putByte(last);
+            for (int i = first; i <= last; i++) out.putByte(count[i]);
+        }
+        out.putByte(0);
+    }
+
+    /**
+     * builds the tree by repeatedly joining the two lightest nodes.
+     * count is consumed; returns the index of the root.
+     */
+    static int buildTree(int[] count, int[] child0, int[] child1) {
+        int sentinel = NODES - 1;
+        count[sentinel] = 0xffff;
+        int next = END_OF_STREAM + 1;
+        for (;; next++) {
+            int min1 = sentinel;
+            int min2 = sentinel;
+            for (int i = 0; i < next; i++) {
+                if (count[i] == 0) continue;
+                if (count[i] < count[min1]) {
+                    min2 = min1;
+                    min1 = i;
+                } else if (count[i] < count[min2]) {
+                    min2 = i;
+                }
+            }
+            if (min2 == sentinel) break;
+            count[next] = count[min1] + count[min2];
+            count[min1] = 0;
+            count[min2] = 0;
+            child0[next] = min1;
+            child1[next] = min2;
+        }
+        return next - 1;
+    }
+
+    static void assignCodes(int[] child0, int[] child1, int[] code,
+        int[] bits, int soFar, int nbits, int node) {
+        if (node <= END_OF_STREAM) {
+            code[node] = soFar;
+            bits[node] = nbits;
+            return;
+        }
+        soFar <<= 1;
+        nbits++;
+        assignCodes(child0, child1, code, bits, soFar, nbits, child0[node]);
+        assignCodes(child0, child1, code, bits, soFar | 1, nbits,
+            child1[node]);
+    }
+
+    /**
+     * reads bits most significant first.
+     */
+    static final class BitInput {
+        final byte[] ba;
+        final int end;
+        int index;
+        int rack;
+        int mask = 0x80;
+        BitInput(byte[] ba, int start, int end) {
+            this.ba = ba;
+            this.end = end;
+            index = start;
+        }
+
+        int getBit() throws IOException {
+            if (mask == 0x80) {
+                if (index == end) {
+                    throw new IOException("Unexpected end of compressed data");
+                }
+                rack = ba[index++] & 0xff;
+            }
+            int value = rack & mask;
+            mask >>= 1;
+            if (mask == 0) mask = 0x80;
+            return value;
+        }
+
+        int getBits(int count) throws IOException {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                value <<= 1;
+                if (getBit() != 0) value |= 1;
+            }
+            return value;
+        }
+
+        int getByte() throws IOException {
+            return getBits(8);
+        }
+    }
+
+    /**
+     * writes bits most significant first.
+     */
+    static final class BitOutput {
+        final ByteArrayOutputStream baos;
+        int rack;
+        int mask = 0x80;
+        BitOutput(int size) {
+            baos = new ByteArrayOutputStream(size);
+        }
+
+        void putBit(boolean bit) {
+            if (bit) rack |= mask;
+            mask >>= 1;
+            if (mask == 0) {
+                baos.write(rack);
+                rack = 0;
+                mask = 0x80;
+            }
+        }
+
+        void putBits(int code, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                putBit(((code >>> i) & 1) != 0);
+            }
+        }
+
+        void putByte(int b) {
+            putBits(b, 8);
+        }
+
+        byte[] toByteArray() {
+            if (mask != 0x80) {
+                baos.write(rack);
+                rack = 0;
+                mask = 0x80;
+            }
+            return baos.toByteArray();
+        }
+    }
+}
@@ -70,35 +70,14 @@ public final class LongVarContainer extends BaseVarContainer implements
         long[] data = (long[])_data;
         int position = _buf.position();
         LongBuffer lbuf = _buf.asLongBuffer();
-        Method method;
         int processed = 0;
         switch (DataTypes.typeCategory[type]) {
         case 2:
-            method = DataTypes.method[type];
-            while (processed < toprocess) {
-                int _num = (toprocess - processed)*elements;
-                if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    data[e] = num.longValue();
-                }
-                lbuf.put(data, 0, _num);
-                position += 8*_num;
-                processed += (_num/elements);
-            }
-            _buf.position(position);
-            break;
         case 3:
-            method = DataTypes.method[type];
-            long longInt = DataTypes.longInt[type];
             while (processed < toprocess) {
                 int _num = (toprocess - processed)*elements;
                 if (_num > data.length) _num = data.length;
-                for (int e = 0; e < _num; e++) {
-                    Number num = (Number)method.invoke(bv, new Object[] {});
-                    int x = num.intValue();
-                    data[e] = (x >= 0)?(long)x:(long)(longInt + x);
-                }
+                DataConverter.toLong(bv, type, data, _num);
                 lbuf.put(data, 0, _num);
                 position += 8*_num;
                 processed += (_num/elements);
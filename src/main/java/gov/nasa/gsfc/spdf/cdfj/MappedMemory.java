@@ -0,0 +1,335 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.lang.ref.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+/**
+ * MappedMemory keeps the total size of memory mapped CDF regions within
+ * a budget. A region is either a whole mapped file, or a window of a
+ * SegmentedBuffer. Regions are mapped on first use; when the budget is
+ * exceeded, the least recently used regions that are not pinned are
+ * unmapped, and mapped again when next used.
+ * Unmapping releases the memory at once, rather than when the buffer is
+ * garbage collected, but only once no buffer obtained from the mapping
+ * can be in use. The library reads mapped buffers between enter() and
+ * exit(); a mapping obtained only that way is unmapped when every thread
+ * that was reading at the time it was dropped has exited. A mapping
+ * handed out otherwise, such as to Variable.getViews(), is left to the
+ * garbage collector. Pin the CDF to keep it mapped while such buffers
+ * are in use.
+ * Regions are held weakly, so that the mapping of a CDF that is no longer
+ * referenced is released by the garbage collector, as before.
+ */
+final class MappedMemory {
+    static long budget = Long.MAX_VALUE;
+    static long used;
+    static long clock;
+    static final Vector<Entry> regions = new Vector<Entry>();
+    static final ReferenceQueue<Region> queue = new ReferenceQueue<Region>();
+    static Method cleaner;
+    static Object unsafe;
+    /**
+     * Number of threads between enter() and exit(), and number of
+     * mappings dropped so far.
+     */
+    static int readers;
+    static long epoch;
+    static final Vector<Retired> retired = new Vector<Retired>();
+    /**
+     * For the current thread, depth of nested enter() calls, and the
+     * epoch at the outermost one.
+     */
+    static final ThreadLocal<long[]> reader = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {return new long[2];}
+    };
+
+    private MappedMemory() {
+    }
+
+    /**
+     * sets the budget, unmapping regions as needed.
+     */
+    static void setBudget(long value) {
+        budget = value;
+        trim(null);
+    }
+
+    /**
+     * returns total size of the mapped regions.
+     */
+    static synchronized long getUsed() {
+        expunge();
+        return used;
+    }
+
+    static synchronized int getRegionCount() {
+        expunge();
+        return regions.size();
+    }
+
+    static synchronized void add(Region region, long size) {
+        expunge();
+        region.entry = new Entry(region, size);
+        regions.add(region.entry);
+        used += size;
+    }
+
+    /**
+     * removes region from the list, returning whether it was present.
+     */
+    static synchronized boolean remove(Region region) {
+        Entry e = region.entry;
+        if ((e == null) || !regions.remove(e)) return false;
+        region.entry = null;
+        used -= e.size;
+        return true;
+    }
+
+    /**
+     * removes entries of regions that have been garbage collected.
+     */
+    static synchronized void expunge() {
+        Reference<? extends Region> ref;
+        while ((ref = queue.poll()) != null) {
+            Entry e = (Entry)ref;
+            if (regions.remove(e)) used -= e.size;
+        }
+    }
+
+    static final class Entry extends WeakReference<Region> {
+        final long size;
+        Entry(Region region, long size) {
+            super(region, queue);
+            this.size = size;
+        }
+    }
+
+    /**
+     * marks the current thread as reading mapped buffers, until the
+     * matching call to exit(). Calls may be nested.
+     */
+    static void enter() {
+        long[] state = reader.get();
+        if (state[0]++ > 0) return;
+        synchronized (MappedMemory.class) {
+            state[1] = epoch;
+            readers++;
+        }
+    }
+
+    /**
+     * ends a call to enter(), unmapping mappings that were waiting only
+     * for this thread.
+     */
+    static void exit() {
+        long[] state = reader.get();
+        if ((state[0] == 0) || (--state[0] > 0)) return;
+        Vector<ByteBuffer> free = new Vector<ByteBuffer>();
+        synchronized (MappedMemory.class) {
+            readers--;
+            for (int i = retired.size() - 1; i >= 0; i--) {
+                Retired r = retired.get(i);
+                if (r.epoch <= state[1]) continue;
+                if (--r.waiting == 0) {
+                    free.add(r.buffer);
+                    retired.remove(i);
+                }
+            }
+        }
+        for (int i = 0; i < free.size(); i++) unmap(free.get(i));
+    }
+
+    /**
+     * returns whether the current thread is between enter() and exit().
+     */
+    static boolean reading() {return reader.get()[0] > 0;}
+
+    /**
+     * unmaps b, a mapping that can no longer be obtained from its region,
+     * once the threads now reading have exited.
+     */
+    static void retire(ByteBuffer b) {
+        synchronized (MappedMemory.class) {
+            if (readers > 0) {
+                retired.add(new Retired(b, ++epoch, readers));
+                return;
+            }
+        }
+        unmap(b);
+    }
+
+    static synchronized int getRetiredCount() {return retired.size();}
+
+    static final class Retired {
+        final ByteBuffer buffer;
+        final long epoch;
+        int waiting;
+        Retired(ByteBuffer buffer, long epoch, int waiting) {
+            this.buffer = buffer;
+            this.epoch = epoch;
+            this.waiting = waiting;
+        }
+    }
+
+    /**
+     * unmaps least recently used regions other than keep, until the
+     * total size is within the budget.
+     */
+    static void trim(Region keep) {
+        while (true) {
+            Region lru = null;
+            synchronized (MappedMemory.class) {
+                expunge();
+                if (used <= budget) return;
+                for (int i = 0; i < regions.size(); i++) {
+                    Region r = regions.get(i).get();
+                    if ((r == null) || (r == keep) || (r.pins > 0)) continue;
+                    if ((lru == null) || (r.lastUse < lru.lastUse)) lru = r;
+                }
+                if (lru == null) return;
+                remove(lru);
+            }
+            lru.drop();
+        }
+    }
+
+    /**
+     * A mapped region, mapped on demand.
+     */
+    abstract static class Region {
+        volatile ByteBuffer buffer;
+        volatile long lastUse;
+        long size;
+        int pins;
+        Entry entry;
+        /**
+         * Set when the mapping has been handed out outside enter() and
+         * exit(), so that it may be in use at any time.
+         */
+        boolean shared;
+
+        /**
+         * maps the region.
+         */
+        abstract ByteBuffer map() throws IOException;
+
+        /**
+         * returns the mapping, mapping the region if needed.
+         */
+        final ByteBuffer get() {
+            lastUse = ++clock;
+            boolean reading = reading();
+            ByteBuffer b = buffer;
+            if ((b != null) && reading) return b;
+            synchronized (this) {
+                if (buffer == null) {
+                    try {
+                        buffer = map();
+                    } catch (IOException ex) {
+                        throw new RuntimeException("Failed to map: " +
+                        ex.getMessage());
+                    }
+                    shared = false;
+                    size = buffer.capacity();
+                    add(this, size);
+                }
+                b = buffer;
+                if (!reading) shared = true;
+            }
+            trim(this);
+            return b;
+        }
+
+        /**
+         * registers a mapping created elsewhere.
+         */
+        final void set(ByteBuffer b) {
+            synchronized (this) {
+                buffer = b;
+                shared = true;
+                size = b.capacity();
+                add(this, size);
+            }
+            lastUse = ++clock;
+            trim(this);
+        }
+
+        synchronized void pin() {pins++;}
+
+        synchronized void unpin() {if (pins > 0) pins--;}
+
+        /**
+         * unmaps the region. It is mapped again if used.
+         */
+        final void release() {
+            if (remove(this)) drop();
+        }
+
+        synchronized void drop() {
+            ByteBuffer b = buffer;
+            buffer = null;
+            if (b == null) return;
+            if (shared) {
+                shared = false;
+                return;
+            }
+            retire(b);
+        }
+    }
+
+    /**
+     * A whole file, mapped read only.
+     */
+    static final class FileRegion extends Region {
+        final File file;
+        FileRegion(File file) {
+            this.file = file;
+        }
+
+        ByteBuffer map() throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel ch = raf.getChannel();
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * unmaps a buffer returned by FileChannel.map. Does nothing if this
+     * is not supported by the JVM.
+     */
+    static void unmap(ByteBuffer b) {
+        if (!b.isDirect()) return;
+        try {
+            synchronized (MappedMemory.class) {
+                if (cleaner == null) {
+                    Class<?> cl = Class.forName("sun.misc.Unsafe");
+                    try {
+                        cleaner = cl.getMethod("invokeCleaner",
+                            ByteBuffer.class);
+                        Field f = cl.getDeclaredField("theUnsafe");
+                        f.setAccessible(true);
+                        unsafe = f.get(null);
+                    } catch (NoSuchMethodException ex) {
+                        // java 8
+                        cleaner = b.getClass().getMethod("cleaner");
+                        cleaner.setAccessible(true);
+                    }
+                }
+            }
+            if (unsafe != null) {
+                cleaner.invoke(unsafe, b);
+            } else {
+                Object c = cleaner.invoke(b);
+                if (c != null) c.getClass().getMethod("clean").invoke(c);
+            }
+        } catch (Throwable th) {
+            // leave it to the garbage collector
+        }
+    }
+}
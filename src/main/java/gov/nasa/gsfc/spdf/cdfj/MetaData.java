@@ -9,13 +9,24 @@ import java.nio.*;
  */
 public abstract class MetaData {
     CDFImpl thisCDF;
+
+    /**
+     * returns the CDF, failing with an IllegalStateException if the
+     * reader has been closed.
+     */
+    final CDFImpl cdf() {
+        CDFImpl cdf = thisCDF;
+        if (cdf == null) throw new IllegalStateException("Reader is closed");
+        return cdf;
+    }
+
     /**
      * Returns ByteOrder.LITTLE_ENDIAN, or ByteOrder.BIG_ENDIAN depending
      * the CDF encoding
      * @return The byte order
      */
     public final ByteOrder getByteOrder() {
-        return thisCDF.getByteOrder();
+        return cdf().getByteOrder();
     }
 
     /**
@@ -23,7 +34,7 @@ public abstract class MetaData {
      * @return A flag indicating whether the CDF is a row major
      */
     public final boolean rowMajority() {
-        return thisCDF.rowMajority();
+        return cdf().rowMajority();
     }
 
     /**
@@ -31,7 +42,7 @@ public abstract class MetaData {
      * @return An array of strings for all variable names
      */
     public final String [] getVariableNames() {
-        return thisCDF.getVariableNames();
+        return cdf().getVariableNames();
     }
 
     /**
@@ -40,7 +51,7 @@ public abstract class MetaData {
      * @return An array of strings for all variable names with given VAR_TYPE
      */
     public final String [] getVariableNames(String type) {
-        return thisCDF.getVariableNames(type);
+        return cdf().getVariableNames(type);
     }
 
     /**
@@ -48,7 +59,7 @@ public abstract class MetaData {
      * @return An array of all global vattribute names
      */
     public final String [] globalAttributeNames() {
-        return thisCDF.globalAttributeNames();
+        return cdf().globalAttributeNames();
     }
 
     /**
@@ -57,7 +68,7 @@ public abstract class MetaData {
      * @return An array of strings for all variable attributes defined for the variable
      */
     public final String [] variableAttributeNames(String name) {
-        return thisCDF.variableAttributeNames(name);
+        return cdf().variableAttributeNames(name);
     }
 
     /**
@@ -73,7 +84,7 @@ public abstract class MetaData {
      * @return The first entry, if there are many, value of teh given global attribute
      */
     public final Object getAttribute( String atr) {
-        return thisCDF.getAttribute(atr);
+        return cdf().getAttribute(atr);
     }
 
     /**
@@ -100,7 +111,7 @@ public abstract class MetaData {
      */
     public final Object getAttribute( String varName,
         String aname) throws CDFException.ReaderError {
-        return thisCDF.getAttribute(varName, aname);
+        return cdf().getAttribute(varName, aname);
     }
 
     /**
@@ -113,7 +124,7 @@ public abstract class MetaData {
      */
     public final Vector<AttributeEntry> getAttributeEntries(
          String varName, String aname) throws CDFException.ReaderError {
-        return thisCDF.getAttributeEntries(varName, aname);
+        return cdf().getAttributeEntries(varName, aname);
     }
 
     /**
@@ -126,7 +137,7 @@ public abstract class MetaData {
     public final Vector<AttributeEntry> getAttributeEntries(
          String aname) throws CDFException.ReaderError {
         try {
-            return thisCDF.getAttributeEntries(aname);
+            return cdf().getAttributeEntries(aname);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -142,7 +153,7 @@ public abstract class MetaData {
     public final GlobalAttribute getGlobalAttribute( String atr)
         throws CDFException.ReaderError {
         try {
-            return thisCDF.getGlobalAttribute(atr);
+            return cdf().getGlobalAttribute(atr);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -158,7 +169,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).recordVariance();
+        return cdf().getVariable(varName).recordVariance();
     }
 
     /**
@@ -175,7 +186,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).isCompressed();
+        return cdf().getVariable(varName).isCompressed();
     }
 
     /**
@@ -187,7 +198,7 @@ public abstract class MetaData {
     public final int getType( String varName) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getType();
+        return cdf().getVariable(varName).getType();
     }
 
     /**
@@ -200,7 +211,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getDataItemSize();
+        return cdf().getVariable(varName).getDataItemSize();
     }
 
     /**
@@ -213,7 +224,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getNumber();
+        return cdf().getVariable(varName).getNumber();
     }
 
     /**
@@ -226,7 +237,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getNumberOfElements();
+        return cdf().getVariable(varName).getNumberOfElements();
     }
 
     /**
@@ -239,7 +250,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getNumberOfValues();
+        return cdf().getVariable(varName).getNumberOfValues();
     }
 
     /**
@@ -252,7 +263,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getPadValue();
+        return cdf().getVariable(varName).getPadValue();
     }
 
     /**
@@ -268,7 +279,7 @@ public abstract class MetaData {
         boolean preservePrecision) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         return var.getPadValue(preservePrecision);
     }
 
@@ -282,7 +293,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getDimensions();
+        return cdf().getVariable(varName).getDimensions();
     }
 
     /**
@@ -295,7 +306,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getVarys();
+        return cdf().getVariable(varName).getVarys();
     }
 
     /**
@@ -309,7 +320,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getEffectiveRank();
+        return cdf().getVariable(varName).getEffectiveRank();
     }
 
     /**
@@ -323,7 +334,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).isMissingRecords();
+        return cdf().getVariable(varName).isMissingRecords();
     }
 
     /**
@@ -336,7 +347,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getRecordRange();
+        return cdf().getVariable(varName).getRecordRange();
     }
 
     /**
@@ -353,7 +364,7 @@ public abstract class MetaData {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
         try {
-            return thisCDF.getVariable(varName).isCompatible(cl);
+            return cdf().getVariable(varName).isCompatible(cl);
         } catch (Throwable th) {
             throw new CDFException.ReaderError(th.getMessage());
         }
@@ -374,7 +385,7 @@ public abstract class MetaData {
         Class cl, boolean preserve) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         return var.isCompatible(cl, preserve);
     }
 
@@ -390,7 +401,7 @@ public abstract class MetaData {
         String varName) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         return var.missingRecordValueIsPrevious();
     }
 
@@ -406,7 +417,7 @@ public abstract class MetaData {
         String varName) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         return var.missingRecordValueIsPad();
     } 
 
@@ -420,7 +431,7 @@ public abstract class MetaData {
         String varName) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getElementCount();
+        return cdf().getVariable(varName).getElementCount();
     } 
 
     /**
@@ -434,7 +445,7 @@ public abstract class MetaData {
         String varName) throws CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         return var.getEffectiveDimensions();
     } 
 
@@ -448,7 +459,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError(
             "CDF does not hava a variable named " + varName);
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         int type = var.getType();
         boolean isTimeType = (CDFTimeType.EPOCH.getValue() == type);
         isTimeType |= (CDFTimeType.EPOCH16.getValue() == type);
@@ -463,7 +474,7 @@ public abstract class MetaData {
      */
     public final boolean existsVariable(String varName) {
         if (varName == null) return false;
-        return (thisCDF.getVariable(varName) != null);
+        return (cdf().getVariable(varName) != null);
     }
 
     public abstract String userTimeVariableName(String varName) throws
@@ -481,13 +492,13 @@ public abstract class MetaData {
         String tname = userTimeVariableName(varName);
         if (tname != null) return tname;
         // assume istp convention
-        Variable var = thisCDF.getVariable(varName);
+        Variable var = cdf().getVariable(varName);
         String vname = var.getName();
-        Vector v = (Vector)thisCDF.getAttribute(vname, "DEPEND_0");
+        Vector v = (Vector)cdf().getAttribute(vname, "DEPEND_0");
         if (v.size() > 0) tname = (String)v.elementAt(0);
         if (tname == null) {
             if (!vname.equals("Epoch")) {
-                if (thisCDF.getVariable("Epoch") != null) {
+                if (cdf().getVariable("Epoch") != null) {
                     tname = "Epoch";
                     System.out.println("Variable " + vname + " has no DEPEND_0"+
                     " attribute. Variable named Epoch " +
@@ -513,7 +524,7 @@ public abstract class MetaData {
      * @return   the last leap second table identifier
      */
     public final int getLastLeapSecondId() {
-        return thisCDF.lastLeapSecondId;
+        return cdf().lastLeapSecondId;
     }
 
     /**
@@ -527,7 +538,7 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError (
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).getBlockingFactor();
+        return cdf().getVariable(varName).getBlockingFactor();
     }
     /**
      * Returns whether a variable of type r-variable..
@@ -540,6 +551,6 @@ public abstract class MetaData {
         CDFException.ReaderError {
         if (!existsVariable(varName)) throw new CDFException.ReaderError (
             "CDF does not hava a variable named " + varName);
-        return thisCDF.getVariable(varName).isTypeR();
+        return cdf().getVariable(varName).isTypeR();
     }
 }
@@ -0,0 +1,266 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+/**
+ * MetadataIndex is a sidecar file that records what is learnt about a
+ * CDF file when it is first opened: the location of each variable's VDR,
+ * the location of each of its data blocks, and the header of each
+ * attribute entry. A CDF opened with a valid index does not walk the
+ * VDR, VXR, ADR or AEDR chains; descriptors and attribute values are
+ * read from the file when first used, as in lazy mode. The index stays
+ * mapped while the CDF is open: the blocks of a variable are read from
+ * the mapping when the variable is first used.
+ * An index is valid for the canonical path, size and modification time
+ * it was built for, and carries a CRC32 of its contents.
+ * Layout (big endian): magic, format, identity, then for each variable
+ * name, type ("r" or "z"), number, VDR offset and block count followed
+ * by first records, last records and offsets of the blocks; then for each
+ * attribute name, scope, number and its global and z entries as AEDR
+ * offset, variable number, data type and number of elements; then the
+ * CRC32 of the preceding bytes.
+ */
+final class MetadataIndex {
+    static final int MAGIC = 0x43444658;
+    static final int FORMAT = 1;
+    static final String SUFFIX = ".cdfx";
+    /**
+     * Set while a CDF is being constructed from a file with a valid index.
+     */
+    static final ThreadLocal<MetadataIndex> opening =
+        new ThreadLocal<MetadataIndex>();
+    final ByteBuffer buf;
+
+    MetadataIndex(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * returns the index file for the given CDF file in directory dir.
+     */
+    static File indexFile(File dir, File file) throws IOException {
+        String path = file.getCanonicalPath();
+        CRC32 crc = new CRC32();
+        crc.update(path.getBytes("UTF-8"));
+        return new File(dir, Integer.toHexString(path.hashCode()) +
+            Long.toHexString(crc.getValue()) + SUFFIX);
+    }
+
+    /**
+     * returns the index of a CDF file, or null if there is no valid index
+     * for this version of the file.
+     */
+    static MetadataIndex read(File dir, File file, String identity) {
+        try {
+            File ifile = indexFile(dir, file);
+            if (!ifile.exists()) return null;
+            ByteBuffer mbuf;
+            RandomAccessFile raf = new RandomAccessFile(ifile, "r");
+            try {
+                FileChannel ch = raf.getChannel();
+                mbuf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } finally {
+                raf.close();
+            }
+            int len = mbuf.limit() - 4;
+            if ((len < 8) || (mbuf.getInt(0) != MAGIC) ||
+                (mbuf.getInt(4) != FORMAT)) {
+                MappedMemory.unmap(mbuf);
+                return null;
+            }
+            ByteBuffer contents = mbuf.duplicate();
+            contents.limit(len);
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+            mbuf.position(8);
+            if ((mbuf.getInt(len) != (int)crc.getValue()) ||
+                !identity.equals(getString(mbuf))) {
+                MappedMemory.unmap(mbuf);
+                return null;
+            }
+            return new MetadataIndex(mbuf);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /**
+     * sets up the variable and attribute tables of cdf from the index,
+     * which cdf then holds until it is closed.
+     */
+    void apply(CDFImpl cdf) {
+        cdf.index = this;
+        Hashtable<String, CDFImpl.VDRLocation> index =
+            new Hashtable<String, CDFImpl.VDRLocation>();
+        Hashtable<String, CDFImpl.VDRLocation> numbers =
+            new Hashtable<String, CDFImpl.VDRLocation>();
+        String[] names = new String[buf.getInt()];
+        for (int i = 0; i < names.length; i++) {
+            CDFImpl.VDRLocation loc = new CDFImpl.VDRLocation();
+            loc.name = getString(buf);
+            loc.vtype = getString(buf);
+            loc.number = buf.getInt();
+            loc.offset = buf.getLong();
+            int n = buf.getInt();
+            if (n >= 0) {
+                // a view of the block table, read when first used
+                ByteBuffer blocks = buf.duplicate();
+                blocks.limit(buf.position() + 24*n);
+                loc.blocks = blocks.slice().asLongBuffer();
+                buf.position(blocks.limit());
+            }
+            names[i] = loc.name;
+            index.put(loc.name, loc);
+            numbers.put(loc.vtype + loc.number, loc);
+        }
+        cdf.varNames = names;
+        cdf.vdrNumbers = numbers;
+        cdf.vdrIndex = index;
+        cdf.variableTable = new Hashtable<String, CDFImpl.CDFVariable>();
+        int nattr = buf.getInt();
+        if (nattr < 0) return;
+        Hashtable<String, CDFImpl.CDFAttribute> table =
+            new Hashtable<String, CDFImpl.CDFAttribute>();
+        for (int i = 0; i < nattr; i++) {
+            String name = getString(buf);
+            int scope = buf.getInt();
+            int num = buf.getInt();
+            Vector<AttributeEntry> g = getEntries(cdf, name);
+            Vector<AttributeEntry> z = getEntries(cdf, name);
+            table.put(name, cdf.new CDFAttribute(name, scope, num, g, z));
+        }
+        cdf.attributeTable = table;
+    }
+
+    /**
+     * unmaps the index, once the threads now reading have exited.
+     */
+    void release() {
+        MappedMemory.retire(buf);
+    }
+
+    Vector<AttributeEntry> getEntries(CDFImpl cdf, String name) {
+        Vector<AttributeEntry> entries = new Vector<AttributeEntry>();
+        int n = buf.getInt();
+        for (int i = 0; i < n; i++) {
+            long offset = buf.getLong();
+            int variableNumber = buf.getInt();
+            int type = buf.getInt();
+            int nelement = buf.getInt();
+            entries.add(cdf.new CDFAttributeEntry(name, offset,
+                variableNumber, type, nelement));
+        }
+        return entries;
+    }
+
+    static String getString(ByteBuffer b) {
+        byte[] ba = new byte[b.getInt()];
+        b.get(ba);
+        try {
+            return new String(ba, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    /**
+     * writes the index of cdf, read from file, to directory dir. The
+     * descriptors of all variables and attributes are read.
+     */
+    static void write(File dir, File file, String identity, CDFImpl cdf)
+        throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        putString(out, identity);
+        String[] names = cdf.getVariableNames();
+        Hashtable<?, ?> attributes = cdf.attributes();
+        out.writeInt(names.length);
+        for (int i = 0; i < names.length; i++) {
+            CDFImpl.CDFVariable var = cdf.variable(names[i]);
+            putString(out, var.name);
+            putString(out, var.vtype);
+            out.writeInt(var.number);
+            out.writeLong(var.offset);
+            CDFImpl.DataLocator locator =
+                (CDFImpl.DataLocator)var.getLocator();
+            if (locator == null) {
+                out.writeInt(-1);
+                continue;
+            }
+            out.writeInt(locator.size());
+            putLongs(out, locator.firstRecords);
+            putLongs(out, locator.lastRecords);
+            putLongs(out, locator.offsets);
+        }
+        if (attributes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(attributes.size());
+            Enumeration<?> e = attributes.elements();
+            while (e.hasMoreElements()) {
+                CDFImpl.CDFAttribute attr =
+                    (CDFImpl.CDFAttribute)e.nextElement();
+                putString(out, attr.name);
+                out.writeInt(attr.scope);
+                out.writeInt(attr.num);
+                putEntries(out, attr.gEntries);
+                putEntries(out, attr.zEntries);
+            }
+        }
+        out.flush();
+        byte[] ba = bos.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(ba);
+        File ifile = indexFile(dir, file);
+        File tmp = File.createTempFile("cdfx", ".tmp", dir);
+        try {
+            DataOutputStream fout = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                fout.write(ba);
+                fout.writeInt((int)crc.getValue());
+            } finally {
+                fout.close();
+            }
+            Files.move(tmp.toPath(), ifile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    static void putEntries(DataOutputStream out, Vector<?> entries) throws
+        IOException {
+        out.writeInt(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            CDFImpl.CDFAttributeEntry ae =
+                (CDFImpl.CDFAttributeEntry)entries.elementAt(i);
+            if (ae.offset < 0) {
+                throw new IOException("Location of an entry of " +
+                ae.attribute + " is not known");
+            }
+            out.writeLong(ae.offset);
+            out.writeInt(ae.variableNumber);
+            out.writeInt(ae.type);
+            out.writeInt(ae.nelement);
+        }
+    }
+
+    static void putLongs(DataOutputStream out, long[] la) throws
+        IOException {
+        for (int i = 0; i < la.length; i++) out.writeLong(la[i]);
+    }
+
+    static void putString(DataOutputStream out, String s) throws
+        IOException {
+        byte[] ba = s.getBytes("UTF-8");
+        out.writeInt(ba.length);
+        out.write(ba);
+    }
+}
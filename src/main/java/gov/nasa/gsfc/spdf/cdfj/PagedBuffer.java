@@ -0,0 +1,210 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * PagedBuffer reads a CDF file with positional reads
+ * (FileChannel.read(ByteBuffer, long)) instead of mapping it, for file
+ * systems on which mapping is slow or not allowed.
+ * The file is read in pages of a fixed size, kept in a BlockCache shared
+ * by all paged files, so that memory used is bounded by the capacity of
+ * the cache. A record that does not fit in the remainder of its page,
+ * typically a block of variable data, is read with a single read of its
+ * own and cached as a whole, unless the pages it spans are all cached.
+ * Blocks that are close to each other are read together when prefetched.
+ * Subclasses may read from other sources by overriding read().
+ */
+class PagedBuffer extends ChannelBuffer {
+    static final int DEFAULT_PAGE_SIZE = 64*1024;
+    static final long DEFAULT_CACHE_CAPACITY = 64l*1024*1024;
+    static BlockCache pageCache = new BlockCache(DEFAULT_CACHE_CAPACITY);
+    /**
+     * Upper limit of the size of a read that combines prefetched records.
+     */
+    static final int MAX_COMBINED = 8*1024*1024;
+    final int pageSize;
+    final int version;
+    final BlockCache cache;
+    /**
+     * cache key for records read on their own; pages are keyed by this.
+     */
+    final Object records = new Object();
+
+    PagedBuffer(FileChannel ch, int version) throws IOException {
+        this(ch, version, DEFAULT_PAGE_SIZE);
+    }
+
+    PagedBuffer(FileChannel ch, int version, int pageSize) throws
+        IOException {
+        super(ch);
+        this.version = version;
+        this.pageSize = pageSize;
+        cache = pageCache;
+    }
+
+    /**
+     * constructor for subclasses that read from sources other than a
+     * file channel.
+     */
+    PagedBuffer(long size, int version, int pageSize) {
+        super(size);
+        this.version = version;
+        this.pageSize = pageSize;
+        cache = pageCache;
+    }
+
+    ByteBuffer get(long offset, long len) {
+        if ((offset + len) > size) len = size - offset;
+        long start = (offset/pageSize)*pageSize;
+        int pos = (int)(offset - start);
+        if ((pos + len) <= pageSize) {
+            if (cache.get(this, start) == null) {
+                // a prefetched record saves reading the page
+                ByteBuffer rec = cache.get(records, offset);
+                if ((rec != null) && (rec.capacity() >= len)) {
+                    return rec;
+                }
+            }
+            ByteBuffer page = page(start);
+            if ((pos + len) <= page.limit()) {
+                page.position(pos);
+                return page.slice();
+            }
+        }
+        ByteBuffer joined = fromPages(offset, len);
+        if (joined != null) return joined;
+        return record(offset, len);
+    }
+
+    /**
+     * returns len bytes starting at offset copied from cached pages, or
+     * null if some of the pages are not cached.
+     */
+    ByteBuffer fromPages(long offset, long len) {
+        long start = (offset/pageSize)*pageSize;
+        long end = offset + len;
+        int n = (int)((end - start + pageSize - 1)/pageSize);
+        ByteBuffer[] pages = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            pages[i] = cache.get(this, start + (long)i*pageSize);
+            if (pages[i] == null) return null;
+        }
+        ByteBuffer bb = ByteBuffer.allocate((int)len);
+        pages[0].position((int)(offset - start));
+        for (int i = 0; i < n; i++) {
+            ByteBuffer page = pages[i];
+            if (page.remaining() > bb.remaining()) {
+                page.limit(page.position() + bb.remaining());
+            }
+            bb.put(page);
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * returns whether the bytes from offset to end are cached, either
+     * as a record or in pages.
+     */
+    boolean isCached(long offset, long end) {
+        ByteBuffer rec = cache.get(records, offset);
+        if ((rec != null) && (rec.capacity() >= (end - offset))) return true;
+        for (long p = (offset/pageSize)*pageSize; p < end; p += pageSize) {
+            if (cache.get(this, p) == null) return false;
+        }
+        return true;
+    }
+
+    long recordSize(long offset) {
+        if (version == 3) return super.recordSize(offset);
+        return get(offset, 4).getInt(0) & 0xffffffffl;
+    }
+
+    /**
+     * returns the page starting at the given offset.
+     */
+    ByteBuffer page(long start) {
+        ByteBuffer page = cache.get(this, start);
+        if (page != null) return page;
+        int len = (int)Math.min(pageSize, size - start);
+        return cache.put(this, start, read(start, len));
+    }
+
+    /**
+     * returns a buffer holding len bytes starting at offset, read on
+     * their own.
+     */
+    ByteBuffer record(long offset, long len) {
+        if (len > Integer.MAX_VALUE) {
+            throw new RuntimeException("Record at " + offset + " of size " +
+            len + " exceeds Integer.MAX_VALUE");
+        }
+        ByteBuffer rec = cache.get(records, offset);
+        if ((rec != null) && (rec.capacity() >= len)) return rec;
+        return cache.put(records, offset, read(offset, (int)len));
+    }
+
+    /**
+     * reads the records starting at offsets that are not cached yet with
+     * a single read, and caches each of them. Records are assumed to end
+     * where the next one starts.
+     */
+    boolean prefetches() {return true;}
+
+    void prefetch(long[] offsets, long end) {
+        if (end > size) end = size;
+        int first = 0;
+        while (first < offsets.length) {
+            long last = (first == (offsets.length - 1))?end:
+                offsets[first + 1];
+            if (!isCached(offsets[first], last)) break;
+            first++;
+        }
+        if (((offsets.length - first) < 2) ||
+            ((end - offsets[first]) > MAX_COMBINED)) {
+            return;
+        }
+        long start = offsets[first];
+        ByteBuffer all = read(start, (int)(end - start));
+        for (int i = first; i < offsets.length; i++) {
+            long last = (i == (offsets.length - 1))?end:offsets[i + 1];
+            ByteBuffer rec = all.duplicate();
+            rec.position((int)(offsets[i] - start));
+            rec.limit((int)(last - start));
+            cache.put(records, offsets[i], rec.slice());
+        }
+    }
+
+    /**
+     * reads len bytes starting at offset.
+     */
+    ByteBuffer read(long offset, int len) {
+        ByteBuffer bb = ByteBuffer.allocate(len);
+        try {
+            while (bb.hasRemaining()) {
+                int got = ch.read(bb, offset + bb.position());
+                if (got < 0) throw new EOFException();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read " + len +
+            " bytes at " + offset + ": " + ex);
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * returns 0; pages are held by the page cache.
+     */
+    long mappedSize() {return 0;}
+
+    /**
+     * removes the pages of this file from the cache, and closes the
+     * channel.
+     */
+    void close() {
+        cache.remove(this);
+        cache.remove(records);
+        super.close();
+    }
+}
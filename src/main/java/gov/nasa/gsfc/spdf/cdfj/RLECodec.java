@@ -0,0 +1,79 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+/**
+ * Run length encoding of zeros (CPR cType 1, parameter 0).
+ * A run of n zero bytes, 1 &lt;= n &lt;= 256, is encoded as a zero byte
+ * followed by n - 1. All other bytes are stored as is.
+ */
+final class RLECodec implements CompressionCodec {
+    public int getType() {return RLE;}
+
+    public int getParameter() {return 0;}
+
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        int i = off[0];
+        int end = i + len;
+        int start = dst.position();
+        int limit = dst.limit();
+        if (dst.hasArray()) {
+            byte[] out = dst.array();
+            int base = dst.arrayOffset();
+            int pos = start;
+            while ((i < end) && (pos < limit)) {
+                byte b = ba[i++];
+                if (b != 0) {
+                    out[base + pos++] = b;
+                    continue;
+                }
+                if (i == end) throw new IOException("Truncated RLE run");
+                int n = (ba[i++] & 0xff) + 1;
+                if (n > (limit - pos)) n = limit - pos;
+                for (int k = 0; k < n; k++) out[base + pos++] = 0;
+            }
+            dst.position(pos);
+        } else {
+            while ((i < end) && dst.hasRemaining()) {
+                byte b = ba[i++];
+                if (b != 0) {
+                    dst.put(b);
+                    continue;
+                }
+                if (i == end) throw new IOException("Truncated RLE run");
+                int n = (ba[i++] & 0xff) + 1;
+                if (n > dst.remaining()) n = dst.remaining();
+                for (int k = 0; k < n; k++) dst.put((byte)0);
+            }
+        }
+        src.position(src.position() + (i - off[0]));
+        return dst.position() - start;
+    }
+
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        int[] off = new int[1];
+        int len = src.remaining();
+        byte[] ba = CompressionCodecs.array(src, off);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(len/2 + 16);
+        int i = off[0];
+        int end = i + len;
+        while (i < end) {
+            byte b = ba[i++];
+            if (b != 0) {
+                baos.write(b);
+                continue;
+            }
+            int n = 1;
+            while ((n < 256) && (i < end) && (ba[i] == 0)) {
+                n++;
+                i++;
+            }
+            baos.write(0);
+            baos.write(n - 1);
+        }
+        src.position(src.limit());
+        return ByteBuffer.wrap(baos.toByteArray());
+    }
+}
@@ -0,0 +1,90 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.concurrent.*;
+/**
+ * ReadAhead loads blocks of variable data before they are needed, so that
+ * a sequential scan does not wait for the disk at every block. Loading a
+ * block of a mapped file touches each of its pages; blocks of files read
+ * with positional or range reads are read into the page cache, and
+ * compressed blocks are decompressed into the block cache.
+ * Blocks are loaded in order on a single daemon thread; failures are
+ * ignored, the block being read again when needed. The CDF is pinned
+ * while a block is loaded, and tasks of a CDF stop when it is closed.
+ */
+final class ReadAhead {
+    static final int PAGE_SIZE = 4096;
+    static ExecutorService executor;
+    static volatile long sink;
+
+    private ReadAhead() {
+    }
+
+    static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "cdfj-read-ahead");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+        return executor;
+    }
+
+    /**
+     * loads blocks from to to - 1 of var in the background, stopping if
+     * read ahead of the CDF is cancelled, that is, if its generation
+     * is no longer the given one.
+     */
+    static Future<?> schedule(final CDFImpl cdf, final Variable var,
+        final CDFImpl.DataLocator locator, final int from, final int to,
+        final int generation) {
+        return executor().submit(new Runnable() {
+            public void run() {
+                try {
+                    for (int blk = from; blk < to; blk++) {
+                        if (cdf.readAheadGeneration != generation) return;
+                        load(cdf, var, locator, blk);
+                    }
+                } catch (Throwable th) {
+                    // the block is read again when needed
+                }
+            }
+        });
+    }
+
+    /**
+     * loads a block of var.
+     */
+    static void load(CDFImpl cdf, Variable var, CDFImpl.DataLocator locator,
+        int blk) {
+        int count = (int)(locator.getLastRecord(blk) -
+            locator.getFirstRecord(blk) + 1);
+        cdf.pin();
+        MappedMemory.enter();
+        try {
+            ByteBuffer bv = cdf.positionBuffer(var, blk);
+            touch(bv, count*var.getDataItemSize());
+        } finally {
+            MappedMemory.exit();
+            cdf.unpin();
+        }
+    }
+
+    /**
+     * reads a byte of each page of the len bytes of b that follow its
+     * position.
+     */
+    static void touch(ByteBuffer b, int len) {
+        int end = b.position() + len;
+        if ((end > b.limit()) || (end < 0)) end = b.limit();
+        long sum = 0;
+        for (int pos = b.position(); pos < end; pos += PAGE_SIZE) {
+            sum += b.get(pos);
+        }
+        if (end > b.position()) sum += b.get(end - 1);
+        sink += sum;
+    }
+}
@@ -5,29 +5,32 @@ import java.io.*;
 import java.net.*;
 /**
  * ReaderFactory creates an instance of CDFReader from a CDF source.
- * Uses array backed ByteBuffer for CDFReader.
+ * Uses array backed ByteBuffers for CDFReader.
  * The source CDF can  be a file,  or a URL.
  */
 public final class ReaderFactory {
     /**
-     * creates  CDFReader object from a file using array backed ByteBuffer.
+     * creates  CDFReader object from a file using positional reads into
+     * array backed ByteBuffers, kept in the page cache of CDFFactory.
      */
-    static int preamble = 3000;
     public static CDFReader getReader(String fname) throws
         CDFException.ReaderError {
         CDFImpl cdf = null;
         File file = new File(fname);
         try {
             RandomAccessFile raf = new RandomAccessFile(file, "r");
-            long len = raf.length(); 
-            if (len > preamble) len = preamble;
-            byte[] ba = new byte[(int)len];
-            raf.readFully(ba);
-            ByteBuffer buf = ByteBuffer.wrap(ba);
-            cdf = getVersion(buf, raf.getChannel());
+            try {
+                cdf = CDFFactory.getPaged(raf.getChannel(),
+                    CDFFactory.fileIdentity(file));
+            } finally {
+                if (cdf == null) raf.close();
+            }
         } catch (Throwable th) {
             throw new CDFException.ReaderError("I/O Error reading " + fname);
         }
+        if (cdf == null) {
+            throw new CDFException.ReaderError(fname + " is not a CDF");
+        }
         final String _fname = file.getPath();
         cdf.setSource(new CDFFactory.CDFSource() {
             public String getName() {return _fname;};
@@ -48,6 +51,15 @@ public final class ReaderFactory {
         CDFException.ReaderError {
         CDFImpl cdf = null;
         try {
+            cdf = CDFFactory.getCached(url);
+            if ((cdf == null) && CDFFactory.rangeRequests) {
+                cdf = CDFFactory.getRemote(url);
+            }
+            if (cdf != null) {
+                CDFReader rdr = new CDFReader();
+                rdr.setImpl(cdf);
+                return rdr;
+            }
             URLConnection con = new CDFUrl(url).openConnection();
             int remaining = con.getContentLength();
             InputStream is = con.getInputStream();
@@ -74,42 +86,6 @@ public final class ReaderFactory {
         return rdr;
     }
 
-    static CDFImpl getVersion(ByteBuffer buf, FileChannel ch) throws
-        Throwable {
-        LongBuffer lbuf = buf.asLongBuffer();
-        long magic = lbuf.get();
-        if (magic == CDFFactory.CDF3_MAGIC) {
-            return new CDF3Impl(buf, ch);
-        }
-        if (magic == CDFFactory.CDF3_COMPRESSED_MAGIC) {
-            ByteBuffer mbuf = CDFFactory.uncompressed(buf, 3);
-            return new CDF3Impl(mbuf);
-        }
-        if (magic == CDFFactory.CDF2_MAGIC_DOT5) {
-            int release = buf.getInt(24);
-            return new CDF2Impl(buf, release, ch);
-        } else {
-            ShortBuffer sbuf = buf.asShortBuffer();
-            if (sbuf.get() == (short)0xcdf2) {
-                if (sbuf.get() == (short)0x6002) {
-                    short x = sbuf.get();
-                    if (x == 0) {
-                        if (sbuf.get() == -1) {
-                            return new CDF2Impl(buf, 6, ch);
-                        }
-                    } else {
-                        if ((x == (short)0xcccc) && (sbuf.get() == 1)) {
-                            // is compressed - positioned at CCR
-                            ByteBuffer mbuf = CDFFactory.uncompressed(buf, 2);
-                            return new CDF2Impl(mbuf, 6, ch);
-                        }
-                    }
-                        
-                }
-            }
-        }
-        return null;
-    }
     public static CDFReader getReader(String fname, boolean map) throws
         CDFException.ReaderError {
         CDFImpl cdf = null;
@@ -0,0 +1,155 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+/**
+ * SegmentedBuffer maps a (version 3) CDF file as a list of fixed size
+ * windows, so that files larger than Integer.MAX_VALUE bytes can be read
+ * without bringing them onto the heap.
+ * Window n covers file offsets n*segmentSize to
+ * (n + 1)*segmentSize + overlap, so that any record shorter than
+ * overlap lies entirely in the window that contains its start. A record
+ * that does not fit in the remainder of its window is mapped on its own.
+ * Windows and such records are mapped on first use, and may be unmapped
+ * by MappedMemory to stay within the mapped memory budget.
+ */
+final class SegmentedBuffer extends ChannelBuffer {
+    static final long DEFAULT_SEGMENT_SIZE = 1l << 30;
+    static final int DEFAULT_OVERLAP = 1 << 20;
+    final long segmentSize;
+    final int overlap;
+    final Window[] segments;
+    final Hashtable<Long, Record> spilled = new Hashtable<Long, Record>();
+    int pins;
+
+    SegmentedBuffer(FileChannel ch) throws IOException {
+        this(ch, DEFAULT_SEGMENT_SIZE, DEFAULT_OVERLAP);
+    }
+
+    SegmentedBuffer(FileChannel ch, long segmentSize, int overlap) throws
+        IOException {
+        super(ch);
+        if ((segmentSize + overlap) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size " + segmentSize +
+            " plus overlap " + overlap + " exceeds Integer.MAX_VALUE");
+        }
+        this.segmentSize = segmentSize;
+        this.overlap = overlap;
+        int n = (int)(size/segmentSize);
+        if ((size % segmentSize) != 0) n++;
+        segments = new Window[(n == 0)?1:n];
+        for (int i = 0; i < segments.length; i++) segments[i] = new Window(i);
+    }
+
+    /**
+     * returns window n.
+     */
+    ByteBuffer segment(int n) {
+        return segments[n].get();
+    }
+
+    final class Window extends MappedMemory.Region {
+        final int n;
+        Window(int n) {
+            this.n = n;
+        }
+
+        ByteBuffer map() throws IOException {
+            long end = SegmentedBuffer.this.size;
+            long start = n*segmentSize;
+            long len = segmentSize + overlap;
+            if ((start + len) > end) len = end - start;
+            return ch.map(FileChannel.MapMode.READ_ONLY, start, len);
+        }
+    }
+
+    /**
+     * A record that does not fit in its window.
+     */
+    final class Record extends MappedMemory.Region {
+        final long offset;
+        final long length;
+        Record(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ByteBuffer map() throws IOException {
+            return ch.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+    }
+
+    ByteBuffer get(long offset, long len) {
+        int n = (int)(offset/segmentSize);
+        ByteBuffer seg = segment(n);
+        int pos = (int)(offset - n*segmentSize);
+        if ((pos + len) > seg.limit()) {
+            if ((offset + len) > size) len = size - offset;
+            if ((pos + len) > seg.limit()) return spill(offset, len);
+        }
+        ByteBuffer _buf = seg.duplicate();
+        _buf.position(pos);
+        return _buf.slice();
+    }
+
+    ByteBuffer spill(long offset, long len) {
+        if (len > Integer.MAX_VALUE) {
+            throw new RuntimeException("Record at " + offset + " of size " +
+            len + " exceeds Integer.MAX_VALUE");
+        }
+        Long key = Long.valueOf(offset);
+        Record rec;
+        synchronized (this) {
+            rec = spilled.get(key);
+            if ((rec == null) || (rec.length < len)) {
+                if (rec != null) rec.release();
+                rec = new Record(offset, len);
+                if (pins > 0) rec.pin();
+                spilled.put(key, rec);
+            }
+        }
+        return rec.get().duplicate();
+    }
+
+    long mappedSize() {
+        long mapped = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].buffer != null) mapped += segments[i].size;
+        }
+        Enumeration<Record> e = spilled.elements();
+        while (e.hasMoreElements()) {
+            Record rec = e.nextElement();
+            if (rec.buffer != null) mapped += rec.size;
+        }
+        return mapped;
+    }
+
+    synchronized void pin() {
+        pins++;
+        for (int i = 0; i < segments.length; i++) segments[i].pin();
+        Enumeration<Record> e = spilled.elements();
+        while (e.hasMoreElements()) e.nextElement().pin();
+    }
+
+    synchronized void unpin() {
+        if (pins == 0) return;
+        pins--;
+        for (int i = 0; i < segments.length; i++) segments[i].unpin();
+        Enumeration<Record> e = spilled.elements();
+        while (e.hasMoreElements()) e.nextElement().unpin();
+    }
+
+    /**
+     * unmaps all windows and records, and closes the channel.
+     */
+    void close() {
+        for (int i = 0; i < segments.length; i++) segments[i].release();
+        synchronized (this) {
+            Enumeration<Record> e = spilled.elements();
+            while (e.hasMoreElements()) e.nextElement().release();
+            spilled.clear();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,115 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+/**
+ * StreamingWriter creates a CDF whose variable data is written to the
+ * file as it is added, so that the memory used does not grow with the
+ * size of the file.
+ * Variables and attributes are defined, and data is added, as for
+ * GenericWriter. Data of each variable is held until a block of the
+ * block size (see {@link GenericWriter#setBlockSize(int)}) has been
+ * collected, which is then written to the file as a VVR, or, for a
+ * compressed variable, as a CVVR. The attributes, and the
+ * descriptors and block index of each variable, are written after the
+ * data by close(), which also fills in the GDR reserved at the start of
+ * the file. Attributes may therefore be added until the writer is closed.
+ * The file is not a valid CDF until close() returns.
+ */
+public class StreamingWriter extends GenericWriter implements
+    AutoCloseable {
+    RandomAccessFile raf;
+    FileChannel channel;
+
+    /**
+     * Constructs a row major StreamingWriter that writes to a file,
+     * replacing its contents if it exists.
+     * @param fname the output CDF file name
+     * @throws IOException if the file cannot be created
+     */
+    public StreamingWriter(String fname) throws IOException {
+        this(fname, true);
+    }
+
+    /**
+     * Constructs a StreamingWriter of specified row majority that writes
+     * to a file, replacing its contents if it exists.
+     * @param fname the output CDF file name
+     * @param rowMajority a flag indicating the CDF is a row major
+     * @throws IOException if the file cannot be created
+     */
+    public StreamingWriter(String fname, boolean rowMajority) throws
+        IOException {
+        super(rowMajority);
+        raf = new RandomAccessFile(new File(fname), "rw");
+        channel = raf.getChannel();
+        channel.truncate(0);
+        // reserve space for the CDR and GDR, written by close()
+        channel.write(cdr.get());
+        gdr.position = channel.position();
+        channel.write(gdr.get());
+    }
+
+    DataContainer createContainer(VDR vdr) {
+        DataContainer dc = super.createContainer(vdr);
+        dc.setStream(channel);
+        return dc;
+    }
+
+    /**
+     * Not supported; the CDF is completed by close().
+     * @throws IOException always
+     */
+    public boolean write(String fname, boolean overwrite) throws
+        IOException {
+        throw new IOException("A StreamingWriter is completed by close()");
+    }
+
+    /**
+     * Writes the remaining data, the attributes and the variable
+     * descriptors, and closes the file.
+     * @throws IOException if there is an error
+     */
+    public void close() throws IOException {
+        if (channel == null) return;
+        try {
+            Collection<DataContainer> containers = dataContainers.values();
+            Iterator<DataContainer> it = containers.iterator();
+            while (it.hasNext()) it.next().flush(true);
+            if (lastLeapSecondId != -1) {
+                gdr.setLastLeapSecondId(lastLeapSecondId);
+            }
+            channel.position(channel.size());
+            writeAttributes(channel);
+            long pos = channel.size();
+            DataContainer lastContainer = null;
+            it = containers.iterator();
+            while (it.hasNext()) {
+                DataContainer dc = it.next();
+                dc.position = pos;
+                if (lastContainer == null) {
+                    gdr.setZVDRHead(pos);
+                } else {
+                    lastContainer.getVDR().setVDRNext(pos);
+                }
+                lastContainer = dc;
+                pos += dc.layoutIndex();
+            }
+            it = containers.iterator();
+            while (it.hasNext()) it.next().writeIndex(channel);
+            cdr.setRowMajority(rowMajority);
+            cdr.setMD5Needed(needDigest);
+            DataContainer.writeFully(channel, cdr.get(), 0l);
+            gdr.setEof(channel.size());
+            gdr.setNumAttr(attributes.size());
+            gdr.setNzVars(dataContainers.size());
+            DataContainer.writeFully(channel, gdr.get(), gdr.position);
+            channel.position(channel.size());
+            if (needDigest) getDigest(channel);
+            channel.force(true);
+        } finally {
+            raf.close();
+            channel = null;
+        }
+    }
+}
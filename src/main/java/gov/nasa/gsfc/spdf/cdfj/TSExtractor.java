@@ -77,17 +77,17 @@ public class TSExtractor extends Extractor {
         Number pad;
         if (DataTypes.typeCategory[type] == DataTypes.LONG) {
             longType = true;
-            pad = new Long(((long[])getPadValue(rdr.thisCDF, var))[element]);
+            pad = Long.valueOf(((long[])getPadValue(rdr.cdf(), var))[element]);
         } else {
-            pad =
-                new Double(((double[])getPadValue(rdr.thisCDF, var))[element]);
+            pad = Double.valueOf(
+                ((double[])getPadValue(rdr.cdf(), var))[element]);
         }
         double[] stimes;
         Object o = null;
         Object[] oa = null;
         if (timeRange == null) {
-            o = (which == null)?Extractor.getSeries0(rdr.thisCDF, var):
-                                Extractor.getElement1(rdr.thisCDF, var, which);
+            o = (which == null)?Extractor.getSeries0(rdr.cdf(), var):
+                                Extractor.getElement1(rdr.cdf(), var, which);
             if (var.isMissingRecords()) {
                 long[][] locations = var.getLocator().getLocations();
                 oa = filterPad(o, times, pad, locations, 0);
@@ -98,10 +98,10 @@ public class TSExtractor extends Extractor {
             recordRange = getRecordRange(rdr, var, timeRange);
             if (recordRange == null) return null;
             if (which == null) {
-                o = getRange0(rdr.thisCDF, var, new Integer(recordRange[0]),
-                                  new Integer(recordRange[1]));
+                o = getRange0(rdr.cdf(), var, Integer.valueOf(recordRange[0]),
+                                  Integer.valueOf(recordRange[1]));
             } else {
-                o = getRangeForElement1(rdr.thisCDF, var,
+                o = getRangeForElement1(rdr.cdf(), var,
                     new Integer(recordRange[0]), new Integer(recordRange[1]),
                     which);
             }
@@ -123,7 +123,7 @@ public class TSExtractor extends Extractor {
             return new double [][] {stimes, vdata};
         }
         // fill values need to be filtered
-        Object fill = Extractor.getFillValue(rdr.thisCDF, var);
+        Object fill = Extractor.getFillValue(rdr.cdf(), var);
         boolean fillDefined = true;
         Number fillValue = null;
         if (fill.getClass().getComponentType() == Double.TYPE) {
@@ -285,23 +285,23 @@ public class TSExtractor extends Extractor {
         Stride strideObject = new Stride(stride);
         if (timeRange == null) {
             vdata = (which == null)?
-                   (double[])getSeries0(rdr.thisCDF, var, strideObject):
-                   (double[])getElement1(rdr.thisCDF, var, which, strideObject);
+                   (double[])getSeries0(rdr.cdf(), var, strideObject):
+                   (double[])getElement1(rdr.cdf(), var, which, strideObject);
         } else {
             recordRange = getRecordRange(rdr, var, timeRange);
             if (recordRange == null) return null;
             if (which == null) {
-                vdata = (double[])getRange0(rdr.thisCDF, var,
+                vdata = (double[])getRange0(rdr.cdf(), var,
                         new Integer(recordRange[0]),
                                   new Integer(recordRange[1]), strideObject);
             } else {
-                vdata = (double[])getRangeForElement1(rdr.thisCDF, var,
+                vdata = (double[])getRangeForElement1(rdr.cdf(), var,
                     new Integer(recordRange[0]), new Integer(recordRange[1]),
                     which, strideObject);
             }
         }
         int _stride = strideObject.getStride();
-        double [] fill = (double[])getFillValue(rdr.thisCDF, var);
+        double [] fill = (double[])getFillValue(rdr.cdf(), var);
         if ((!ignore) || (fill[0] != 0)) {
             if (timeRange == null) {
                 if (_stride == 1) {
@@ -400,16 +400,17 @@ public class TSExtractor extends Extractor {
             }
             Object o = null;
             if (timeRange == null) {
-                o = (which == null)?getSeries0(rdr.thisCDF, var):
-                    getElement1(rdr.thisCDF, var, which);
+                o = (which == null)?getSeries0(rdr.cdf(), var):
+                    getElement1(rdr.cdf(), var, which);
             } else {
                 recordRange = getRecordRange(rdr, var, timeRange, ts);
                 if (recordRange == null) throw new Throwable("no record range");
                 if (which == null) {
-                    o = getRange0(rdr.thisCDF, var, new Integer(recordRange[0]),
-                                  new Integer(recordRange[1]));
+                    o = getRange0(rdr.cdf(), var,
+                        Integer.valueOf(recordRange[0]),
+                        Integer.valueOf(recordRange[1]));
                 } else {
-                    o = getRangeForElement1(rdr.thisCDF, var,
+                    o = getRangeForElement1(rdr.cdf(), var,
                     new Integer(recordRange[0]), new Integer(recordRange[1]),
                     which);
                 }
@@ -424,7 +425,7 @@ public class TSExtractor extends Extractor {
                 }
             } else {
                 // fill values need to be filtered
-                double [] fill = (double[])getFillValue(rdr.thisCDF, var);
+                double [] fill = (double[])getFillValue(rdr.cdf(), var);
                 int first = (timeRange != null)?recordRange[0]:0;
                 if (fill[0] != 0) { // there is no fill value
                     stimes = new double[vdata.length];
@@ -466,7 +467,7 @@ public class TSExtractor extends Extractor {
             vname = var.getName();
             tv = (TimeVariableX)
                 TimeVariableFactory.getTimeVariable(rdr, vname);
-            thisCDF = rdr.thisCDF;
+            thisCDF = rdr.cdf();
             this.timeRange = timeRange;
             this.oned = oned;
             this.columnMajor = columnMajor;
@@ -41,7 +41,7 @@ public class TimeVariableFactory {
 
     public static CDFTimeVariable getTimeVariable(MetaData rdr,
         String vname) throws Throwable {
-        CDFImpl cdf = rdr.thisCDF;
+        CDFImpl cdf = rdr.cdf();
         Variable var = (Variable)cdf.getVariable(vname);
         int precision = -1;
         String tname = null;
@@ -0,0 +1,251 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+/**
+ * URLCache keeps local copies of CDFs downloaded from http URLs in a
+ * directory, so that they are not downloaded again when opened later,
+ * possibly by another process.
+ * Contents are stored in files named by the SHA-256 digest of the
+ * contents, with suffix .cdf, so that URLs serving the same file share a
+ * copy. For each URL, a properties file named by the digest of the URL,
+ * with suffix .url, records the URL, the digest of its contents, and the
+ * ETag and Last-Modified headers received with them. A cached copy is
+ * revalidated with a conditional request on each use, and used as is if
+ * the server cannot be reached.
+ * Files are written under a temporary name and renamed when complete.
+ * When the total size of the contents exceeds the limit, the least
+ * recently used contents are deleted.
+ */
+final class URLCache {
+    static final String CONTENT_SUFFIX = ".cdf";
+    static final String URL_SUFFIX = ".url";
+    final File dir;
+    final long limit;
+
+    URLCache(File dir, long limit) {
+        this.dir = dir;
+        this.limit = limit;
+    }
+
+    /**
+     * returns whether url can be cached.
+     */
+    static boolean accepts(URL url) {
+        String protocol = url.getProtocol();
+        return "http".equals(protocol) || "https".equals(protocol);
+    }
+
+    /**
+     * returns the local copy of the contents of url, downloading it if
+     * it is not cached or has changed.
+     */
+    File get(URL url) throws IOException {
+        File ufile = new File(dir, digest(url.toString()) + URL_SUFFIX);
+        Properties entry = load(ufile);
+        File cached = null;
+        if (entry != null) {
+            cached = new File(dir, entry.getProperty("content") +
+                CONTENT_SUFFIX);
+            if (!cached.exists()) {
+                entry = null;
+                cached = null;
+            }
+        }
+        HttpURLConnection con;
+        int code;
+        try {
+            con = (HttpURLConnection)new CDFUrl(url).openConnection();
+            if (entry != null) {
+                String etag = entry.getProperty("etag");
+                if (etag != null) con.setRequestProperty("If-None-Match", etag);
+                String modified = entry.getProperty("modified");
+                if (modified != null) {
+                    con.setIfModifiedSince(Long.parseLong(modified));
+                }
+            }
+            code = con.getResponseCode();
+        } catch (IOException ex) {
+            if (cached == null) throw ex;
+            return touch(cached);
+        }
+        try {
+            if ((code == HttpURLConnection.HTTP_NOT_MODIFIED) &&
+                (cached != null)) {
+                return touch(cached);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Server returned " + code + " for " +
+                url);
+            }
+            File content = download(con);
+            entry = new Properties();
+            entry.setProperty("url", url.toString());
+            String name = content.getName();
+            entry.setProperty("content",
+                name.substring(0, name.length() - CONTENT_SUFFIX.length()));
+            String etag = con.getHeaderField("ETag");
+            if (etag != null) entry.setProperty("etag", etag);
+            long modified = con.getLastModified();
+            if (modified != 0) {
+                entry.setProperty("modified", Long.toString(modified));
+            }
+            store(entry, ufile);
+            trim(content);
+            return content;
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * copies the body of the response to a temporary file, and renames it
+     * after the digest of its contents.
+     */
+    File download(HttpURLConnection con) throws IOException {
+        MessageDigest md = sha256();
+        File tmp = File.createTempFile("cdfj", ".tmp", dir);
+        try {
+            long len = con.getContentLengthLong();
+            long total = 0;
+            InputStream is = con.getInputStream();
+            try {
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    byte[] ba = new byte[64*1024];
+                    int n;
+                    while ((n = is.read(ba)) != -1) {
+                        md.update(ba, 0, n);
+                        os.write(ba, 0, n);
+                        total += n;
+                    }
+                } finally {
+                    os.close();
+                }
+            } finally {
+                is.close();
+            }
+            if ((len >= 0) && (total != len)) {
+                throw new IOException("Mismatched length " + total +
+                " expected: " + len);
+            }
+            File content = new File(dir, hex(md.digest()) + CONTENT_SUFFIX);
+            if (content.exists()) return touch(content);
+            if (!tmp.renameTo(content)) {
+                throw new IOException("Failed to rename " + tmp + " to " +
+                content);
+            }
+            return content;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * deletes least recently used contents, other than keep, until the
+     * total size is within the limit, and the entries of URLs whose
+     * contents are deleted.
+     */
+    void trim(File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Vector<File> contents = new Vector<File>();
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].getName().endsWith(CONTENT_SUFFIX)) continue;
+            contents.add(files[i]);
+            total += files[i].length();
+        }
+        if (total <= limit) return;
+        Collections.sort(contents, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        HashSet<String> deleted = new HashSet<String>();
+        for (int i = 0; (i < contents.size()) && (total > limit); i++) {
+            File f = contents.get(i);
+            if (f.equals(keep)) continue;
+            long len = f.length();
+            if (!f.delete()) continue;
+            total -= len;
+            String name = f.getName();
+            deleted.add(name.substring(0,
+                name.length() - CONTENT_SUFFIX.length()));
+        }
+        if (deleted.isEmpty()) return;
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].getName().endsWith(URL_SUFFIX)) continue;
+            Properties entry = load(files[i]);
+            if ((entry == null) ||
+                deleted.contains(entry.getProperty("content"))) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * marks f as used now.
+     */
+    static File touch(File f) {
+        f.setLastModified(System.currentTimeMillis());
+        return f;
+    }
+
+    static Properties load(File f) {
+        if (!f.exists()) return null;
+        Properties p = new Properties();
+        try {
+            InputStream is = new FileInputStream(f);
+            try {
+                p.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        if (p.getProperty("content") == null) return null;
+        return p;
+    }
+
+    void store(Properties p, File f) throws IOException {
+        File tmp = File.createTempFile("cdfj", ".tmp", dir);
+        try {
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                p.store(os, null);
+            } finally {
+                os.close();
+            }
+            f.delete();
+            if (!tmp.renameTo(f)) {
+                throw new IOException("Failed to rename " + tmp + " to " + f);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex.getMessage());
+        }
+    }
+
+    static String digest(String s) throws IOException {
+        return hex(sha256().digest(s.getBytes("UTF-8")));
+    }
+
+    static String hex(byte[] ba) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ba.length; i++) {
+            sb.append(Integer.toHexString((ba[i] & 0xff) | 0x100)
+                .substring(1));
+        }
+        return sb.toString();
+    }
+}
@@ -39,6 +39,22 @@ public interface VDataContainer extends Runnable {
      */
     public void setDirect(boolean direct);
 
+    /**
+     * Enables parallel decompression of blocks of compressed variables.
+     * The default implementation ignores it.
+     * @param parallel as true or false
+     */
+    public default void setParallel(boolean parallel) {
+    }
+
+    /**
+     * Sets the number of blocks loaded in the background ahead of the
+     * block being read. The default implementation ignores it.
+     * @param blocks number of blocks, 0 to disable read ahead
+     */
+    public default void setReadAhead(int blocks) {
+    }
+
     /**
      * Returns the {@link Variable Variable} for this container.
      * @return An Variable object
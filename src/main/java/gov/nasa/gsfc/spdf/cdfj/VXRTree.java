@@ -0,0 +1,105 @@
+package gov.nasa.gsfc.spdf.cdfj;
+import java.nio.*;
+import java.util.*;
+/**
+ * VXRTree lays out the index of the blocks of a variable as a balanced
+ * tree of VXRs of up to a given number of entries, as the CDF library
+ * does, rather than as a single list of VXRs.
+ * Entries of the leaves point to the blocks; entries of the other VXRs
+ * point to the VXRs of the level below, and span the records of those.
+ * All VXRs of the tree are stored together, root first, then the levels
+ * below in order; VXRs below the root are not linked to each other.
+ */
+final class VXRTree {
+    static final int HEADER = 28;
+    static final int ENTRY = 16;
+    final int fanOut;
+    /**
+     * counts[0] is the number of blocks, counts[k] that of the VXRs of
+     * level k, leaves being level 1; the last is 1, the root.
+     */
+    final int[] counts;
+    final int size;
+
+    VXRTree(int nblocks, int fanOut) {
+        this.fanOut = fanOut;
+        Vector<Integer> v = new Vector<Integer>();
+        v.add(Integer.valueOf(nblocks));
+        int n = nblocks;
+        do {
+            n = (n + fanOut - 1)/fanOut;
+            v.add(Integer.valueOf(n));
+        } while (n > 1);
+        counts = new int[v.size()];
+        int _size = 0;
+        for (int k = 0; k < counts.length; k++) {
+            counts[k] = v.get(k).intValue();
+            if (k > 0) _size += levelSize(k);
+        }
+        size = _size;
+    }
+
+    /**
+     * returns number of levels of VXRs.
+     */
+    int depth() {return counts.length - 1;}
+
+    /**
+     * returns size of the VXRs of level k.
+     */
+    int levelSize(int k) {
+        return HEADER*counts[k] + ENTRY*counts[k - 1];
+    }
+
+    int getSize() {return size;}
+
+    /**
+     * returns the VXRs of the tree for blocks of the given first and last
+     * records and offsets, when the tree is stored at position. The root
+     * is at position.
+     */
+    ByteBuffer get(long position, Vector<Integer> firstRecords,
+        Vector<Integer> lastRecords, long[] offsets) {
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        long[] start = new long[counts.length];
+        long pos = position;
+        for (int k = depth(); k > 0; k--) {
+            start[k] = pos;
+            pos += levelSize(k);
+        }
+        int n = counts[0];
+        int[] first = new int[n];
+        int[] last = new int[n];
+        for (int i = 0; i < n; i++) {
+            first[i] = firstRecords.get(i).intValue();
+            last[i] = lastRecords.get(i).intValue();
+        }
+        long[] locs = offsets;
+        for (int k = 1; k <= depth(); k++) {
+            int nodes = counts[k];
+            int[] _first = new int[nodes];
+            int[] _last = new int[nodes];
+            long[] _locs = new long[nodes];
+            for (int j = 0; j < nodes; j++) {
+                int from = j*fanOut;
+                int entries = Math.min(fanOut, counts[k - 1] - from);
+                long at = start[k] + (long)j*(HEADER + ENTRY*fanOut);
+                VXR vxr = new VXR();
+                vxr.numEntries = entries;
+                buf.position((int)(at - position));
+                buf.put(vxr.get());
+                for (int e = 0; e < entries; e++) buf.putInt(first[from + e]);
+                for (int e = 0; e < entries; e++) buf.putInt(last[from + e]);
+                for (int e = 0; e < entries; e++) buf.putLong(locs[from + e]);
+                _first[j] = first[from];
+                _last[j] = last[from + entries - 1];
+                _locs[j] = at;
+            }
+            first = _first;
+            last = _last;
+            locs = _locs;
+        }
+        buf.position(0);
+        return buf;
+    }
+}
@@ -316,6 +316,26 @@ public interface Variable extends VariableMetaData {
      */
     public VDataContainer.CLong getLongContainer(int[] pt) throws Throwable;
 
+    /**
+     * Returns read only views of the stored values for a range of records,
+     * one {@link VariableDataBuffer VariableDataBuffer} per data block
+     * overlapping the range, without copying.
+     * Views are available only if the variable is not compressed and the
+     * stored type and byte order match the target. For a file opened via
+     * CDFFactory the views share memory with the mapped file.
+     * @param cl the target type, e.g. Double.TYPE
+     * @param bo the target byte order
+     * @param pt the range of records; all records if null
+     * Implementations that cannot provide views need not override this
+     * method, which returns null.
+     * @return the views, or null if the data cannot be viewed as cl
+     * @throws  Throwable if an error occurs
+     */
+    public default VariableDataBuffer[] getViews(Class<?> cl,
+        ByteOrder bo, int[] pt) throws Throwable {
+        return null;
+    }
+
     /**
      * Returns {@link CDFImpl CDFImpl} object containing this variable.
      * @return the source CDF object
@@ -21,6 +21,19 @@ public interface VariableMetaData {
      */
     public boolean isCompressed();
 
+    /**
+     * Returns the compression type of this variable's values, as recorded
+     * in the CDF.
+     * The default implementation returns GZIP for a compressed variable,
+     * the only type supported before others were.
+     * @return one of the types defined in
+     * {@link CompressionCodec CompressionCodec}, NONE if the variable is
+     * not compressed
+     */
+    public default int getCompressionType() {
+        return isCompressed()?CompressionCodec.GZIP:CompressionCodec.NONE;
+    }
+
     /**
      * Determines whether the value of this variable is presented in
      * a row-major order in the CDF.
@@ -0,0 +1,65 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+public class TestBlockCache
+{
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder ();
+
+    @Test
+    public void testEviction ()
+    {
+        BlockCache cache = new BlockCache (100);
+        String source = "file";
+        cache.put (source, 0, ByteBuffer.allocate (40));
+        cache.put (source, 1, ByteBuffer.allocate (40));
+        assertNotNull (cache.get (source, 0));
+        cache.put (source, 2, ByteBuffer.allocate (40));
+        assertNull (cache.get (source, 1));
+        assertNotNull (cache.get (source, 0));
+        assertNotNull (cache.get (source, 2));
+        assertEquals (80, cache.getSize());
+        assertEquals (1, cache.getEvictions());
+        assertEquals (3, cache.getHits());
+        assertEquals (1, cache.getMisses());
+        cache.put (source, 3, ByteBuffer.allocate (200));
+        assertNull (cache.get (source, 3));
+        assertTrue (cache.get (source, 0).isReadOnly());
+    }
+
+    @Test
+    public void testRepeatedReads () throws Throwable
+    {
+        File cdf_file = temp_folder.newFile ("cached.cdf");
+        double data [] = new double [1000];
+        for (int count=0; count<data.length; count ++) data[count] = count;
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.defineVariable ("Packed", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, true, new double [] {-1.0});
+        cdf_writer.addData ("Packed", data, new int [] {0, data.length -1});
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+
+        BlockCache saved = BlockCache.getDefault();
+        BlockCache cache = new BlockCache (1 << 20);
+        BlockCache.setDefault (cache);
+        try {
+            CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+            assertArrayEquals (data, (double []) cdf_reader.get ("Packed"), 0.0);
+            long misses = cache.getMisses();
+            assertTrue (misses > 0);
+            assertEquals (0, cache.getHits());
+            CDFReader other_reader = new CDFReader (cdf_file.getAbsolutePath());
+            assertArrayEquals (data, (double []) other_reader.get ("Packed"), 0.0);
+            assertEquals (misses, cache.getMisses());
+            assertEquals (misses, cache.getHits());
+        } finally {
+            BlockCache.setDefault (saved);
+        }
+    }
+}
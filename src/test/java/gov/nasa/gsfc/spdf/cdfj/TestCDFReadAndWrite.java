@@ -10,6 +10,10 @@ import static org.junit.Assert.*;
 
 import gov.nasa.gsfc.spdf.cdfj.CDFReader;
 import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Vector;
 import org.junit.Rule;
@@ -82,4 +86,569 @@ public class TestCDFReadAndWrite
         assertEquals (var_attr_name, var_entry.getAttributeName());
         assertEquals (times_var_name, var_entry.getValue());
     }
+
+    // written in several calls so that the variable spans several blocks
+    private static final int NBLOCKS = 6;
+
+    private File writeBlocks (double data []) throws Throwable
+    {
+        File cdf_file = temp_folder.newFile ("blocks.cdf");
+        CDFWriter cdf_writer = new CDFWriter(false);
+        // a block per call
+        cdf_writer.setBlockSize (TEST_DATA_LENGTH * 4);
+        cdf_writer.defineVariable ("Packed", CDFDataType.INT4, new int [] {}, new boolean [] {}, true, true, new int [] {-1});
+        for (int block=0; block<NBLOCKS; block ++) {
+            int values [] = new int [TEST_DATA_LENGTH];
+            for (int count=0; count<values.length; count ++) {
+                values[count] = block * 100000 + count;
+                data[block * TEST_DATA_LENGTH + count] = values[count];
+            }
+            cdf_writer.addData ("Packed", values, new int [] {block * TEST_DATA_LENGTH, (block + 1) * TEST_DATA_LENGTH - 1});
+        }
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        return cdf_file;
+    }
+
+    @Test
+    public void testParallelDecompression () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        Variable var = cdf.getVariable ("Packed");
+        assertEquals (NBLOCKS, var.getLocator().getLocations().length);
+        int range [] = new int [] {TEST_DATA_LENGTH / 2, data.length - 3};
+        VDataContainer.CDouble sequential = var.getDoubleContainer (range, false);
+        sequential.run ();
+        VDataContainer.CDouble parallel = var.getDoubleContainer (range, false);
+        parallel.setParallel (true);
+        parallel.run ();
+        double expected [] = new double [range[1] - range[0] + 1];
+        System.arraycopy (data, range[0], expected, 0, expected.length);
+        assertArrayEquals (expected, sequential.as1DArray(), 0.0);
+        assertArrayEquals (expected, parallel.as1DArray(), 0.0);
+    }
+
+    @Test
+    public void testReadAhead () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        Variable var = cdf.getVariable ("Packed");
+        int range [] = new int [] {TEST_DATA_LENGTH / 2, data.length - 3};
+        VDataContainer.CDouble container = var.getDoubleContainer (range, false);
+        container.setReadAhead (2);
+        container.run ();
+        double expected [] = new double [range[1] - range[0] + 1];
+        System.arraycopy (data, range[0], expected, 0, expected.length);
+        assertArrayEquals (expected, container.as1DArray(), 0.0);
+
+        // only the blocks asked for are loaded ahead
+        cdf.awaitReadAhead ();
+        BlockCache.getDefault().clear ();
+        CDFImpl.DataLocator blocks = (CDFImpl.DataLocator) var.getLocator();
+        cdf.readAhead (var, blocks, 3, 5);
+        cdf.awaitReadAhead ();
+        assertNull (BlockCache.getDefault().get (cdf.getIdentity (), blocks.getOffset (2)));
+        assertNotNull (BlockCache.getDefault().get (cdf.getIdentity (), blocks.getOffset (3)));
+        assertNotNull (BlockCache.getDefault().get (cdf.getIdentity (), blocks.getOffset (4)));
+        assertNull (BlockCache.getDefault().get (cdf.getIdentity (), blocks.getOffset (5)));
+
+        CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+        cdf_reader.warm ("Packed", new int [] {TEST_DATA_LENGTH, 3 * TEST_DATA_LENGTH - 1});
+        CDFImpl.DataLocator locator = (CDFImpl.DataLocator) cdf_reader.thisCDF.getVariable ("Packed").getLocator();
+        Object identity = cdf_reader.thisCDF.getIdentity ();
+        assertNotNull (BlockCache.getDefault().get (identity, locator.getOffset (1)));
+        assertNotNull (BlockCache.getDefault().get (identity, locator.getOffset (2)));
+        cdf_reader.warm ("Packed", null);
+        try {
+            cdf_reader.warm ("Missing", null);
+            fail ("warmed a missing variable");
+        } catch (CDFException.ReaderError ex) {
+        }
+        cdf_reader.close ();
+
+        // nothing is loaded ahead for a closed CDF
+        cdf.close ();
+        cdf.readAhead (var, blocks, 0, NBLOCKS);
+        assertTrue (cdf.readAheads.isEmpty ());
+    }
+
+    @Test
+    public void testBlockLookup () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        CDFImpl.DataLocator locator = (CDFImpl.DataLocator) cdf.getVariable ("Packed").getLocator();
+        assertEquals (0, locator.blockIndex (0));
+        assertEquals (0, locator.blockIndex (TEST_DATA_LENGTH - 1));
+        assertEquals (1, locator.blockIndex (TEST_DATA_LENGTH));
+        assertEquals (NBLOCKS - 1, locator.blockIndex (data.length - 1));
+        assertEquals (NBLOCKS, locator.blockIndex (data.length));
+        assertArrayEquals (new int [] {1, 3}, Extractor.getBlockRange (locator, true, TEST_DATA_LENGTH + 1, 3 * TEST_DATA_LENGTH + 1));
+        assertArrayEquals (Extractor.getBlockRange (locator.getLocationsAsVector(), true, 5, 4 * TEST_DATA_LENGTH),
+                           Extractor.getBlockRange (locator, true, 5, 4 * TEST_DATA_LENGTH));
+
+        CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+        double range [] = (double []) cdf_reader.getRange ("Packed", data.length - TEST_DATA_LENGTH - 2, data.length - 1);
+        for (int count=0; count<range.length; count ++) {
+            assertEquals (data[data.length - TEST_DATA_LENGTH - 2 + count], range[count], 0.0);
+        }
+    }
+
+    @Test
+    public void testViews () throws Throwable
+    {
+        File cdf_file = temp_folder.newFile ("views.cdf");
+        double data [] = new double [2 * TEST_DATA_LENGTH];
+        for (int count=0; count<data.length; count ++) data[count] = count * 0.5;
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.setBlockSize (TEST_DATA_LENGTH * 8);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.addData ("Plain", java.util.Arrays.copyOfRange (data, 0, TEST_DATA_LENGTH), new int [] {0, TEST_DATA_LENGTH - 1});
+        cdf_writer.addData ("Plain", java.util.Arrays.copyOfRange (data, TEST_DATA_LENGTH, data.length), new int [] {TEST_DATA_LENGTH, data.length - 1});
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+
+        CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+        assertNull (cdf_reader.getViews ("Plain", "float", null));
+        Variable var = cdf_reader.thisCDF.getVariable ("Plain");
+        VariableDataBuffer views [] = var.getViews (Double.TYPE, var.getCDF().getByteOrder(), new int [] {10, TEST_DATA_LENGTH + 9});
+        assertEquals (2, views.length);
+        assertEquals (10, views[0].getFirstRecord());
+        assertEquals (TEST_DATA_LENGTH - 1, views[0].getLastRecord());
+        assertEquals (TEST_DATA_LENGTH, views[1].getFirstRecord());
+        assertEquals (TEST_DATA_LENGTH + 9, views[1].getLastRecord());
+        for (VariableDataBuffer view : views) {
+            assertTrue (view.getBuffer().isReadOnly());
+            java.nio.DoubleBuffer values = view.getBuffer().asDoubleBuffer();
+            assertEquals (view.getLastRecord() - view.getFirstRecord() + 1, values.remaining());
+            for (int rec = view.getFirstRecord(); rec <= view.getLastRecord(); rec ++) {
+                assertEquals (data[rec], values.get(), 0.0);
+            }
+        }
+    }
+
+    public static Object getRange0 (CDFImpl thisCDF, Variable var, Integer first, Integer last)
+    {
+        return new double [] {first, last};
+    }
+
+    @Test
+    public void testAddFunction () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+        Extractor.RangeFunction saved [] = Extractor.rangeFunctions.clone ();
+        Class args [] = new Class [] {CDFImpl.class, Variable.class, Integer.class, Integer.class};
+        Extractor.addFunction ("Range", TestCDFReadAndWrite.class, new Class [][] {args, null, null, null});
+        try (CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath())) {
+            // the registered extractor takes precedence
+            assertArrayEquals (new double [] {5, 9}, (double []) cdf_reader.getRange ("Packed", 5, 9), 0.0);
+            assertEquals (TestCDFReadAndWrite.class, Extractor.getMethod (cdf_reader.thisCDF.getVariable ("Packed"), "Range").getDeclaringClass());
+        } finally {
+            System.arraycopy (saved, 0, Extractor.rangeFunctions, 0, saved.length);
+            Extractor.numericMethodMap.remove ("Range");
+            Extractor.methodsLoaded = false;
+        }
+        try (CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath())) {
+            assertArrayEquals (Arrays.copyOfRange (data, 5, 10), (double []) cdf_reader.getRange ("Packed", 5, 9), 0.0);
+        }
+    }
+
+    @Test
+    public void testSharedReaders () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+
+        // not shared by default, and released on close
+        CDFReader alone = new CDFReader (cdf_file.getAbsolutePath());
+        CDFReader other = new CDFReader (cdf_file.getAbsolutePath());
+        assertNotSame (alone.thisCDF, other.thisCDF);
+        CDFImpl released = alone.thisCDF;
+        alone.close ();
+        other.close ();
+        assertTrue (released.closed);
+
+        CDFFactory.setReaderCacheSize (32);
+        try {
+            shareReaders (cdf_file, data);
+        } finally {
+            CDFFactory.setReaderCacheSize (0);
+        }
+    }
+
+    private void shareReaders (File cdf_file, double data []) throws Throwable
+    {
+        CDFReader first = new CDFReader (cdf_file.getAbsolutePath());
+        CDFReader second = new CDFReader (cdf_file.getAbsolutePath());
+        CDFImpl shared = first.thisCDF;
+        assertSame (shared, second.thisCDF);
+        assertEquals (2, shared.references);
+        first.close ();
+        assertArrayEquals (data, (double []) second.get ("Packed"), 0.0);
+        second.close ();
+        second.close ();
+        assertEquals (0, shared.references);
+
+        // idle entries stay cached until the file changes
+        CDFReader third = new CDFReader (cdf_file.getAbsolutePath());
+        assertSame (shared, third.thisCDF);
+        third.close ();
+        cdf_file.setLastModified (cdf_file.lastModified() - 10000);
+        CDFReader fourth = new CDFReader (cdf_file.getAbsolutePath());
+        assertNotSame (shared, fourth.thisCDF);
+        assertArrayEquals (data, (double []) fourth.get ("Packed"), 0.0);
+        fourth.close ();
+    }
+
+    @Test
+    public void testClose () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        File cdf_file = writeBlocks (data);
+        CDFReader closed;
+        try (CDFReader cdf_reader = ReaderFactory.getReader (cdf_file.getAbsolutePath())) {
+            closed = cdf_reader;
+            cdf_reader.startContainerThread ("Packed", "double", null, false);
+        }
+        assertNull (closed.thisCDF);
+        try {
+            closed.getVariableNames ();
+            fail ("used a closed reader");
+        } catch (IllegalStateException ex) {
+            assertEquals ("Reader is closed", ex.getMessage());
+        }
+        closed.close ();
+
+        // nor through the time series extractor
+        closed = ReaderFactory.getReader (cdf_file.getAbsolutePath());
+        Variable var = closed.thisCDF.getVariable ("Packed");
+        closed.close ();
+        try {
+            TSExtractor.getTimeSeries (closed, var, null, Boolean.FALSE, null);
+            fail ("used a closed reader");
+        } catch (IllegalStateException ex) {
+            assertEquals ("Reader is closed", ex.getMessage());
+        }
+
+        CDFReader cdf_reader = ReaderFactory.getReader (cdf_file.getAbsolutePath());
+        PagedBuffer storage = (PagedBuffer) cdf_reader.thisCDF.storage;
+        assertArrayEquals (data, (double []) cdf_reader.get ("Packed"), 0.0);
+        cdf_reader.close ();
+        assertFalse (storage.ch.isOpen ());
+
+        // an interrupted close still releases the CDF, and stays interrupted
+        cdf_reader = ReaderFactory.getReader (cdf_file.getAbsolutePath());
+        storage = (PagedBuffer) cdf_reader.thisCDF.storage;
+        cdf_reader.startContainerThread ("Packed", "double", null, false);
+        Thread.currentThread().interrupt ();
+        cdf_reader.close ();
+        assertTrue (Thread.interrupted ());
+        assertFalse (storage.ch.isOpen ());
+    }
+
+    private File writeAttributes (String name, double data []) throws Throwable
+    {
+        File cdf_file = temp_folder.newFile (name);
+        for (int count=0; count<data.length; count ++) data[count] = count * 0.25;
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.addGlobalAttributeEntry ("Title", CDFDataType.CHAR, "Lazy test");
+        cdf_writer.defineVariable ("First", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.defineVariable ("Second", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.addData ("First", data, new int [] {0, data.length - 1});
+        cdf_writer.addData ("Second", data, new int [] {0, data.length - 1});
+        cdf_writer.addVariableAttributeEntry ("First", "UNITS", CDFDataType.CHAR, "nT");
+        cdf_writer.addVariableAttributeEntry ("Second", "UNITS", CDFDataType.CHAR, "km");
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        return cdf_file;
+    }
+
+    @Test
+    public void testLazyMetadata () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH];
+        File cdf_file = writeAttributes ("lazy.cdf", data);
+        CDFImpl eager = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        CDFFactory.setLazyMetadata (true);
+        CDFImpl lazy;
+        try {
+            lazy = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        } finally {
+            CDFFactory.setLazyMetadata (false);
+        }
+        assertNull (lazy.attributeTable);
+        assertEquals (0, lazy.variableTable.size());
+        assertArrayEquals (eager.getVariableNames(), lazy.getVariableNames());
+
+        // the second variable is read before the attributes, the first after
+        assertArrayEquals (data, (double []) lazy.get ("Second"), 0.0);
+        assertEquals (1, lazy.variableTable.size());
+        assertEquals ("Lazy test", ((String []) lazy.getAttribute ("Title"))[0]);
+        assertEquals (eager.getAttribute ("Second", "UNITS"), lazy.getAttribute ("Second", "UNITS"));
+        assertEquals (eager.getAttribute ("First", "UNITS"), lazy.getAttribute ("First", "UNITS"));
+        assertArrayEquals (eager.variableAttributeNames ("First"), lazy.variableAttributeNames ("First"));
+        assertArrayEquals (data, (double []) lazy.get ("First"), 0.0);
+        assertNull (lazy.getVariable ("Third"));
+    }
+
+    @Test
+    public void testMetadataIndex () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH];
+        File cdf_file = writeAttributes ("indexed.cdf", data);
+        File index_dir = temp_folder.newFolder ("index");
+        CDFImpl eager = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        CDFFactory.setIndexDirectory (index_dir);
+        try {
+            CDFFactory.getCDF (cdf_file.getAbsolutePath());
+            File index_file = MetadataIndex.indexFile (index_dir, cdf_file);
+            assertTrue (index_file.exists());
+
+            CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+            assertNotNull (cdf.vdrIndex);
+            assertEquals (0, cdf.variableTable.size());
+            // blocks are read from the mapped index when first used
+            assertNotNull (cdf.index);
+            assertTrue (cdf.index.buf.isDirect ());
+            assertEquals (3, cdf.vdrIndex.get ("First").blocks.remaining());
+            assertArrayEquals (eager.getVariableNames(), cdf.getVariableNames());
+            assertTrue (((CDFImpl.CDFVariable) cdf.getVariable ("First")).isComplete ());
+            assertArrayEquals (data, (double []) cdf.get ("First"), 0.0);
+            assertEquals ("Lazy test", ((String []) cdf.getAttribute ("Title"))[0]);
+            assertEquals (eager.getAttribute ("First", "UNITS"), cdf.getAttribute ("First", "UNITS"));
+            assertEquals (eager.getAttribute ("Second", "UNITS"), cdf.getAttribute ("Second", "UNITS"));
+            cdf.close ();
+
+            // a changed file is read in full and indexed again
+            cdf_file.setLastModified (cdf_file.lastModified() - 10000);
+            cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+            assertNull (cdf.vdrIndex);
+            assertArrayEquals (data, (double []) cdf.get ("Second"), 0.0);
+            assertNotNull (MetadataIndex.read (index_dir, cdf_file, CDFFactory.fileIdentity (cdf_file)));
+        } finally {
+            CDFFactory.setIndexDirectory (null);
+        }
+    }
+
+    @Test
+    public void testStreamingWriter () throws Throwable
+    {
+        int nrec = TEST_DATA_LENGTH * NBLOCKS;
+        double plain [] = new double [nrec];
+        double packed [] = new double [nrec];
+        File cdf_file = temp_folder.newFile ("streamed.cdf");
+        try (StreamingWriter cdf_writer = new StreamingWriter (cdf_file.getAbsolutePath(), false)) {
+            cdf_writer.setBlockSize (512);
+            cdf_writer.setVXREntries (4);
+            cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+            cdf_writer.defineCompressedVariable ("Packed", CDFDataType.INT4, new int [] {});
+            // one record at a time, as from a real-time source
+            for (int count=0; count<nrec; count ++) {
+                plain[count] = count * 0.5;
+                packed[count] = count % 7;
+                cdf_writer.addData ("Plain", new double [] {plain[count]});
+                cdf_writer.addData ("Packed", new int [] {count % 7}, new int [] {count, count});
+            }
+            cdf_writer.addGlobalAttributeEntry ("Title", CDFDataType.CHAR, "Streamed");
+            cdf_writer.addVariableAttributeEntry ("Plain", "UNITS", CDFDataType.CHAR, "nT");
+            // only the records of the current block are held
+            assertTrue (cdf_writer.dataContainers.get ("Plain").bufs.size () <= 512 / 8 + 1);
+        }
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        assertEquals (nrec * 8 / 512 + 1, cdf.getVariable ("Plain").getLocator().getLocations().length);
+        assertArrayEquals (plain, (double []) cdf.get ("Plain"), 0.0);
+        assertArrayEquals (packed, (double []) cdf.get ("Packed"), 0.0);
+        assertEquals ("Streamed", ((String []) cdf.getAttribute ("Title"))[0]);
+        assertEquals ("nT", ((Vector) cdf.getAttribute ("Plain", "UNITS")).get (0));
+    }
+
+    private GenericWriter digestWriter (double data []) throws Throwable
+    {
+        GenericWriter cdf_writer = new GenericWriter (false);
+        cdf_writer.setMD5Needed (true);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+        cdf_writer.addData ("Plain", data);
+        return cdf_writer;
+    }
+
+    // the last 16 bytes are the MD5 digest of the rest of the file
+    private void assertDigest (File cdf_file, double data []) throws Throwable
+    {
+        byte bytes [] = Files.readAllBytes (cdf_file.toPath());
+        MessageDigest md = MessageDigest.getInstance ("MD5");
+        md.update (bytes, 0, bytes.length - 16);
+        assertArrayEquals (md.digest (), Arrays.copyOfRange (bytes, bytes.length - 16, bytes.length));
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        assertArrayEquals (data, (double []) cdf.get ("Plain"), 0.0);
+    }
+
+    @Test
+    public void testMD5Digest () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH];
+        for (int count=0; count<data.length; count ++) data[count] = count * 0.5;
+        File buffered = temp_folder.newFile ("buffered.cdf");
+        GenericWriter cdf_writer = digestWriter (data);
+        long eof = cdf_writer.getSize ();
+        cdf_writer.write (buffered.getAbsolutePath(), true);
+        assertEquals (eof + 16, buffered.length ());
+        assertDigest (buffered, data);
+
+        // written over a longer file
+        File rewritten = temp_folder.newFile ("rewritten.cdf");
+        Files.write (rewritten.toPath(), new byte [(int) eof * 2]);
+        digestWriter (data).write (rewritten.getAbsolutePath(), true);
+        assertEquals (eof + 16, rewritten.length ());
+        assertDigest (rewritten, data);
+
+        // written through a channel, as are files larger than 2 GB
+        File channelled = temp_folder.newFile ("channelled.cdf");
+        cdf_writer = digestWriter (data);
+        RandomAccessFile raf = new RandomAccessFile (channelled, "rw");
+        cdf_writer.write (raf.getChannel (), cdf_writer.getSize ());
+        raf.close ();
+        assertArrayEquals (Files.readAllBytes (buffered.toPath()), Files.readAllBytes (channelled.toPath()));
+
+        File streamed = temp_folder.newFile ("digest_streamed.cdf");
+        try (StreamingWriter streaming_writer = new StreamingWriter (streamed.getAbsolutePath(), false)) {
+            streaming_writer.setMD5Needed (true);
+            streaming_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+            streaming_writer.addData ("Plain", data);
+        }
+        assertDigest (streamed, data);
+    }
+
+    @Test
+    public void testVXRTree () throws Throwable
+    {
+        int nrec = TEST_DATA_LENGTH * 2;
+        double data [] = new double [nrec];
+        File cdf_file = temp_folder.newFile ("tree.cdf");
+        GenericWriter cdf_writer = new GenericWriter (false);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+        cdf_writer.defineCompressedVariable ("Packed", CDFDataType.DOUBLE, new int [] {});
+        cdf_writer.setVXREntries (3);
+        // a block per record
+        cdf_writer.setBlockSize (8);
+        for (int count=0; count<nrec; count ++) {
+            data[count] = count * 0.5;
+            cdf_writer.addData ("Plain", new double [] {data[count]});
+            cdf_writer.addData ("Packed", new double [] {data[count]}, new int [] {count, count});
+        }
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        assertEquals (5, new VXRTree (nrec, 3).depth ());
+
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        assertEquals (nrec, cdf.getVariable ("Plain").getLocator().getLocations().length);
+        assertArrayEquals (data, (double []) cdf.get ("Plain"), 0.0);
+        assertArrayEquals (data, (double []) cdf.get ("Packed"), 0.0);
+    }
+
+    @Test
+    public void testCoalescing () throws Throwable
+    {
+        int nrec = TEST_DATA_LENGTH * 2;
+        double data [] = new double [nrec];
+        File cdf_file = temp_folder.newFile ("coalesced.cdf");
+        GenericWriter cdf_writer = new GenericWriter (false);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+        cdf_writer.defineVariable ("Sparse", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0}, 1, SparseRecordOption.PADDED);
+        for (int count=0; count<nrec; count ++) {
+            data[count] = count * 0.5;
+            cdf_writer.addData ("Plain", new double [] {data[count]});
+            // records 100 to 149 are missing
+            if ((count < TEST_DATA_LENGTH) || (count >= TEST_DATA_LENGTH * 3 / 2)) {
+                cdf_writer.addData ("Sparse", new double [] {data[count]}, new int [] {count, count});
+            }
+        }
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+
+        CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        assertEquals (1, cdf.getVariable ("Plain").getLocator().getLocations().length);
+        assertArrayEquals (data, (double []) cdf.get ("Plain"), 0.0);
+        long locations [][] = cdf.getVariable ("Sparse").getLocator().getLocations();
+        assertEquals (2, locations.length);
+        assertEquals (TEST_DATA_LENGTH - 1, locations[0][1]);
+        assertEquals (TEST_DATA_LENGTH * 3 / 2, locations[1][0]);
+        assertEquals (nrec - 1, locations[1][1]);
+    }
+
+    private File writeCompressed (String name, java.util.concurrent.ExecutorService executor, boolean positional, double data []) throws Throwable
+    {
+        File cdf_file = temp_folder.newFile (name);
+        GenericWriter cdf_writer = new GenericWriter (false);
+        cdf_writer.setExecutor (executor);
+        cdf_writer.setBlockSize (TEST_DATA_LENGTH * 8);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {});
+        cdf_writer.addData ("Plain", data);
+        for (String vname : new String [] {"A", "B", "C"}) {
+            cdf_writer.defineCompressedVariable (vname, CDFDataType.DOUBLE, new int [] {});
+            for (int block=0; block<NBLOCKS; block ++) {
+                cdf_writer.addData (vname, java.util.Arrays.copyOfRange (data, block * TEST_DATA_LENGTH, (block + 1) * TEST_DATA_LENGTH));
+            }
+        }
+        if (positional) {
+            // as for files larger than 2GB
+            long len = cdf_writer.getSize ();
+            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile (cdf_file, "rw")) {
+                cdf_writer.write (raf.getChannel(), len);
+            }
+        } else {
+            cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        }
+        return cdf_file;
+    }
+
+    @Test
+    public void testParallelWrite () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH * NBLOCKS];
+        for (int count=0; count<data.length; count ++) data[count] = Math.sin (count * 0.01);
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool (4);
+        File parallel;
+        File positional;
+        try {
+            parallel = writeCompressed ("parallel.cdf", executor, false, data);
+            positional = writeCompressed ("positional.cdf", executor, true, data);
+        } finally {
+            executor.shutdown ();
+        }
+        File sequential = writeCompressed ("sequential.cdf", null, false, data);
+        byte expected [] = java.nio.file.Files.readAllBytes (sequential.toPath());
+        assertArrayEquals (expected, java.nio.file.Files.readAllBytes (parallel.toPath()));
+        assertArrayEquals (expected, java.nio.file.Files.readAllBytes (positional.toPath()));
+        CDFImpl cdf = CDFFactory.getCDF (parallel.getAbsolutePath());
+        assertEquals (NBLOCKS, cdf.getVariable ("C").getLocator().getLocations().length);
+        assertArrayEquals (data, (double []) cdf.get ("C"), 0.0);
+        assertArrayEquals (data, (double []) cdf.get ("Plain"), 0.0);
+    }
+
+    @Test
+    public void testInterruptedWrite () throws Throwable
+    {
+        // writers are serial by default; an interrupted write stays interrupted
+        GenericWriter cdf_writer = new GenericWriter (false);
+        assertNull (cdf_writer.executor);
+        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool (2);
+        cdf_writer.setExecutor (executor);
+        Vector<java.util.concurrent.Callable<Object>> tasks = new Vector<java.util.concurrent.Callable<Object>> ();
+        for (int count=0; count<2; count ++) {
+            tasks.add (() -> {
+                Thread.sleep (1000);
+                return null;
+            });
+        }
+        Thread.currentThread().interrupt ();
+        try {
+            cdf_writer.run (tasks);
+            fail ("interrupted write completed");
+        } catch (java.io.InterruptedIOException ex) {
+            assertTrue (Thread.interrupted ());
+        } finally {
+            executor.shutdownNow ();
+        }
+    }
 }
@@ -0,0 +1,253 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trips data through each of the standard codecs, both directly and
+ * as compressed variables of a CDF file.
+ */
+public class TestCompressionCodecs
+{
+    private static final int TEST_DATA_LENGTH = 50000;
+
+    private static final int TYPES [] = new int [] {CompressionCodec.RLE, CompressionCodec.HUFF,
+                                                    CompressionCodec.AHUFF, CompressionCodec.GZIP};
+
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder ();
+
+    private static byte [] testBytes ()
+    {
+        Random random = new Random (42);
+        byte data [] = new byte [TEST_DATA_LENGTH];
+        for (int count=0; count<data.length; count ++) {
+            if ((count / 1000) % 2 == 0) data[count] = 0;
+            else if (count % 7 == 0) data[count] = (byte) random.nextInt (256);
+            else data[count] = (byte) (count % 13);
+        }
+        return data;
+    }
+
+    @Test
+    public void testRoundTrip () throws Throwable
+    {
+        byte data [] = testBytes ();
+        for (int type : TYPES) {
+            CompressionCodec codec = CompressionCodecs.get (type);
+            assertEquals (type, codec.getType());
+            ByteBuffer compressed = codec.compress (ByteBuffer.wrap (data));
+            assertTrue (compressed.remaining() < data.length);
+            ByteBuffer heap = ByteBuffer.allocate (data.length);
+            assertEquals (data.length, codec.decompress (compressed.duplicate(), heap));
+            assertArrayEquals (data, heap.array());
+            ByteBuffer direct = ByteBuffer.allocateDirect (data.length);
+            assertEquals (data.length, codec.decompress (compressed.duplicate(), direct));
+            direct.flip ();
+            byte copy [] = new byte [data.length];
+            direct.get (copy);
+            assertArrayEquals (data, copy);
+        }
+    }
+
+    /**
+     * RLE, HUFF and AHUFF streams laid out as the CDF C library writes
+     * them, built independently of the encoders here, for the big endian
+     * ints 1, 2, 0 and 256.
+     */
+    private static final int FIXTURE_VALUES [] = new int [] {1, 2, 0, 256};
+
+    private static final byte RLE_FIXTURE [] = new byte [] {
+        0x00, 0x02, 0x01, 0x00, 0x02, 0x02, 0x00, 0x05, 0x01, 0x00, 0x00};
+
+    private static final byte HUFF_FIXTURE [] = new byte [] {
+        0x00, 0x02, 0x0d, 0x02, 0x01, 0x00, (byte) 0xe7, 0x5f, (byte) 0x96};
+
+    private static final byte AHUFF_FIXTURE [] = new byte [] {
+        (byte) 0x80, 0x38, 0x04, 0x60, 0x40, 0x66};
+
+    private static void assertFixture (int type, byte fixture []) throws Throwable
+    {
+        CompressionCodec codec = CompressionCodecs.get (type);
+        ByteBuffer heap = ByteBuffer.allocate (FIXTURE_VALUES.length * 4);
+        assertEquals (heap.capacity(), codec.decompress (ByteBuffer.wrap (fixture), heap));
+        ByteBuffer direct = ByteBuffer.allocateDirect (heap.capacity());
+        assertEquals (heap.capacity(), codec.decompress (ByteBuffer.wrap (fixture), direct));
+        heap.flip ();
+        direct.flip ();
+        for (int value : FIXTURE_VALUES) {
+            assertEquals (value, heap.getInt ());
+            assertEquals (value, direct.getInt ());
+        }
+    }
+
+    @Test
+    public void testReferenceStreams () throws Throwable
+    {
+        assertFixture (CompressionCodec.RLE, RLE_FIXTURE);
+        assertFixture (CompressionCodec.HUFF, HUFF_FIXTURE);
+        assertFixture (CompressionCodec.AHUFF, AHUFF_FIXTURE);
+    }
+
+    private static int indexOf (byte bytes [], byte pattern [])
+    {
+        for (int i = 0; i <= bytes.length - pattern.length; i ++) {
+            int j = 0;
+            while ((j < pattern.length) && (bytes[i + j] == pattern[j])) j ++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void testReferenceStreamFiles () throws Throwable
+    {
+        int types [] = new int [] {CompressionCodec.RLE, CompressionCodec.HUFF, CompressionCodec.AHUFF};
+        byte fixtures [][] = new byte [][] {RLE_FIXTURE, HUFF_FIXTURE, AHUFF_FIXTURE};
+        // the fixture values as bytes, which do not depend on the encoding
+        byte values [] = new byte [FIXTURE_VALUES.length * 4];
+        ByteBuffer.wrap (values).asIntBuffer().put (FIXTURE_VALUES);
+        double expected [] = new double [values.length];
+        for (int i = 0; i < values.length; i ++) expected[i] = values[i];
+        for (int i = 0; i < types.length; i ++) {
+            File cdf_file = temp_folder.newFile ("fixture" + types[i] + ".cdf");
+            CDFWriter cdf_writer = new CDFWriter (false);
+            cdf_writer.defineVariable ("Values", CDFDataType.INT1, new int [] {}, new boolean [] {}, true, true, new byte [] {-1});
+            cdf_writer.setCompression ("Values", types[i]);
+            cdf_writer.addData ("Values", values, new int [] {0, values.length - 1});
+            cdf_writer.write (cdf_file.getAbsolutePath(), true);
+            // the block is stored as the reference stream
+            assertTrue (indexOf (Files.readAllBytes (cdf_file.toPath()), fixtures[i]) > 0);
+            CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+            assertEquals (types[i], cdf_reader.thisCDF.getVariable ("Values").getCompressionType ());
+            assertArrayEquals (expected, (double []) cdf_reader.get ("Values"), 0.0);
+            cdf_reader.close ();
+        }
+    }
+
+    @Test
+    public void testGZIPFraming () throws Throwable
+    {
+        byte data [] = testBytes ();
+        CompressionCodec codec = CompressionCodecs.get (CompressionCodec.GZIP);
+        ByteBuffer compressed = codec.compress (ByteBuffer.wrap (data));
+        byte bytes [] = new byte [compressed.remaining()];
+        compressed.get (bytes);
+        GZIPInputStream gz = new GZIPInputStream (new ByteArrayInputStream (bytes));
+        byte inflated [] = new byte [data.length];
+        int got = 0;
+        for (int n; (got < inflated.length) && ((n = gz.read (inflated, got, inflated.length - got)) > 0); got += n);
+        assertEquals (data.length, got);
+        assertArrayEquals (data, inflated);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream ();
+        GZIPOutputStream gzos = new GZIPOutputStream (baos);
+        gzos.write (data);
+        gzos.finish ();
+        byte stream [] = baos.toByteArray ();
+        ByteBuffer direct = ByteBuffer.allocateDirect (stream.length);
+        direct.put (stream).flip ();
+        ByteBuffer heap = ByteBuffer.allocate (data.length);
+        assertEquals (data.length, codec.decompress (direct, heap));
+        assertArrayEquals (data, heap.array());
+        assertFalse (direct.hasRemaining ());
+
+        stream[stream.length - 8] ^= 1;
+        try {
+            codec.decompress (ByteBuffer.wrap (stream), ByteBuffer.allocate (data.length));
+            fail ("corrupt CRC not detected");
+        } catch (IOException ex) {
+        }
+    }
+
+    @Test
+    public void testCompressedVariables () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH / 10];
+        for (int count=0; count<data.length; count ++) {
+            data[count] = (count % 100 < 50) ? 0.0 : Math.sin ((double) count / 10.0);
+        }
+        for (int type : TYPES) {
+            File cdf_file = temp_folder.newFile ("codec" + type + ".cdf");
+            CDFWriter cdf_writer = new CDFWriter(false);
+            cdf_writer.defineVariable ("Packed", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, true, new double [] {-1.0});
+            cdf_writer.setCompression ("Packed", type);
+            cdf_writer.addData ("Packed", data, new int [] {0, data.length - 1});
+            cdf_writer.write (cdf_file.getAbsolutePath(), true);
+            CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+            Variable var = cdf_reader.thisCDF.getVariable ("Packed");
+            assertTrue (var.isCompressed ());
+            assertEquals (type, var.getCompressionType ());
+            assertArrayEquals (data, (double []) cdf_reader.get ("Packed"), 0.0);
+        }
+    }
+
+    /**
+     * Builds a whole file compressed copy (CCR and CPR records) of an
+     * uncompressed version 3 CDF.
+     */
+    private File compressWholeFile (File cdf_file) throws Throwable
+    {
+        byte plain [] = Files.readAllBytes (cdf_file.toPath());
+        ByteBuffer body = ByteBuffer.wrap (plain, 8, plain.length - 8);
+        ByteBuffer gz = CompressionCodecs.get (CompressionCodec.GZIP).compress (body);
+        int ccr_size = 32 + gz.remaining();
+        ByteBuffer out = ByteBuffer.allocate (8 + ccr_size + 28);
+        out.putLong (CDFFactory.CDF3_COMPRESSED_MAGIC);
+        out.putLong (ccr_size).putInt (10).putLong (8 + ccr_size).putLong (plain.length - 8).putInt (0);
+        out.put (gz);
+        out.putLong (28).putInt (CDFImpl.CPR_RECORD_TYPE).putInt (CompressionCodec.GZIP).putInt (0).putInt (1).putInt (9);
+        File compressed = temp_folder.newFile ("whole.cdf");
+        FileOutputStream fos = new FileOutputStream (compressed);
+        fos.write (out.array());
+        fos.close ();
+        return compressed;
+    }
+
+    @Test
+    public void testScratchFile () throws Throwable
+    {
+        double data [] = new double [TEST_DATA_LENGTH / 10];
+        for (int count=0; count<data.length; count ++) data[count] = Math.cos ((double) count / 10.0);
+        File cdf_file = temp_folder.newFile ("plain.cdf");
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.addData ("Plain", data, new int [] {0, data.length - 1});
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        File compressed = compressWholeFile (cdf_file);
+
+        CDFImpl in_memory = CDFFactory.getCDF (compressed.getAbsolutePath());
+        assertArrayEquals (data, (double []) in_memory.get ("Plain"), 0.0);
+
+        long threshold = CDFFactory.scratchThreshold;
+        CDFFactory.setScratchDirectory (temp_folder.getRoot());
+        CDFFactory.setScratchThreshold (0);
+        try {
+            CDFImpl scratch = CDFFactory.getCDF (compressed.getAbsolutePath());
+            assertArrayEquals (data, (double []) scratch.get ("Plain"), 0.0);
+            String key = CDFFactory.fileIdentity (compressed);
+            File scratch_file = CDFFactory.scratchFiles.get (key);
+            assertNotNull (scratch_file);
+            assertEquals (cdf_file.length(), scratch_file.length());
+            CDFImpl reopened = CDFFactory.getCDF (compressed.getAbsolutePath());
+            assertSame (scratch_file, CDFFactory.scratchFiles.get (key));
+            assertArrayEquals (data, (double []) reopened.get ("Plain"), 0.0);
+        } finally {
+            CDFFactory.setScratchThreshold (threshold);
+            CDFFactory.setScratchDirectory (null);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class TestDataConverter
+{
+    // CDF type codes
+    private static final int INT1 = 1, INT2 = 2, INT4 = 4, UINT1 = 11, UINT2 = 12, UINT4 = 14;
+
+    @Test
+    public void testUnsignedWidening ()
+    {
+        ByteBuffer bv = ByteBuffer.allocate (16).order (ByteOrder.LITTLE_ENDIAN);
+        bv.putShort ((short) -1).putShort ((short) 2).putInt (-2).putInt (7);
+        bv.position (0);
+        double data [] = new double [2];
+        DataConverter.toDouble (bv, UINT2, data, 2);
+        assertArrayEquals (new double [] {65535, 2}, data, 0.0);
+        assertEquals (4, bv.position());
+        long ldata [] = new long [2];
+        DataConverter.toLong (bv, UINT4, ldata, 2);
+        assertArrayEquals (new long [] {4294967294l, 7}, ldata);
+        bv.position (0);
+        DataConverter.toDouble (bv, INT2, data, 2);
+        assertArrayEquals (new double [] {-1, 2}, data, 0.0);
+        assertEquals (4294967294l, DataConverter.getLong (bv, UINT4, 4));
+        assertEquals (-2, DataConverter.getLong (bv, INT4, 4));
+        float fdata [] = new float [2];
+        bv.position (0);
+        DataConverter.toFloat (bv, UINT1, fdata, 2);
+        assertArrayEquals (new float [] {255, 255}, fdata, 0.0f);
+        assertEquals (2, bv.position());
+        assertEquals (2, DataConverter.getLong (bv, INT1));
+        assertEquals (3, bv.position());
+    }
+}
@@ -0,0 +1,191 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads CDFs served by an embedded HTTP server.
+ */
+public class TestRemoteAccess
+{
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder ();
+
+    /**
+     * Serves a file with an ETag, honouring single range requests,
+     * If-Range and If-None-Match, and counts the requests and bytes sent.
+     */
+    static HttpServer serve (final byte [] bytes, final AtomicLong requests, final AtomicLong sent) throws Throwable
+    {
+        HttpServer server = HttpServer.create (new InetSocketAddress ("127.0.0.1", 0), 0);
+        server.createContext ("/", exchange -> {
+            requests.incrementAndGet ();
+            String etag = "\"" + Arrays.hashCode (bytes) + "\"";
+            String range = exchange.getRequestHeaders().getFirst ("Range");
+            String if_range = exchange.getRequestHeaders().getFirst ("If-Range");
+            if ((if_range != null) && !if_range.equals (etag)) range = null;
+            int from = 0;
+            int to = bytes.length - 1;
+            int status = 200;
+            if (range != null) {
+                String limits [] = range.substring ("bytes=".length()).split ("-");
+                from = Integer.parseInt (limits[0]);
+                to = Math.min (to, Integer.parseInt (limits[1]));
+                status = 206;
+                exchange.getResponseHeaders().add ("Content-Range", "bytes " + from + "-" + to + "/" + bytes.length);
+            }
+            exchange.getResponseHeaders().add ("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add ("ETag", etag);
+            if (etag.equals (exchange.getRequestHeaders().getFirst ("If-None-Match"))) {
+                exchange.sendResponseHeaders (304, -1);
+                exchange.close ();
+                return;
+            }
+            if ("HEAD".equals (exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add ("Content-Length", Integer.toString (bytes.length));
+                exchange.sendResponseHeaders (status, -1);
+                exchange.close ();
+                return;
+            }
+            exchange.sendResponseHeaders (status, to - from + 1);
+            OutputStream os = exchange.getResponseBody ();
+            os.write (bytes, from, to - from + 1);
+            os.close ();
+            sent.addAndGet (to - from + 1);
+        });
+        server.start ();
+        return server;
+    }
+
+    @Test
+    public void testRangeRequests () throws Throwable
+    {
+        File cdf_file = temp_folder.newFile ("remote.cdf");
+        int chunks = 20;
+        int chunk_length = 10000;
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.setBlockSize (chunk_length * 8);
+        String names [] = new String [] {"A", "B", "C", "D"};
+        for (String name : names) {
+            cdf_writer.defineVariable (name, CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        }
+        double data [] = new double [chunks * chunk_length];
+        for (int count=0; count<data.length; count ++) data[count] = Math.sin ((double) count / 100.0);
+        for (String name : names) {
+            for (int chunk=0; chunk<chunks; chunk ++) {
+                double part [] = new double [chunk_length];
+                System.arraycopy (data, chunk * chunk_length, part, 0, chunk_length);
+                cdf_writer.addData (name, part, new int [] {chunk * chunk_length, (chunk + 1) * chunk_length - 1});
+            }
+        }
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        byte bytes [] = Files.readAllBytes (cdf_file.toPath());
+        CDFImpl local = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        int blocks = ((CDFImpl.DataLocator) local.getVariable ("B").getLocator()).size();
+        assertTrue (blocks > 1);
+
+        AtomicLong requests = new AtomicLong ();
+        AtomicLong sent = new AtomicLong ();
+        HttpServer server = serve (bytes, requests, sent);
+        URL url = new URL ("http://127.0.0.1:" + server.getAddress().getPort() + "/remote.cdf");
+        CDFFactory.setRangeRequests (true);
+        GenericReader reader = null;
+        try {
+            reader = new GenericReader (url);
+            assertTrue (reader.thisCDF.storage instanceof HttpBuffer);
+            assertArrayEquals (data, (double []) reader.thisCDF.get ("B"), 0.0);
+            assertTrue (sent.get() < bytes.length / 2);
+            assertTrue (requests.get() < blocks);
+
+            // blocks of a file changed since it was opened are not read
+            int changed = (int) ((CDFImpl.DataLocator) local.getVariable ("D").getLocator()).getOffset (1) + 100;
+            bytes[changed] ^= 1;
+            try {
+                reader.thisCDF.get ("D");
+                fail ("read a changed file");
+            } catch (Throwable th) {
+                assertTrue (th.getMessage().contains ("has changed"));
+            }
+            reader.close ();
+            bytes[changed] ^= 1;
+            CDFFactory.setRangeRequests (false);
+
+            reader = new GenericReader (url);
+            assertNull (reader.thisCDF.storage);
+            assertArrayEquals (data, (double []) reader.thisCDF.get ("B"), 0.0);
+        } finally {
+            CDFFactory.setRangeRequests (false);
+            if (reader != null) reader.close ();
+            local.close ();
+            server.stop (0);
+        }
+    }
+
+    @Test
+    public void testURLCache () throws Throwable
+    {
+        File cdf_file = TestSegmentedBuffer.writeTestFile (temp_folder, "remote_test.cdf");
+        byte bytes [] = Files.readAllBytes (cdf_file.toPath());
+        CDFImpl local = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        AtomicLong requests = new AtomicLong ();
+        AtomicLong sent = new AtomicLong ();
+        HttpServer server = serve (bytes, requests, sent);
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        File cache_dir = temp_folder.newFolder ("urlcache");
+        CDFFactory.setURLCache (cache_dir, 2 * bytes.length);
+        try (GenericReader first = new GenericReader (new URL (base + "/a.cdf"))) {
+            assertArrayEquals ((double []) local.get ("Plain"), (double []) first.thisCDF.get ("Plain"), 0.0);
+            assertEquals (bytes.length, sent.get());
+            assertNotNull (first.thisCDF.region);
+            assertFalse (first.thisCDF.getSource().isFile ());
+            assertEquals (base + "/a.cdf", first.getSource ());
+
+            try (GenericReader second = new GenericReader (new URL (base + "/a.cdf"))) {
+                assertArrayEquals ((double []) local.get ("Plain"), (double []) second.thisCDF.get ("Plain"), 0.0);
+                assertEquals (2, requests.get());
+                assertEquals (bytes.length, sent.get());
+            }
+
+            // same contents from another URL share the copy
+            try (CDFReader cdf_reader = ReaderFactory.getReader (new URL (base + "/b.cdf"))) {
+                assertArrayEquals ((long []) local.getLong ("Packed"), (long []) cdf_reader.getLong ("Packed"));
+            }
+            assertEquals (1, cache_dir.list ((dir, name) -> name.endsWith (".cdf")).length);
+            assertEquals (2, cache_dir.list ((dir, name) -> name.endsWith (".url")).length);
+        } finally {
+            CDFFactory.setURLCache (null, 0);
+            server.stop (0);
+        }
+
+        // changed contents are downloaded again and the old copy evicted
+        File other_file = temp_folder.newFile ("other.cdf");
+        CDFWriter cdf_writer = new CDFWriter (false);
+        cdf_writer.addGlobalAttributeEntry ("Title", CDFDataType.CHAR, "Changed");
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.addData ("Plain", new double [] {1.0, 2.0}, new int [] {0, 1});
+        cdf_writer.write (other_file.getAbsolutePath(), true);
+        byte other [] = Files.readAllBytes (other_file.toPath());
+        server = serve (other, requests, sent);
+        CDFFactory.setURLCache (cache_dir, bytes.length + other.length / 2);
+        URL url = new URL ("http://127.0.0.1:" + server.getAddress().getPort() + "/a.cdf");
+        try (GenericReader reader = new GenericReader (url)) {
+            assertEquals ("Changed", ((String []) reader.thisCDF.getAttribute ("Title"))[0]);
+            assertEquals (1, cache_dir.list ((dir, name) -> name.endsWith (".cdf")).length);
+        } finally {
+            CDFFactory.setURLCache (null, 0);
+            server.stop (0);
+            local.close ();
+        }
+    }
+}
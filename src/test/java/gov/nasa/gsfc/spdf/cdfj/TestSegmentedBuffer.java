@@ -0,0 +1,226 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Vector;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads a CDF through a SegmentedBuffer with windows much smaller than
+ * the records, so that most records straddle a window boundary.
+ */
+public class TestSegmentedBuffer
+{
+    private static final int TEST_DATA_LENGTH = 500;
+
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder ();
+
+    private File writeTestFile () throws Throwable
+    {
+        return writeTestFile ("segmented.cdf");
+    }
+
+    private File writeTestFile (String name) throws Throwable
+    {
+        return writeTestFile (temp_folder, name);
+    }
+
+    /**
+     * Writes a plain and a compressed variable of TEST_DATA_LENGTH
+     * records; also used by TestRemoteAccess.
+     */
+    static File writeTestFile (TemporaryFolder folder, String name) throws Throwable
+    {
+        File cdf_file = folder.newFile (name);
+        double data [] = new double [TEST_DATA_LENGTH];
+        long counts [] = new long [TEST_DATA_LENGTH];
+        for (int count=0; count<data.length; count ++) {
+            data[count] = Math.cos ((double) count / 10.0) * 50.0;
+            counts[count] = count * 1000l;
+        }
+        CDFWriter cdf_writer = new CDFWriter(false);
+        cdf_writer.addGlobalAttributeEntry ("Title", CDFDataType.CHAR, "Segmented read test");
+        cdf_writer.defineVariable ("Plain", CDFDataType.DOUBLE, new int [] {}, new boolean [] {}, true, false, new double [] {-1.0});
+        cdf_writer.defineVariable ("Packed", CDFDataType.INT8, new int [] {}, new boolean [] {}, true, true, new long [] {-1});
+        int record_limits [] = new int [] {0, data.length -1};
+        cdf_writer.addData ("Plain", data, record_limits);
+        cdf_writer.addData ("Packed", counts, record_limits);
+        cdf_writer.write (cdf_file.getAbsolutePath(), true);
+        return cdf_file;
+    }
+
+    @Test
+    public void testSmallWindows () throws Throwable
+    {
+        File cdf_file = writeTestFile ();
+        CDFImpl mapped = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        RandomAccessFile raf = new RandomAccessFile (cdf_file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            SegmentedBuffer segments = new SegmentedBuffer (ch, 256, 64);
+            CDFImpl segmented = new CDF3Impl (segments);
+            assertArrayEquals (mapped.getVariableNames(), segmented.getVariableNames());
+            assertArrayEquals ((double []) mapped.get ("Plain"), (double []) segmented.get ("Plain"), 0.0);
+            assertArrayEquals ((long []) mapped.getLong ("Packed"), (long []) segmented.getLong ("Packed"));
+            assertTrue (segments.spilled.size() > 0);
+            assertFalse (segments.prefetches ());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testFactoryThreshold () throws Throwable
+    {
+        File cdf_file = writeTestFile ();
+        long threshold = CDFFactory.segmentThreshold;
+        CDFFactory.segmentThreshold = 0;
+        try {
+            CDFReader cdf_reader = new CDFReader (cdf_file.getAbsolutePath());
+            Vector<AttributeEntry> entries = cdf_reader.getAttributeEntries ("Title");
+            assertEquals ("Segmented read test", entries.get(0).getValue());
+            double data [] = (double []) cdf_reader.get ("Plain");
+            assertEquals (TEST_DATA_LENGTH, data.length);
+            assertEquals (Math.cos (0.1) * 50.0, data[1], 0.0);
+        } finally {
+            CDFFactory.segmentThreshold = threshold;
+        }
+    }
+
+    @Test
+    public void testMappedMemoryBudget () throws Throwable
+    {
+        File first_file = writeTestFile ("first.cdf");
+        File second_file = writeTestFile ("second.cdf");
+        CDFFactory.setMaxMappedMemory (1);
+        try {
+            CDFImpl first = CDFFactory.getCDF (first_file.getAbsolutePath());
+            double expected [] = (double []) first.get ("Plain");
+            CDFImpl second = CDFFactory.getCDF (second_file.getAbsolutePath());
+            assertArrayEquals (expected, (double []) second.get ("Plain"), 0.0);
+            assertTrue (CDFFactory.mappedMemoryUsed () <= second_file.length());
+
+            // the first file was unmapped, and is mapped again when used
+            assertArrayEquals (expected, (double []) first.get ("Plain"), 0.0);
+            assertTrue (CDFFactory.mappedMemoryUsed () <= first_file.length());
+
+            first.pin ();
+            second.get ("Plain");
+            assertEquals (first_file.length() + second_file.length(), CDFFactory.mappedMemoryUsed ());
+            first.unpin ();
+            first.close ();
+            second.close ();
+            assertEquals (0, CDFFactory.mappedMemoryUsed ());
+        } finally {
+            CDFFactory.setMaxMappedMemory (Long.MAX_VALUE);
+            CDFFactory.maxMappedMemory = null;
+        }
+    }
+
+    @Test
+    public void testDeferredUnmap () throws Throwable
+    {
+        File cdf_file = writeTestFile ();
+        byte expected [] = Files.readAllBytes (cdf_file.toPath());
+        RandomAccessFile raf = new RandomAccessFile (cdf_file, "r");
+        CDFFactory.setMaxMappedMemory (1);
+        try {
+            SegmentedBuffer segments = new SegmentedBuffer (raf.getChannel(), 256, 64);
+            MappedMemory.enter ();
+            ByteBuffer first;
+            try {
+                first = segments.get (0, 16);
+                // mapping the next window drops the first
+                segments.get (256, 16);
+                assertTrue (MappedMemory.getRetiredCount () > 0);
+                for (int i = 0; i < 16; i++) assertEquals (expected[i], first.get (i));
+            } finally {
+                MappedMemory.exit ();
+            }
+            assertEquals (0, MappedMemory.getRetiredCount ());
+
+            // a record that does not fit in its window counts against the budget
+            ByteBuffer record = segments.get (200, 200);
+            assertEquals (expected[399], record.get (199));
+            assertEquals (200, segments.mappedSize ());
+            assertTrue (MappedMemory.getUsed () >= 200);
+            CDFFactory.setMaxMappedMemory (0);
+            assertEquals (0, segments.mappedSize ());
+            segments.close ();
+        } finally {
+            raf.close ();
+            CDFFactory.setMaxMappedMemory (Long.MAX_VALUE);
+            CDFFactory.maxMappedMemory = null;
+        }
+    }
+
+    @Test
+    public void testPagedReads () throws Throwable
+    {
+        File cdf_file = writeTestFile ();
+        CDFImpl mapped = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+        RandomAccessFile raf = new RandomAccessFile (cdf_file, "r");
+        PagedBuffer pages = new PagedBuffer (raf.getChannel(), 3, 256);
+        CDFImpl paged = new CDF3Impl (pages);
+        assertTrue (pages.prefetches ());
+        assertArrayEquals (mapped.getVariableNames(), paged.getVariableNames());
+        assertArrayEquals ((double []) mapped.get ("Plain"), (double []) paged.get ("Plain"), 0.0);
+        assertArrayEquals ((long []) mapped.getLong ("Packed"), (long []) paged.getLong ("Packed"));
+        assertEquals (0, paged.mappedSize ());
+        paged.close ();
+        assertFalse (raf.getChannel().isOpen ());
+
+        CDFFactory.setPositionalReads (true);
+        try {
+            CDFImpl cdf = CDFFactory.getCDF (cdf_file.getAbsolutePath());
+            assertTrue (cdf.storage instanceof PagedBuffer);
+            assertArrayEquals ((double []) mapped.get ("Plain"), (double []) cdf.get ("Plain"), 0.0);
+            assertEquals ("Segmented read test", ((String []) cdf.getAttribute ("Title"))[0]);
+            cdf.close ();
+        } finally {
+            CDFFactory.setPositionalReads (false);
+        }
+        CDFReader cdf_reader = ReaderFactory.getReader (cdf_file.getAbsolutePath());
+        assertArrayEquals ((double []) mapped.get ("Plain"), (double []) cdf_reader.get ("Plain"), 0.0);
+        cdf_reader.close ();
+    }
+
+    @Test
+    public void testCorruptFile () throws Throwable
+    {
+        File cdf_file = writeTestFile ();
+        byte bytes [] = Files.readAllBytes (cdf_file.toPath());
+        // keep the magic numbers, and lose the GDR
+        Arrays.fill (bytes, 8, bytes.length, (byte) 0xff);
+        Files.write (cdf_file.toPath(), bytes);
+        File fds = new File ("/proc/self/fd");
+        Assume.assumeTrue (fds.isDirectory ());
+        int open = fds.list().length;
+        for (boolean positional : new boolean [] {false, true}) {
+            CDFFactory.setPositionalReads (positional);
+            try {
+                CDFFactory.getCDF (cdf_file.getAbsolutePath());
+                fail ("read a corrupt file");
+            } catch (Throwable th) {
+            } finally {
+                CDFFactory.setPositionalReads (false);
+            }
+        }
+        try {
+            ReaderFactory.getReader (cdf_file.getAbsolutePath());
+            fail ("read a corrupt file");
+        } catch (CDFException.ReaderError ex) {
+        }
+        assertEquals (open, fds.list().length);
+    }
+}
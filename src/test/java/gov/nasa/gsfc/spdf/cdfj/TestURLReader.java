@@ -0,0 +1,84 @@
+package gov.nasa.gsfc.spdf.cdfj;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reads plain and gzipped resources through a ByteBufferURLReader, into
+ * memory and into a file channel.
+ */
+public class TestURLReader
+{
+    private static final int TEST_DATA_LENGTH = 50000;
+
+    @Rule
+    public TemporaryFolder temp_folder = new TemporaryFolder ();
+
+    private static byte [] testBytes ()
+    {
+        Random random = new Random (42);
+        byte data [] = new byte [TEST_DATA_LENGTH];
+        for (int count=0; count<data.length; count ++) data[count] = (byte) random.nextInt (256);
+        return data;
+    }
+
+    private static byte [] contents (ByteBuffer buffer)
+    {
+        byte bytes [] = new byte [buffer.remaining()];
+        buffer.duplicate().get (bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testURLReader () throws Throwable
+    {
+        byte data [] = testBytes ();
+        File plain = temp_folder.newFile ("catalogue.bin");
+        Files.write (plain.toPath(), data);
+        File gzipped = temp_folder.newFile ("catalogue.bin.gz");
+        GZIPOutputStream gzos = new GZIPOutputStream (new FileOutputStream (gzipped));
+        gzos.write (data);
+        gzos.close ();
+
+        ByteBufferURLReader reader = new ByteBufferURLReader (plain.toURI().toURL());
+        assertEquals (data.length, reader.len);
+        assertArrayEquals (data, contents (reader.getBuffer ()));
+
+        // a body of known length is read into a single buffer of its size
+        reader = new ByteBufferURLReader (plain.toURI().toURL(), new ByteBufferURLReader.Chunk (1024, 4096));
+        ByteBuffer whole = reader.getBuffer ();
+        assertEquals (data.length, whole.capacity ());
+        assertArrayEquals (data, contents (whole));
+        assertTrue (reader.endOfFile ());
+        assertTrue (reader.chunk.allocateBuffer().hasArray ());
+
+        reader = new ByteBufferURLReader (gzipped.toURI().toURL());
+        assertEquals (-1, reader.len);
+        assertArrayEquals (data, contents (reader.getBuffer ()));
+
+        ByteBufferURLReader.Chunk chunk = new ByteBufferURLReader.Chunk (1024, 4096);
+        reader = new ByteBufferURLReader (gzipped.toURI().toURL(), chunk);
+        assertArrayEquals (data, contents (reader.getBuffer ()));
+
+        File copy = temp_folder.newFile ("copy.bin");
+        RandomAccessFile raf = new RandomAccessFile (copy, "rw");
+        try {
+            chunk = new ByteBufferURLReader.Chunk (1024, 4096);
+            reader = new ByteBufferURLReader (plain.toURI().toURL(), raf.getChannel(), chunk);
+            assertArrayEquals (data, contents (reader.getBuffer ()));
+            assertEquals (data.length, raf.length ());
+        } finally {
+            raf.close ();
+        }
+    }
+}